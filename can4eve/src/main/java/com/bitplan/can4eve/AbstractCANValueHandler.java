@@ -0,0 +1,70 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+import java.util.Date;
+
+import com.bitplan.elm327.Clock;
+
+/**
+ * base class for CANValueHandlers that only handle values by name - the
+ * values set by handle are passed on with the registered name and the time
+ * stamp as a Date
+ * 
+ * @author wf
+ *
+ */
+public abstract class AbstractCANValueHandler implements CANValueHandler {
+
+  /**
+   * set the value with the given name
+   * 
+   * @param name
+   * @param value
+   * @param timeStamp
+   */
+  public abstract <T> void setValue(String name, T value, Date timeStamp);
+
+  @Override
+  public <T> void setValue(String name, T value, long timeStamp) {
+    setValue(name, value, Clock.toDate(timeStamp));
+  }
+
+  @Override
+  public <T> void setValue(int handle, T value, long timeStamp) {
+    setValue(CANHandles.getName(handle), value, timeStamp);
+  }
+
+  @Override
+  public void setDouble(int handle, double value, long timeStamp) {
+    setValue(CANHandles.getName(handle), value, timeStamp);
+  }
+
+  @Override
+  public void setInt(int handle, int value, long timeStamp) {
+    setValue(CANHandles.getName(handle), value, timeStamp);
+  }
+
+  @Override
+  public void setBoolean(int handle, boolean value, long timeStamp) {
+    setValue(CANHandles.getName(handle), value, timeStamp);
+  }
+}
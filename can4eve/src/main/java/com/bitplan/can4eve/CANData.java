@@ -51,6 +51,26 @@ public interface CANData<T> extends AsJson {
    */
   public void setValue(int index, T value, Date timeStamp);
 
+  /**
+   * set a value at the given time
+   * 
+   * @param value
+   * @param timeStamp
+   *          - the time in nanoseconds since the epoch see
+   *          {@link com.bitplan.elm327.Clock}
+   */
+  public void setValue(T value, long timeStamp);
+
+  /**
+   * set an indexed value at the given time
+   * 
+   * @param index
+   * @param value
+   * @param timeStamp
+   *          - the time in nanoseconds since the epoch
+   */
+  public void setValue(int index, T value, long timeStamp);
+
   /**
    * get the value
    * 
@@ -79,6 +99,13 @@ public interface CANData<T> extends AsJson {
    */
   public Date getTimeStamp();
 
+  /**
+   * get the time stamp of the value without creating a Date
+   * @return the nanoseconds since the epoch or
+   *         {@link com.bitplan.elm327.Clock#NO_TIME}
+   */
+  public long getTimeNanos();
+
   /**
    * get the update counter - how often has the value been set so far?
    * @return the updateCounter
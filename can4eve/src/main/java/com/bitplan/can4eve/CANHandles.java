@@ -0,0 +1,79 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * registry of integer handles for CANInfo names
+ * 
+ * a handle is a small integer that can be used as an array index instead of
+ * looking up the name in a map for each value - the same name always gets the
+ * same handle
+ * 
+ * @author wf
+ *
+ */
+public class CANHandles {
+  private static final Map<String, Integer> handleByName = new HashMap<String, Integer>();
+  private static final List<String> names = new ArrayList<String>();
+
+  /**
+   * get the handle for the given name - the name is registered if it is not
+   * known yet
+   * 
+   * @param name
+   * @return the handle
+   */
+  public static synchronized int getHandle(String name) {
+    Integer handle = handleByName.get(name);
+    if (handle == null) {
+      handle = names.size();
+      names.add(name);
+      handleByName.put(name, handle);
+    }
+    return handle;
+  }
+
+  /**
+   * get the name for the given handle
+   * 
+   * @param handle
+   * @return the name
+   */
+  public static synchronized String getName(int handle) {
+    if (handle < 0 || handle >= names.size())
+      throw new IllegalArgumentException("invalid handle " + handle);
+    return names.get(handle);
+  }
+
+  /**
+   * get the number of handles
+   * 
+   * @return the number of registered names
+   */
+  public static synchronized int size() {
+    return names.size();
+  }
+}
@@ -22,6 +22,7 @@ package com.bitplan.can4eve;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * a unit of information on the CAN bus
@@ -42,8 +43,11 @@ public class CANInfo {
 
   int historyValuesPerMinute;
   int maxIndex;
+  String decimation; // see Decimator.Policy - null for every sample
   
   transient List<Pid> pids=new ArrayList<Pid>();
+  transient int handle=-1;
+  transient ValueFormatter formatter;
   
   public String getName() {
     return name;
@@ -51,6 +55,15 @@ public class CANInfo {
   public void setName(String name) {
     this.name = name;
   }
+  /**
+   * get the handle of my name
+   * @return the handle see {@link CANHandles}
+   */
+  public int getHandle() {
+    if (handle<0)
+      handle=CANHandles.getHandle(name);
+    return handle;
+  }
   public String getTitle() {
     return title;
   }
@@ -74,6 +87,20 @@ public class CANInfo {
   }
   public void setFormat(String format) {
     this.format = format;
+    this.formatter = null;
+  }
+  /**
+   * get the compiled formatter for my format and the current format locale
+   * @return the formatter
+   */
+  public ValueFormatter getFormatter() {
+    ValueFormatter result = formatter;
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    if (result == null || !result.getLocale().equals(locale)) {
+      result = ValueFormatter.getInstance(format, locale);
+      formatter = result;
+    }
+    return result;
   }
   public String getUnit() {
     return unit;
@@ -117,6 +144,12 @@ public class CANInfo {
   public void setHistoryValuesPerMinute(int historyValuesPerMinute) {
     this.historyValuesPerMinute = historyValuesPerMinute;
   }
+  public String getDecimation() {
+    return decimation;
+  }
+  public void setDecimation(String decimation) {
+    this.decimation = decimation;
+  }
   public int getMaxIndex() {
     return maxIndex;
   }
@@ -0,0 +1,265 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * the latest raw payload of each CAN id - a CAN frame has at most 8 data bytes
+ * so the payload is kept as a long together with its length (DLC) in primitive
+ * tables indexed by CAN id. Hex text is only created on demand. Frames that
+ * repeat the previous payload of their id are counted as duplicates. Payload
+ * and DLC are published with a seqlock per CAN id so that readers on other
+ * threads get them consistently - the thread that decodes a CAN id is its
+ * single writer.
+ *
+ * @author wf
+ *
+ */
+public class CANRawFrames {
+  public static final int MAX_DLC = 8;
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  // odd while the writer publishes a new payload
+  private final AtomicIntegerArray versions;
+  private final AtomicLongArray payloads;
+  private final AtomicIntegerArray dlcs;
+  private final long[] times;
+  private final int[] counts;
+  private final int[] duplicates;
+
+  /**
+   * create the tables for the given number of CAN ids
+   *
+   * @param maxCanId
+   */
+  public CANRawFrames(int maxCanId) {
+    versions = new AtomicIntegerArray(maxCanId);
+    payloads = new AtomicLongArray(maxCanId);
+    dlcs = new AtomicIntegerArray(maxCanId);
+    times = new long[maxCanId];
+    counts = new int[maxCanId];
+    duplicates = new int[maxCanId];
+  }
+
+  /**
+   * pack the given bytes into a long - the first byte is the most significant
+   * one
+   *
+   * @param d
+   *          - the data bytes only the first {@link #MAX_DLC} are used
+   * @return the payload
+   */
+  public static long pack(int[] d) {
+    long payload = 0;
+    int dlc = Math.min(d.length, MAX_DLC);
+    for (int i = 0; i < dlc; i++)
+      payload = (payload << 8) | (d[i] & 0xff);
+    return payload;
+  }
+
+  /**
+   * set the raw frame of the given CAN id
+   *
+   * @param canId
+   * @param d
+   *          - the data bytes
+   * @param time
+   *          - the time in milliseconds
+   * @return false if the frame has the same payload as the previous frame of
+   *         this CAN id
+   */
+  public boolean set(int canId, int[] d, long time) {
+    if (canId < 0 || canId >= payloads.length())
+      return true;
+    long payload = pack(d);
+    byte dlc = (byte) Math.min(d.length, MAX_DLC);
+    boolean changed = counts[canId] == 0 || payloads.get(canId) != payload
+        || dlcs.get(canId) != dlc;
+    if (changed) {
+      // ordered stores between the two version increments
+      int version = versions.get(canId);
+      versions.lazySet(canId, version + 1);
+      payloads.lazySet(canId, payload);
+      dlcs.lazySet(canId, dlc);
+      versions.lazySet(canId, version + 2);
+    } else {
+      duplicates[canId]++;
+    }
+    times[canId] = time;
+    counts[canId]++;
+    return changed;
+  }
+
+  public int size() {
+    return payloads.length();
+  }
+
+  public long getPayload(int canId) {
+    return payloads.get(canId);
+  }
+
+  public int getDLC(int canId) {
+    return dlcs.get(canId);
+  }
+
+  public long getTime(int canId) {
+    return times[canId];
+  }
+
+  /**
+   * get the number of frames received for the given CAN id
+   *
+   * @param canId
+   * @return the number of frames
+   */
+  public int getCount(int canId) {
+    return counts[canId];
+  }
+
+  /**
+   * get the number of frames that repeated the previous payload
+   *
+   * @param canId
+   * @return the number of duplicate frames
+   */
+  public int getDuplicates(int canId) {
+    return duplicates[canId];
+  }
+
+  /**
+   * get the share of duplicate frames for the given CAN id
+   *
+   * @param canId
+   * @return the ratio of duplicates to all frames between 0 and 1
+   */
+  public double getDuplicateRatio(int canId) {
+    if (counts[canId] == 0)
+      return 0;
+    return (double) duplicates[canId] / counts[canId];
+  }
+
+  /**
+   * get the share of duplicate frames of all CAN ids
+   *
+   * @return the ratio of duplicates to all frames between 0 and 1
+   */
+  public double getDuplicateRatio() {
+    long total = 0;
+    long totalDuplicates = 0;
+    for (int canId = 0; canId < counts.length; canId++) {
+      total += counts[canId];
+      totalDuplicates += duplicates[canId];
+    }
+    if (total == 0)
+      return 0;
+    return (double) totalDuplicates / total;
+  }
+
+  public boolean isAvailable(int canId) {
+    return counts[canId] > 0;
+  }
+
+  /**
+   * get the data byte at the given index
+   *
+   * @param canId
+   * @param index
+   * @return the byte
+   */
+  public int getByte(int canId, int index) {
+    return (int) (payloads.get(canId) >>> (8 * (dlcs.get(canId) - 1 - index)))
+        & 0xff;
+  }
+
+  /**
+   * get the hex text of the given CAN id
+   *
+   * @param canId
+   * @return the hex bytes separated by blanks e.g. "0A FF 12" or null if there
+   *         was no frame yet
+   */
+  public String asHex(int canId) {
+    while (true) {
+      int version = versions.get(canId);
+      if (version == 0)
+        return null;
+      if ((version & 1) == 0) {
+        long payload = payloads.get(canId);
+        int dlc = dlcs.get(canId);
+        if (versions.get(canId) == version)
+          return toHex(payload, dlc);
+      }
+      // the writer is publishing
+      Thread.yield();
+    }
+  }
+
+  /**
+   * get the version of the payload of the given CAN id
+   *
+   * @param canId
+   * @return the version - it changes with every new payload and is 0 if there
+   *         was no frame yet
+   */
+  public int getVersion(int canId) {
+    return versions.get(canId) & ~1;
+  }
+
+  /**
+   * convert the given payload to hex text
+   *
+   * @param payload
+   * @param dlc
+   * @return the hex bytes separated by blanks
+   */
+  public static String toHex(long payload, int dlc) {
+    if (dlc == 0)
+      return "";
+    char[] text = new char[dlc * 3 - 1];
+    for (int i = 0; i < dlc; i++) {
+      int b = (int) (payload >>> (8 * (dlc - 1 - i))) & 0xff;
+      text[i * 3] = HEX[b >> 4];
+      text[i * 3 + 1] = HEX[b & 0xf];
+      if (i < dlc - 1)
+        text[i * 3 + 2] = ' ';
+    }
+    return new String(text);
+  }
+
+  /**
+   * return the duplicate ratios of all CAN ids that had frames
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("duplicates %5.1f %%", getDuplicateRatio() * 100));
+    for (int canId = 0; canId < counts.length; canId++) {
+      if (counts[canId] > 0)
+        sb.append(String.format("%n%03X: %7d frames %7d duplicates %5.1f %%",
+            canId, counts[canId], duplicates[canId],
+            getDuplicateRatio(canId) * 100));
+    }
+    return sb.toString();
+  }
+}
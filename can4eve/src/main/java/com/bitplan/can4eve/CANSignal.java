@@ -0,0 +1,281 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+/**
+ * declarative definition of a signal within the data bytes of a PID frame
+ * 
+ * the raw value is taken from length bits starting at startBit of the
+ * least significant byte - for big endian signals (the default) the bytes
+ * start at startByte with the most significant byte first
+ * 
+ * the value is raw * scale + offset - a raw value equal to the invalid
+ * sentinel (e.g. 255) gives no value
+ * 
+ * see http://can4eve.bitplan.com/index.php/VehicleGroup
+ * 
+ * @author wf
+ *
+ */
+public class CANSignal {
+  String name; // name of the CANInfo this signal is for
+  int startByte;
+  int startBit;
+  int length = 8; // in bits
+  boolean littleEndian;
+  boolean signed;
+  double scale = 1.0;
+  double offset = 0.0;
+  Long invalid; // raw value that signals "not available"
+
+  // compiled form
+  transient CANInfo canInfo;
+  transient int handle;
+  transient ValueType valueType;
+  transient int byteCount;
+  transient long mask;
+  transient boolean scaled;
+
+  /**
+   * the types of values a signal can produce
+   */
+  public enum ValueType {
+    Double, Integer, Boolean
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public int getStartByte() {
+    return startByte;
+  }
+
+  public void setStartByte(int startByte) {
+    this.startByte = startByte;
+  }
+
+  public int getStartBit() {
+    return startBit;
+  }
+
+  public void setStartBit(int startBit) {
+    this.startBit = startBit;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  public void setLength(int length) {
+    this.length = length;
+  }
+
+  public boolean isLittleEndian() {
+    return littleEndian;
+  }
+
+  public void setLittleEndian(boolean littleEndian) {
+    this.littleEndian = littleEndian;
+  }
+
+  public boolean isSigned() {
+    return signed;
+  }
+
+  public void setSigned(boolean signed) {
+    this.signed = signed;
+  }
+
+  public double getScale() {
+    return scale;
+  }
+
+  public void setScale(double scale) {
+    this.scale = scale;
+  }
+
+  public double getOffset() {
+    return offset;
+  }
+
+  public void setOffset(double offset) {
+    this.offset = offset;
+  }
+
+  public Long getInvalid() {
+    return invalid;
+  }
+
+  public void setInvalid(Long invalid) {
+    this.invalid = invalid;
+  }
+
+  public CANInfo getCANInfo() {
+    return canInfo;
+  }
+
+  public ValueType getValueType() {
+    return valueType;
+  }
+
+  /**
+   * compile this signal for the given vehicle group - resolves the CANInfo and
+   * precalculates everything needed for the extraction
+   * 
+   * @param vehicleGroup
+   */
+  public void compile(VehicleGroup vehicleGroup) {
+    canInfo = vehicleGroup.getCANInfoByName(name);
+    handle = canInfo.getHandle();
+    String type = canInfo.getType();
+    if ("DoubleValue".equals(type))
+      valueType = ValueType.Double;
+    else if ("IntegerValue".equals(type))
+      valueType = ValueType.Integer;
+    else if ("BooleanValue".equals(type))
+      valueType = ValueType.Boolean;
+    else
+      throw misconfigured("unsupported type " + type);
+    if (length < 1 || length > 56)
+      throw misconfigured("invalid length " + length);
+    if (startBit < 0 || startBit > 7)
+      throw misconfigured("invalid startBit " + startBit);
+    byteCount = (startBit + length + 7) / 8;
+    if (startByte < 0 || startByte + byteCount > 8)
+      throw misconfigured("invalid startByte " + startByte);
+    mask = (1L << length) - 1;
+    scaled = scale != 1.0 || offset != 0.0;
+  }
+
+  /**
+   * create an exception for a misconfiguration
+   * 
+   * @param msg
+   * @return the exception
+   */
+  private RuntimeException misconfigured(String msg) {
+    return new RuntimeException(
+        "Misconfigured signal " + name + ": " + msg);
+  }
+
+  /**
+   * get the index after the last data byte of this signal
+   * 
+   * @return the end byte index (exclusive)
+   */
+  public int getEndByte() {
+    return startByte + byteCount;
+  }
+
+  /**
+   * check whether the given data has all bytes of this signal
+   * 
+   * @param d
+   * @return true if the signal is available
+   */
+  public boolean isAvailable(int[] d) {
+    return d.length >= getEndByte();
+  }
+
+  /**
+   * extract the raw value from the given data bytes
+   * 
+   * @param d
+   *          - the data bytes
+   * @return the raw value
+   */
+  public long getRaw(int[] d) {
+    long raw = 0;
+    if (littleEndian) {
+      for (int i = startByte + byteCount - 1; i >= startByte; i--)
+        raw = (raw << 8) | d[i];
+    } else {
+      for (int i = startByte; i < startByte + byteCount; i++)
+        raw = (raw << 8) | d[i];
+    }
+    raw = (raw >>> startBit) & mask;
+    if (signed && (raw & (1L << (length - 1))) != 0)
+      raw |= ~mask;
+    return raw;
+  }
+
+  /**
+   * check whether the given raw value is valid
+   * 
+   * @param raw
+   * @return true if the raw value is not the invalid sentinel
+   */
+  public boolean isValid(long raw) {
+    return invalid == null || raw != invalid.longValue();
+  }
+
+  /**
+   * get the scaled value from the given data bytes
+   * 
+   * @param d
+   *          - the data bytes
+   * @return the value
+   */
+  public double getValue(int[] d) {
+    long raw = getRaw(d);
+    if (!scaled)
+      return raw;
+    return raw * scale + offset;
+  }
+
+  /**
+   * decode this signal from the given data bytes and pass the value to the
+   * given handler
+   * 
+   * @param d
+   *          - the data bytes
+   * @param timeStamp
+   *          - the timeStamp of the data in nanoseconds since the epoch
+   * @param handler
+   *          - the handler to set the value with
+   */
+  public void decode(int[] d, long timeStamp, CANValueHandler handler) {
+    long raw = getRaw(d);
+    if (!isValid(raw)) {
+      handler.setValue(handle, null, timeStamp);
+      return;
+    }
+    switch (valueType) {
+    case Boolean:
+      handler.setBoolean(handle, raw != 0, timeStamp);
+      break;
+    case Integer:
+      int intValue = scaled ? (int) Math.round(raw * scale + offset)
+          : (int) raw;
+      handler.setInt(handle, intValue, timeStamp);
+      break;
+    case Double:
+    default:
+      double value = scaled ? raw * scale + offset : raw;
+      handler.setDouble(handle, value, timeStamp);
+    }
+  }
+}
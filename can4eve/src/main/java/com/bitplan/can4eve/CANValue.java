@@ -23,13 +23,19 @@ package com.bitplan.can4eve;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.collections4.queue.CircularFifoQueue;
-
+import com.bitplan.can4eve.CANValueHistory.BooleanHistory;
+import com.bitplan.can4eve.CANValueHistory.DoubleHistory;
+import com.bitplan.can4eve.CANValueHistory.IntegerHistory;
+import com.bitplan.can4eve.CANValueHistory.ObjectHistory;
 import com.bitplan.can4eve.gui.javafx.MinMaxAvgHolder;
 import com.bitplan.csv.CSVUtil;
+import com.bitplan.elm327.Clock;
 import com.bitplan.error.ErrorHandler;
 
 /**
@@ -44,6 +50,18 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
                                                      // hours)
   protected static Logger LOGGER = Logger.getLogger("com.bitplan.can4eve");
   protected static boolean debug = false;
+  public static final long NO_TIME = Clock.NO_TIME;
+
+  // slots of the published state
+  protected static final int AVAILABLE = 0;
+  protected static final int TIME = 1;
+  protected static final int UPDATE_COUNT = 2;
+  protected static final int COUNT = 3;
+  protected static final int MIN = 4;
+  protected static final int MAX = 5;
+  protected static final int SUM = 6;
+  protected static final int VALUE = 7;
+  private static final int SLOTS = 8;
 
   /**
    * a value to be stored
@@ -55,6 +73,9 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
   public static class ValueItem<ValueType> implements CANValueItem<ValueType> {
     boolean available = false;
     ValueType value;
+    // nanoseconds since the epoch
+    long timeNanos = NO_TIME;
+    // the time stamp as a Date - only created on request
     Date timeStamp;
 
     public boolean isAvailable() {
@@ -74,11 +95,107 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
     }
 
     public Date getTimeStamp() {
+      if (timeStamp == null && timeNanos != NO_TIME)
+        timeStamp = Clock.toDate(timeNanos);
       return timeStamp;
     }
 
     public void setTimeStamp(Date timeStamp) {
       this.timeStamp = timeStamp;
+      this.timeNanos = Clock.fromDate(timeStamp);
+    }
+
+    public long getTimeNanos() {
+      return timeNanos;
+    }
+
+    public void setTimeNanos(long timeNanos) {
+      this.timeNanos = timeNanos;
+      this.timeStamp = null;
+    }
+  }
+
+  /**
+   * a value item that keeps a double - the value is only boxed on request
+   */
+  static class DoubleItem extends ValueItem<Double> {
+    double doubleValue;
+
+    void setDouble(double value, long timeNanos) {
+      this.value = null;
+      this.doubleValue = value;
+      this.available = true;
+      setTimeNanos(timeNanos);
+    }
+
+    @Override
+    public Double getValue() {
+      if (value == null && available)
+        return doubleValue;
+      return value;
+    }
+
+    @Override
+    public void setValue(Double value) {
+      this.value = value;
+      if (value != null)
+        doubleValue = value;
+    }
+  }
+
+  /**
+   * a value item that keeps an int - the value is only boxed on request
+   */
+  static class IntItem extends ValueItem<Integer> {
+    int intValue;
+
+    void setInt(int value, long timeNanos) {
+      this.value = null;
+      this.intValue = value;
+      this.available = true;
+      setTimeNanos(timeNanos);
+    }
+
+    @Override
+    public Integer getValue() {
+      if (value == null && available)
+        return intValue;
+      return value;
+    }
+
+    @Override
+    public void setValue(Integer value) {
+      this.value = value;
+      if (value != null)
+        intValue = value;
+    }
+  }
+
+  /**
+   * a value item that keeps a boolean
+   */
+  static class BooleanItem extends ValueItem<Boolean> {
+    boolean booleanValue;
+
+    void setBoolean(boolean value, long timeNanos) {
+      this.value = null;
+      this.booleanValue = value;
+      this.available = true;
+      setTimeNanos(timeNanos);
+    }
+
+    @Override
+    public Boolean getValue() {
+      if (value == null && available)
+        return booleanValue;
+      return value;
+    }
+
+    @Override
+    public void setValue(Boolean value) {
+      this.value = value;
+      if (value != null)
+        booleanValue = value;
     }
   }
 
@@ -92,14 +209,26 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
   private transient List<CANValueItem<ValueType>> valueItems = new ArrayList<CANValueItem<ValueType>>(); // for
                                                                                                // indexed                                                                                   // CANValues
 
-  private transient CircularFifoQueue<ValueItem<ValueType>> history;
-  private transient Date previousHistoryTimeStamp;
+  private transient CANValueHistory<ValueType> history;
+  private transient long previousHistoryTime = NO_TIME;
   long historyMSecs;
   Date startTime;
   transient private boolean display = false;
   transient private boolean read = false;
   private int updateCount;
+  // the updateCount when the value was last shown
+  private transient int displayedUpdateCount = -1;
   private transient Class<?> clazz;
+  // the state for readers on other threads - a seqlock with a single writer:
+  // the version is odd while the writer publishes
+  private final transient AtomicLong version = new AtomicLong();
+  private final transient AtomicLongArray published = new AtomicLongArray(
+      SLOTS);
+  private final transient AtomicReference<ValueType> publishedValue = new AtomicReference<ValueType>();
+  // the thread that sets the values
+  protected transient volatile Thread writer;
+  // a value set by another thread - applied by the writer
+  private transient volatile ValueItem<ValueType> requestedItem;
 
   public List<CANValueItem<ValueType>> getValueItems() {
     return valueItems;
@@ -136,10 +265,21 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
     else
       this.historyMSecs = Long.MAX_VALUE;
     // create a history buffer for MAX_HISTORY_MINUTES
-    setHistory(new CircularFifoQueue<ValueItem<ValueType>>(
+    setHistory(createHistory(
         canInfo.getHistoryValuesPerMinute() * MAX_HISTORY_MINUTES + 1));
   }
 
+  /**
+   * create the history buffer - subclasses with primitive values override
+   * this to avoid boxing
+   * 
+   * @param capacity
+   * @return the history
+   */
+  protected CANValueHistory<ValueType> createHistory(int capacity) {
+    return new ObjectHistory<ValueType>(capacity);
+  }
+
   /**
    * activate this CANValue
    */
@@ -155,7 +295,11 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
   }
 
   public Date getTimeStamp() {
-    return this.valueItem.timeStamp;
+    return this.valueItem.getTimeStamp();
+  }
+
+  public long getTimeNanos() {
+    return this.valueItem.timeNanos;
   }
 
   /**
@@ -164,26 +308,39 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
    * @param item
    * @param value
    * @param timeStamp
+   *          - nanoseconds since the epoch
    * @return the CANValueItem
    */
   public CANValueItem<ValueType> assign(CANValueItem<ValueType> item, ValueType value,
-      Date timeStamp) {
+      long timeStamp) {
     item.setValue(value);
     item.setAvailable(value != null);
-    item.setTimeStamp(timeStamp);
+    item.setTimeNanos(timeStamp);
     return item;
   }
 
   /**
    * set the value at the given index for the given timeStamp
    * 
+   * @param index
    * @param value
    * @param timeStamp
    */
-  @SuppressWarnings("unchecked")
   public void setValue(int index, ValueType value, Date timeStamp) {
-    if (this.startTime == null)
-      startTime = timeStamp;
+    setValue(index, value, Clock.fromDate(timeStamp));
+  }
+
+  /**
+   * set the value at the given index for the given timeStamp
+   * 
+   * @param index
+   * @param value
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  @SuppressWarnings("unchecked")
+  public void setValue(int index, ValueType value, long timeStamp) {
+    beginUpdate(timeStamp);
     CANValueItem<ValueType> currentItem = null;
     if (index < 0) {
       currentItem = assign(this.valueItem, value, timeStamp);
@@ -197,22 +354,218 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
       }
     }
     try {
-      if (previousHistoryTimeStamp == null) {
+      if (isHistoryDue(timeStamp)) {
         addToHistory(currentItem);
-      } else {
-        long msecsAgo = timeStamp.getTime()
-            - previousHistoryTimeStamp.getTime();
-        if (msecsAgo >= this.historyMSecs) {
-          addToHistory(currentItem);
-        }
       }
     } catch (Exception e) {
       ErrorHandler.handle(e);
     }
+    updateStatistics(value);
+    endUpdate();
+  }
+
+  /**
+   * start an update by the writer - the primitive setters of the subclasses
+   * use this and {@link #endUpdate()} around their own value handling
+   * 
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  protected final void beginUpdate(long timeStamp) {
+    if (requestedItem != null)
+      applyRequests();
+    if (this.startTime == null)
+      startTime = Clock.toDate(timeStamp);
+  }
+
+  /**
+   * finish an update by the writer and publish it
+   */
+  protected final void endUpdate() {
     updateCount++;
+    writer = Thread.currentThread();
+    publish();
     log();
   }
 
+  /**
+   * check whether a value with the given time needs to go to the history
+   * 
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   * @return true if the history interval has passed
+   */
+  protected final boolean isHistoryDue(long timeStamp) {
+    if (previousHistoryTime == NO_TIME)
+      return true;
+    long msecsAgo = (timeStamp - previousHistoryTime) / Clock.NANOS_PER_MILLI;
+    return msecsAgo >= this.historyMSecs;
+  }
+
+  /**
+   * remember that a value with the given time has been added to the history
+   * 
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  protected final void historyAdded(long timeStamp) {
+    previousHistoryTime = timeStamp;
+  }
+
+  /**
+   * set the value from a thread that is not the writer e.g. for a reset in the
+   * user interface - the value is set by the writer before its next value
+   * 
+   * @param value
+   * @param timeStamp
+   */
+  public void requestValue(ValueType value, Date timeStamp) {
+    requestValue(value, Clock.fromDate(timeStamp));
+  }
+
+  /**
+   * set the value from a thread that is not the writer
+   * 
+   * @param value
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  public void requestValue(ValueType value, long timeStamp) {
+    if (isWriter()) {
+      setValue(value, timeStamp);
+    } else {
+      ValueItem<ValueType> item = new ValueItem<ValueType>();
+      assign(item, value, timeStamp);
+      requestedItem = item;
+    }
+  }
+
+  /**
+   * apply the value requested by another thread (writer only)
+   */
+  protected void applyRequests() {
+    ValueItem<ValueType> item = requestedItem;
+    if (item != null) {
+      requestedItem = null;
+      setValue(item.getValue(), item.timeNanos);
+    }
+  }
+
+  /**
+   * update the statistics with the given value - called by the writer after
+   * the value has been set
+   * 
+   * @param value
+   */
+  protected void updateStatistics(ValueType value) {
+  }
+
+  /**
+   * check whether the current thread may write directly - other threads have
+   * to leave their changes to the writer
+   * 
+   * @return true if this is the writer thread or there is none yet
+   */
+  protected boolean isWriter() {
+    Thread current = writer;
+    return current == null || current == Thread.currentThread();
+  }
+
+  /**
+   * publish the current state for the readers - the plain fields are copied
+   * with ordered stores between the two version increments so the write path
+   * needs no lock
+   */
+  protected void publish() {
+    long v = version.get();
+    version.lazySet(v + 1);
+    published.lazySet(AVAILABLE, valueItem.available ? 1 : 0);
+    // values set by a primitive setter are published as bits only
+    publishedValue.lazySet(valueItem.value);
+    published.lazySet(VALUE, valueBits());
+    published.lazySet(TIME, valueItem.timeNanos);
+    published.lazySet(UPDATE_COUNT, updateCount);
+    publishStatistics();
+    version.lazySet(v + 2);
+  }
+
+  /**
+   * get the current value as bits for the published state - subclasses with
+   * primitive values override this and {@link #box(long)}
+   * 
+   * @return the bits
+   */
+  protected long valueBits() {
+    return 0;
+  }
+
+  /**
+   * box the given published bits - only called by readers when the value has
+   * been set by a primitive setter
+   * 
+   * @param bits
+   * @return the value
+   */
+  protected ValueType box(long bits) {
+    return null;
+  }
+
+  /**
+   * publish the statistics - subclasses with min, max and average use
+   * {@link #publish(int, double)} and {@link #publish(int, long)}
+   */
+  protected void publishStatistics() {
+  }
+
+  protected final void publish(int slot, double value) {
+    published.lazySet(slot, Double.doubleToRawLongBits(value));
+  }
+
+  protected final void publish(int slot, long value) {
+    published.lazySet(slot, value);
+  }
+
+  /**
+   * get a consistent snapshot of my state without blocking the writer
+   * 
+   * @param snapshot
+   *          - the snapshot to fill
+   * @return the snapshot
+   */
+  public CANValueSnapshot<ValueType> getSnapshot(
+      CANValueSnapshot<ValueType> snapshot) {
+    while (true) {
+      long v = version.get();
+      if ((v & 1) == 0) {
+        snapshot.available = published.get(AVAILABLE) == 1;
+        snapshot.value = publishedValue.get();
+        snapshot.bits = published.get(VALUE);
+        snapshot.time = published.get(TIME);
+        snapshot.updateCount = (int) published.get(UPDATE_COUNT);
+        snapshot.count = published.get(COUNT);
+        snapshot.min = Double.longBitsToDouble(published.get(MIN));
+        snapshot.max = Double.longBitsToDouble(published.get(MAX));
+        snapshot.sum = Double.longBitsToDouble(published.get(SUM));
+        if (version.get() == v) {
+          snapshot.version = v / 2;
+          snapshot.source = this;
+          return snapshot;
+        }
+      }
+      // the writer is publishing
+      Thread.yield();
+    }
+  }
+
+  /**
+   * get a consistent snapshot of my state
+   * 
+   * @return a new snapshot
+   */
+  public CANValueSnapshot<ValueType> getSnapshot() {
+    return getSnapshot(new CANValueSnapshot<ValueType>());
+  }
+
   /**
    * add a valueItem to the history
    * 
@@ -220,12 +573,9 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
    */
   private void addToHistory(CANValueItem<ValueType> currentItem) {
     if (currentItem.isAvailable()) {
-      ValueItem<ValueType> historyItem = new ValueItem<ValueType>();
-      historyItem.available = true;
-      historyItem.timeStamp = currentItem.getTimeStamp();
-      historyItem.value = currentItem.getValue();
-      getHistory().add(historyItem);
-      previousHistoryTimeStamp = currentItem.getTimeStamp();
+      getHistory().add(Clock.toMillis(currentItem.getTimeNanos()),
+          currentItem.getValue());
+      previousHistoryTime = currentItem.getTimeNanos();
     }
   }
 
@@ -254,6 +604,17 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
     setValue(-1, value, timeStamp);
   }
 
+  /**
+   * set the Value for the given timestamp
+   * 
+   * @param value
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  public void setValue(ValueType value, long timeStamp) {
+    setValue(-1, value, timeStamp);
+  }
+
   public ValueItem<ValueType> getValueItem() {
     return valueItem;
   }
@@ -277,14 +638,14 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
   }
 
   public ValueType getValue() {
-    return valueItem.value;
+    return valueItem.getValue();
   }
 
-  public CircularFifoQueue<ValueItem<ValueType>> getHistory() {
+  public CANValueHistory<ValueType> getHistory() {
     return history;
   }
 
-  public void setHistory(CircularFifoQueue<ValueItem<ValueType>> history) {
+  public void setHistory(CANValueHistory<ValueType> history) {
     this.history = history;
   }
 
@@ -304,6 +665,14 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
     this.updateCount = updateCount;
   }
 
+  public int getDisplayedUpdateCount() {
+    return displayedUpdateCount;
+  }
+
+  public void setDisplayedUpdateCount(int displayedUpdateCount) {
+    this.displayedUpdateCount = displayedUpdateCount;
+  }
+
   /**
    * convert me to a string
    * 
@@ -312,7 +681,7 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
   public String asString(ValueType value) {
     String result = "?";
     try {
-      result = String.format(canInfo.getFormat(), value);
+      result = canInfo.getFormatter().format(value);
     } catch (Throwable th) {
       ErrorHandler.handle(th, this.canInfo.getTitle() + "='" + value + "'");
     }
@@ -325,15 +694,17 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
    * @return me as a String
    */
   public String asString() {
-    if (this.valueItem.available)
+    if (isAvailable())
       return asString(getValue());
     else
       return "-";
   }
 
   public String asCSV() {
-    if (this.valueItem.available) {
-      String csv = CSVUtil.csv(this.canInfo.title, asString());
+    CANValueSnapshot<ValueType> snapshot = getSnapshot();
+    if (snapshot.isAvailable()) {
+      String csv = CSVUtil.csv(this.canInfo.title,
+          asString(snapshot.getValue()));
       return csv;
     } else
       return "";
@@ -346,30 +717,86 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
    *
    */
   public static class IntegerValue extends CANValue<Integer> implements MinMaxAvgHolder<Integer> {
-    Integer min;
-    Integer max;
+    private final transient IntItem item = new IntItem();
+    transient int min;
+    transient boolean hasMin;
+    transient int max;
+    transient boolean hasMax;
     Integer avg;
     long sum = 0;
     int count = 0;
+    // changes requested by other threads than the writer
+    private transient volatile Integer requestedMin;
+    private transient volatile Integer requestedMax;
+    private transient volatile boolean resetAvgRequested;
 
     public IntegerValue(CANInfo canInfo) {
       super(canInfo, Integer.class);
+      valueItem = item;
+    }
+
+    @Override
+    protected CANValueHistory<Integer> createHistory(int capacity) {
+      return new IntegerHistory(capacity);
+    }
+
+    /**
+     * set the value without boxing
+     * 
+     * @param value
+     * @param timeStamp
+     *          - nanoseconds since the epoch
+     */
+    public void setInt(int value, long timeStamp) {
+      beginUpdate(timeStamp);
+      item.setInt(value, timeStamp);
+      if (isHistoryDue(timeStamp)) {
+        ((IntegerHistory) getHistory()).add(Clock.toMillis(timeStamp), value);
+        historyAdded(timeStamp);
+      }
+      applyStatisticsRequests();
+      addStatistics(value);
+      endUpdate();
+    }
+
+    @Override
+    protected long valueBits() {
+      return item.intValue;
+    }
+
+    @Override
+    protected Integer box(long bits) {
+      return (int) bits;
     }
 
     public Integer getMin() {
-      return min;
+      return hasMin ? min : null;
     }
 
     public void setMin(Integer min) {
-      this.min = min;
+      if (isWriter()) {
+        this.hasMin = min != null;
+        if (hasMin)
+          this.min = min;
+        publish();
+      } else {
+        requestedMin = min;
+      }
     }
 
     public Integer getMax() {
-      return max;
+      return hasMax ? max : null;
     }
 
     public void setMax(Integer max) {
-      this.max = max;
+      if (isWriter()) {
+        this.hasMax = max != null;
+        if (hasMax)
+          this.max = max;
+        publish();
+      } else {
+        requestedMax = max;
+      }
     }
 
     public Integer getAvg() {
@@ -382,30 +809,73 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
      * reset the average
      */
     public void resetAvg() {
-      count=0;
-      sum=0;
+      if (isWriter()) {
+        count = 0;
+        sum = 0;
+        publish();
+      } else {
+        resetAvgRequested = true;
+      }
     }
 
     /**
-     * set the Value and calc min and max while at it
+     * calc min and max and the average
      */
-    public void setValue(int index, Integer value, Date timeStamp) {
-      super.setValue(index, value, timeStamp);
-      if (value == null)
-        return;
+    @Override
+    protected void updateStatistics(Integer value) {
+      applyStatisticsRequests();
+      if (value != null)
+        addStatistics(value);
+    }
+
+    /**
+     * apply the changes requested by other threads
+     */
+    private void applyStatisticsRequests() {
+      if (resetAvgRequested) {
+        resetAvgRequested = false;
+        count = 0;
+        sum = 0;
+      }
+      Integer newMin = requestedMin;
+      if (newMin != null) {
+        min = newMin;
+        hasMin = true;
+        requestedMin = null;
+      }
+      Integer newMax = requestedMax;
+      if (newMax != null) {
+        max = newMax;
+        hasMax = true;
+        requestedMax = null;
+      }
+    }
+
+    /**
+     * add the given value to min, max and the average
+     * 
+     * @param value
+     */
+    private void addStatistics(int value) {
       count++;
       sum += value;
-      if (min == null) {
-        min = value;
-      } else if (value < min) {
+      if (!hasMin || value < min) {
         min = value;
+        hasMin = true;
       }
-      if (max == null) {
-        max = value;
-      } else if (value > max) {
+      if (!hasMax || value > max) {
         max = value;
+        hasMax = true;
       }
     }
+
+    @Override
+    protected void publishStatistics() {
+      publish(COUNT, count);
+      publish(SUM, (double) sum);
+      publish(MIN, hasMin ? min : Double.NaN);
+      publish(MAX, hasMax ? max : Double.NaN);
+    }
   }
 
   /**
@@ -415,38 +885,94 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
    *
    */
   public static class DoubleValue extends CANValue<Double> implements MinMaxAvgHolder<Double> {
-    Double min;
-    Double max;
+    private final transient DoubleItem item = new DoubleItem();
+    // NaN if there is no minimum or maximum
+    transient double min = Double.NaN;
+    transient double max = Double.NaN;
     Double avg;
     double sum = 0.0;
     long count = 0;
+    // changes requested by other threads than the writer
+    private transient volatile Double requestedMin;
+    private transient volatile Double requestedMax;
+    private transient volatile boolean resetAvgRequested;
 
     public DoubleValue(CANInfo canInfo) {
       super(canInfo, Double.class);
+      valueItem = item;
+    }
+
+    @Override
+    protected CANValueHistory<Double> createHistory(int capacity) {
+      return new DoubleHistory(capacity);
+    }
+
+    /**
+     * set the value without boxing
+     * 
+     * @param value
+     * @param timeStamp
+     *          - nanoseconds since the epoch
+     */
+    public void setDouble(double value, long timeStamp) {
+      beginUpdate(timeStamp);
+      item.setDouble(value, timeStamp);
+      if (isHistoryDue(timeStamp)) {
+        ((DoubleHistory) getHistory()).add(Clock.toMillis(timeStamp), value);
+        historyAdded(timeStamp);
+      }
+      applyStatisticsRequests();
+      addStatistics(value);
+      endUpdate();
+    }
+
+    @Override
+    protected long valueBits() {
+      return Double.doubleToRawLongBits(item.doubleValue);
+    }
+
+    @Override
+    protected Double box(long bits) {
+      return Double.longBitsToDouble(bits);
     }
 
     public Double getMin() {
-      return min;
+      return Double.isNaN(min) ? null : min;
     }
 
     public void setMin(Double min) {
-      this.min = min;
+      if (isWriter()) {
+        this.min = min == null ? Double.NaN : min;
+        publish();
+      } else {
+        requestedMin = min;
+      }
     }
 
     public Double getMax() {
-      return max;
+      return Double.isNaN(max) ? null : max;
     }
 
     public void setMax(Double max) {
-      this.max = max;
+      if (isWriter()) {
+        this.max = max == null ? Double.NaN : max;
+        publish();
+      } else {
+        requestedMax = max;
+      }
     }
-    
+
     /**
      * reset the average
      */
     public void resetAvg() {
-      count=0;
-      sum=0;
+      if (isWriter()) {
+        count = 0;
+        sum = 0;
+        publish();
+      } else {
+        resetAvgRequested = true;
+      }
     }
 
     public Double getAvg() {
@@ -456,24 +982,56 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
     }
 
     /**
-     * set the Value and calc min and max while at it
+     * calc min and max and the average
      */
-    public void setValue(int index, Double value, Date timeStamp) {
-      super.setValue(index, value, timeStamp);
-      if (value == null)
-        return;
+    @Override
+    protected void updateStatistics(Double value) {
+      applyStatisticsRequests();
+      if (value != null)
+        addStatistics(value);
+    }
+
+    /**
+     * apply the changes requested by other threads
+     */
+    private void applyStatisticsRequests() {
+      if (resetAvgRequested) {
+        resetAvgRequested = false;
+        count = 0;
+        sum = 0;
+      }
+      Double newMin = requestedMin;
+      if (newMin != null) {
+        min = newMin;
+        requestedMin = null;
+      }
+      Double newMax = requestedMax;
+      if (newMax != null) {
+        max = newMax;
+        requestedMax = null;
+      }
+    }
+
+    /**
+     * add the given value to min, max and the average
+     * 
+     * @param value
+     */
+    private void addStatistics(double value) {
       count++;
       sum += value;
-      if (min == null)
-        min = value;
-      else if (value < min) {
+      if (Double.isNaN(min) || value < min)
         min = value;
-      }
-      if (max == null)
-        max = value;
-      if (value > max) {
+      if (Double.isNaN(max) || value > max)
         max = value;
-      }
+    }
+
+    @Override
+    protected void publishStatistics() {
+      publish(COUNT, count);
+      publish(SUM, sum);
+      publish(MIN, min);
+      publish(MAX, max);
     }
 
     /**
@@ -490,14 +1048,35 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
      */
     public void integrate(Integer value, Date timeStamp, int newValue,
         Date newTimeStamp, Double factor) {
+      integrate(value, Clock.fromDate(timeStamp), newValue,
+          Clock.fromDate(newTimeStamp), factor);
+    }
+
+    /**
+     * calc the numerical integral with sub millisecond precision and add it
+     * 
+     * @param value
+     * @param timeStamp
+     *          - nanoseconds since the epoch
+     * @param newValue
+     * @param newTimeStamp
+     *          - nanoseconds since the epoch
+     * @param factor
+     *          for millisecs
+     */
+    public void integrate(Integer value, long timeStamp, int newValue,
+        long newTimeStamp, Double factor) {
       // width of integral
-      long msecs = newTimeStamp.getTime() - timeStamp.getTime();
+      // e.g. a reset of the trip
+      applyRequests();
+      double msecs = (newTimeStamp - timeStamp)
+          / (double) Clock.NANOS_PER_MILLI;
       double average = (newValue + value) / 2;
       double area = average * msecs * factor;
-      if (!this.valueItem.available)
-        this.setValue(0.0, timeStamp);
-      double newIntegral = this.valueItem.value + area;
-      this.setValue(newIntegral, newTimeStamp);
+      if (!item.available)
+        setDouble(0.0, timeStamp);
+      double newIntegral = item.doubleValue + area;
+      setDouble(newIntegral, newTimeStamp);
     }
 
   }
@@ -509,6 +1088,7 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
    *
    */
   public static class BooleanValue extends CANValue<Boolean> {
+    private final transient BooleanItem item = new BooleanItem();
 
     /**
      * construct me from a canInfo
@@ -517,18 +1097,56 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
      */
     public BooleanValue(CANInfo canInfo) {
       super(canInfo, Boolean.class);
+      valueItem = item;
+    }
+
+    @Override
+    protected CANValueHistory<Boolean> createHistory(int capacity) {
+      return new BooleanHistory(capacity);
+    }
+
+    /**
+     * set the value without boxing
+     * 
+     * @param value
+     * @param timeStamp
+     *          - nanoseconds since the epoch
+     */
+    public void setBoolean(boolean value, long timeStamp) {
+      beginUpdate(timeStamp);
+      item.setBoolean(value, timeStamp);
+      if (isHistoryDue(timeStamp)) {
+        ((BooleanHistory) getHistory()).add(Clock.toMillis(timeStamp), value);
+        historyAdded(timeStamp);
+      }
+      endUpdate();
+    }
+
+    @Override
+    protected long valueBits() {
+      return item.booleanValue ? 1 : 0;
+    }
+
+    @Override
+    protected Boolean box(long bits) {
+      return bits != 0;
     }
 
     public String asString() {
       String result = "?";
-      if (valueItem.available) {
-        if (this.valueItem.value)
-          result = this.canInfo.trueSymbol;
-        else
-          result = this.canInfo.falseSymbol;
+      if (item.available) {
+        result = asString(item.getValue());
       }
       return result;
     }
+
+    @Override
+    public String asString(Boolean value) {
+      if (value)
+        return this.canInfo.trueSymbol;
+      else
+        return this.canInfo.falseSymbol;
+    }
   }
 
   /**
@@ -546,17 +1164,67 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
   }
 
   /**
-   * Raw Value
+   * Raw Value - either set as a text line or backed by the primitive payload
+   * table of {@link CANRawFrames} in which case the hex text is only created
+   * when the value is shown, logged or exported
    * 
    * @author wf
    *
    */
   public static class CANRawValue extends CANValue<String> {
+    private CANRawFrames rawFrames;
+    private int canId = -1;
+    // the hex text of the latest payload - shown by several threads
+    private transient volatile Hex hex;
+
+    /**
+     * the hex text of a payload version - text and version are always
+     * published together
+     */
+    static class Hex {
+      final int version;
+      final String text;
+
+      Hex(int version, String text) {
+        this.version = version;
+        this.text = text;
+      }
+    }
 
     public CANRawValue(CANInfo canInfo) {
       super(canInfo, String.class);
     }
 
+    /**
+     * create a raw value that reads the given CAN id from the given raw frames
+     * 
+     * @param canInfo
+     * @param rawFrames
+     * @param canId
+     */
+    public CANRawValue(CANInfo canInfo, CANRawFrames rawFrames, int canId) {
+      this(canInfo);
+      this.rawFrames = rawFrames;
+      this.canId = canId;
+    }
+
+    public CANRawFrames getRawFrames() {
+      return rawFrames;
+    }
+
+    public int getCanId() {
+      return canId;
+    }
+
+    /**
+     * check whether I am backed by the raw frames table
+     * 
+     * @return true if there is a raw frame table for my CAN id
+     */
+    private boolean isFrameBacked() {
+      return rawFrames != null && canId >= 0 && canId < rawFrames.size();
+    }
+
     /**
      * set the raw Value based on an array of hex string elements
      * 
@@ -566,6 +1234,77 @@ public abstract class CANValue<ValueType> implements CANData<ValueType> {
     public void setRawValue(String line, Date timeStamp) {
       super.setValue(line, timeStamp);
     }
+
+    /**
+     * set the raw Value based on an array of hex string elements
+     * 
+     * @param line
+     * @param timeStamp
+     *          - nanoseconds since the epoch
+     */
+    public void setRawValue(String line, long timeStamp) {
+      super.setValue(line, timeStamp);
+    }
+
+    @Override
+    public boolean isAvailable() {
+      if (isFrameBacked())
+        return rawFrames.isAvailable(canId);
+      return super.isAvailable();
+    }
+
+    @Override
+    public String getValue() {
+      if (!isFrameBacked())
+        return super.getValue();
+      int version = rawFrames.getVersion(canId);
+      Hex current = hex;
+      if (current == null || current.version != version) {
+        // the text is at least as new as the version
+        current = new Hex(version, rawFrames.asHex(canId));
+        hex = current;
+      }
+      return current.text;
+    }
+
+    @Override
+    public Date getTimeStamp() {
+      if (!isFrameBacked())
+        return super.getTimeStamp();
+      if (!rawFrames.isAvailable(canId))
+        return null;
+      return new Date(rawFrames.getTime(canId));
+    }
+
+    @Override
+    public long getTimeNanos() {
+      if (!isFrameBacked())
+        return super.getTimeNanos();
+      if (!rawFrames.isAvailable(canId))
+        return NO_TIME;
+      return Clock.fromMillis(rawFrames.getTime(canId));
+    }
+
+    @Override
+    public int getUpdateCount() {
+      if (isFrameBacked())
+        return rawFrames.getCount(canId);
+      return super.getUpdateCount();
+    }
+
+    @Override
+    public CANValueSnapshot<String> getSnapshot(
+        CANValueSnapshot<String> snapshot) {
+      if (!isFrameBacked())
+        return super.getSnapshot(snapshot);
+      // read from the raw frame table - count and text may be a frame apart
+      snapshot.updateCount = getUpdateCount();
+      snapshot.available = isAvailable();
+      snapshot.value = getValue();
+      snapshot.time = getTimeNanos();
+      snapshot.version = snapshot.updateCount;
+      return snapshot;
+    }
   }
 
-}
\ No newline at end of file
+}
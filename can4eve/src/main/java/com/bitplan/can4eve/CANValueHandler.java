@@ -20,12 +20,22 @@
  */
 package com.bitplan.can4eve;
 
-import java.util.Date;
-
 /**
  * handler for CANValues
+ * 
+ * values can be set by name or - without a map lookup - by the handle of the
+ * name from {@link CANHandles}. The timeStamp is in nanoseconds since the
+ * epoch see {@link com.bitplan.elm327.Clock}
  * @author wf
  */
 public interface CANValueHandler {
-  public <T> void setValue(String name, T value,  Date timeStamp);
+  public <T> void setValue(String name, T value, long timeStamp);
+
+  public <T> void setValue(int handle, T value, long timeStamp);
+
+  public void setDouble(int handle, double value, long timeStamp);
+
+  public void setInt(int handle, int value, long timeStamp);
+
+  public void setBoolean(int handle, boolean value, long timeStamp);
 }
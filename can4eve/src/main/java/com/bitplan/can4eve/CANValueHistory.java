@@ -0,0 +1,428 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * ring buffer for the history of a CANValue
+ *
+ * the timestamps are kept as epoch milliseconds in a long array and the
+ * values in a primitive array of the specialized subclasses - no objects are
+ * created when a value is added. Every value added gets a sequence number -
+ * the value with sequence number s is kept in slot s % capacity until it is
+ * overwritten
+ *
+ * the history is written by a single thread, readers on other threads use a
+ * {@link Cursor} which detects values that are overwritten while they are
+ * read
+ *
+ * @author wf
+ *
+ * @param <T>
+ */
+public abstract class CANValueHistory<T> {
+  protected final int capacity;
+  protected final long[] times;
+  // number of values ever added - the sequence number of the next value
+  private volatile long total;
+  // number of values whose slot is being written or has been written - one
+  // more than total while the writer overwrites a slot
+  private volatile long claimed;
+
+  /**
+   * create a history with the given capacity
+   *
+   * @param capacity
+   */
+  public CANValueHistory(int capacity) {
+    if (capacity < 1)
+      capacity = 1;
+    this.capacity = capacity;
+    this.times = new long[capacity];
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * get the number of values added so far including the ones that have
+   * already been overwritten
+   *
+   * @return the total number of values
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * get the number of values available
+   *
+   * @return the size
+   */
+  public int size() {
+    return (int) Math.min(total, capacity);
+  }
+
+  public boolean isEmpty() {
+    return total == 0;
+  }
+
+  /**
+   * get the sequence number of the oldest value available
+   *
+   * @return the first sequence number
+   */
+  public long getFirstSequence() {
+    long t = total;
+    return t <= capacity ? 0 : t - capacity;
+  }
+
+  /**
+   * get the slot to write the next value to - from now on the value that was
+   * in the slot is invalid for the readers
+   *
+   * @return the slot
+   */
+  protected int nextSlot() {
+    long t = total;
+    claimed = t + 1;
+    return (int) (t % capacity);
+  }
+
+  /**
+   * publish the value that has been written to the given slot
+   *
+   * @param slot
+   * @param time
+   */
+  protected void commit(int slot, long time) {
+    times[slot] = time;
+    total++;
+  }
+
+  /**
+   * get the slot of the i-th value available
+   *
+   * @param i
+   *          - 0 is the oldest value
+   * @return the slot
+   */
+  protected int slot(int i) {
+    if (i < 0 || i >= size())
+      throw new IndexOutOfBoundsException(
+          "history index " + i + " not in 0.." + size());
+    return (int) ((getFirstSequence() + i) % capacity);
+  }
+
+  /**
+   * add a value
+   *
+   * @param time
+   *          - the epoch milliseconds of the value
+   * @param value
+   */
+  public abstract void add(long time, T value);
+
+  /**
+   * get the value in the given slot
+   *
+   * @param slot
+   * @return the value
+   */
+  protected abstract T valueAt(int slot);
+
+  /**
+   * get the value in the given slot as a double
+   *
+   * @param slot
+   * @return the value
+   */
+  protected abstract double doubleAt(int slot);
+
+  public long getTime(int i) {
+    return times[slot(i)];
+  }
+
+  public Date getTimeStamp(int i) {
+    return new Date(getTime(i));
+  }
+
+  public T getValue(int i) {
+    return valueAt(slot(i));
+  }
+
+  public double getDouble(int i) {
+    return doubleAt(slot(i));
+  }
+
+  /**
+   * forget all values
+   */
+  public void clear() {
+    total = 0;
+    claimed = 0;
+  }
+
+  /**
+   * get a cursor starting at the oldest value
+   *
+   * @return the cursor
+   */
+  public Cursor cursor() {
+    return new Cursor(0);
+  }
+
+  /**
+   * get a cursor starting at the given sequence number - if the value has
+   * already been overwritten the cursor starts at the oldest value
+   *
+   * @param sequence
+   * @return the cursor
+   */
+  public Cursor cursor(long sequence) {
+    return new Cursor(sequence);
+  }
+
+  /**
+   * cursor over the values of the history
+   *
+   * <pre>
+   * Cursor cursor = history.cursor();
+   * while (cursor.next()) {
+   *   long time = cursor.getTime();
+   *   double value = cursor.getDouble();
+   * }
+   * </pre>
+   */
+  public class Cursor {
+    private long sequence;
+    private int slot = -1;
+    // copy of the current value
+    private long time;
+    private double doubleValue;
+
+    Cursor(long sequence) {
+      this.sequence = sequence;
+    }
+
+    /**
+     * move to the next value - time and value are copied so that they stay
+     * consistent while the writer goes on
+     *
+     * @return true if there is a value
+     */
+    public boolean next() {
+      while (true) {
+        // the oldest value that is not being overwritten
+        long first = Math.max(claimed - capacity, 0);
+        if (sequence < first)
+          sequence = first;
+        if (sequence >= total)
+          return false;
+        int s = (int) (sequence % capacity);
+        time = times[s];
+        doubleValue = doubleAt(s);
+        if (!isLapped(sequence)) {
+          slot = s;
+          sequence++;
+          return true;
+        }
+        // the writer has overwritten the slot while we read it - skip ahead
+      }
+    }
+
+    /**
+     * check whether the writer has started to overwrite the value with the
+     * given sequence number
+     *
+     * @param valueSequence
+     * @return true if the value is no longer valid
+     */
+    private boolean isLapped(long valueSequence) {
+      return claimed > valueSequence + capacity;
+    }
+
+    /**
+     * get the sequence number of the next value
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    /**
+     * get the current value as an object
+     *
+     * @return the value or null if it has been overwritten since
+     *         {@link #next()}
+     */
+    public T getValue() {
+      T value = valueAt(slot);
+      if (isLapped(sequence - 1))
+        return null;
+      return value;
+    }
+
+    public double getDouble() {
+      return doubleValue;
+    }
+  }
+
+  /**
+   * history of double values
+   */
+  public static class DoubleHistory extends CANValueHistory<Double> {
+    private final double[] values;
+
+    public DoubleHistory(int capacity) {
+      super(capacity);
+      values = new double[this.capacity];
+    }
+
+    public void add(long time, double value) {
+      int slot = nextSlot();
+      values[slot] = value;
+      commit(slot, time);
+    }
+
+    @Override
+    public void add(long time, Double value) {
+      add(time, value.doubleValue());
+    }
+
+    @Override
+    protected Double valueAt(int slot) {
+      return values[slot];
+    }
+
+    @Override
+    protected double doubleAt(int slot) {
+      return values[slot];
+    }
+  }
+
+  /**
+   * history of integer values
+   */
+  public static class IntegerHistory extends CANValueHistory<Integer> {
+    private final int[] values;
+
+    public IntegerHistory(int capacity) {
+      super(capacity);
+      values = new int[this.capacity];
+    }
+
+    public void add(long time, int value) {
+      int slot = nextSlot();
+      values[slot] = value;
+      commit(slot, time);
+    }
+
+    @Override
+    public void add(long time, Integer value) {
+      add(time, value.intValue());
+    }
+
+    @Override
+    protected Integer valueAt(int slot) {
+      return values[slot];
+    }
+
+    @Override
+    protected double doubleAt(int slot) {
+      return values[slot];
+    }
+  }
+
+  /**
+   * history of boolean values
+   */
+  public static class BooleanHistory extends CANValueHistory<Boolean> {
+    private final BitSet values;
+
+    public BooleanHistory(int capacity) {
+      super(capacity);
+      values = new BitSet(this.capacity);
+    }
+
+    public void add(long time, boolean value) {
+      int slot = nextSlot();
+      values.set(slot, value);
+      commit(slot, time);
+    }
+
+    @Override
+    public void add(long time, Boolean value) {
+      add(time, value.booleanValue());
+    }
+
+    @Override
+    protected Boolean valueAt(int slot) {
+      return values.get(slot);
+    }
+
+    @Override
+    protected double doubleAt(int slot) {
+      return values.get(slot) ? 1.0 : 0.0;
+    }
+  }
+
+  /**
+   * history of other values e.g. Strings or enums
+   */
+  public static class ObjectHistory<T> extends CANValueHistory<T> {
+    private final Object[] values;
+
+    public ObjectHistory(int capacity) {
+      super(capacity);
+      values = new Object[this.capacity];
+    }
+
+    @Override
+    public void add(long time, T value) {
+      int slot = nextSlot();
+      values[slot] = value;
+      commit(slot, time);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected T valueAt(int slot) {
+      return (T) values[slot];
+    }
+
+    @Override
+    protected double doubleAt(int slot) {
+      Object value = values[slot];
+      if (value instanceof Number)
+        return ((Number) value).doubleValue();
+      return Double.NaN;
+    }
+  }
+}
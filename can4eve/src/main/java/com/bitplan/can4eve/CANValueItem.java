@@ -37,4 +37,8 @@ public interface CANValueItem<T> {
 
   public Date getTimeStamp();
   public void setTimeStamp(Date timeStamp);
+
+  // the time stamp in nanoseconds since the epoch
+  public long getTimeNanos();
+  public void setTimeNanos(long timeStamp);
 }
@@ -0,0 +1,162 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+import java.util.Date;
+
+import com.bitplan.elm327.Clock;
+
+/**
+ * a consistent copy of the state of a CANValue - value, timestamp, update
+ * count and statistics are always from the same update, see
+ * {@link CANValue#getSnapshot(CANValueSnapshot)}. A snapshot may be reused by
+ * a single reader to avoid garbage.
+ *
+ * @author wf
+ *
+ * @param <T>
+ */
+public class CANValueSnapshot<T> {
+  long version;
+  boolean available;
+  T value;
+  // the value of a primitive setter - boxed by the source on request
+  long bits;
+  CANValue<T> source;
+  long time;
+  int updateCount;
+  long count;
+  double min = Double.NaN;
+  double max = Double.NaN;
+  double sum;
+
+  /**
+   * get the version of the value - the number of updates that have been
+   * published
+   *
+   * @return the version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  public boolean isAvailable() {
+    return available;
+  }
+
+  /**
+   * get the value - a value that has been set by a primitive setter is boxed
+   * here
+   *
+   * @return the value
+   */
+  public T getValue() {
+    if (value == null && available && source != null)
+      value = source.box(bits);
+    return value;
+  }
+
+  /**
+   * get the time of the value
+   *
+   * @return the time in milliseconds or {@link CANValue#NO_TIME}
+   */
+  public long getTime() {
+    return Clock.toMillis(time);
+  }
+
+  /**
+   * get the time of the value
+   *
+   * @return the time in nanoseconds since the epoch or
+   *         {@link CANValue#NO_TIME}
+   */
+  public long getTimeNanos() {
+    return time;
+  }
+
+  /**
+   * get the time of the value as a Date
+   *
+   * @return the timeStamp or null if there is none
+   */
+  public Date getTimeStamp() {
+    return Clock.toDate(time);
+  }
+
+  public int getUpdateCount() {
+    return updateCount;
+  }
+
+  /**
+   * get the number of values in the average
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * get the minimum
+   *
+   * @return the minimum or NaN if there is none
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * get the maximum
+   *
+   * @return the maximum or NaN if there is none
+   */
+  public double getMax() {
+    return max;
+  }
+
+  public double getSum() {
+    return sum;
+  }
+
+  /**
+   * get the average
+   *
+   * @return the average or NaN if there is none
+   */
+  public double getAvg() {
+    if (count == 0)
+      return Double.NaN;
+    return sum / count;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format(
+        "v%d %s #%d min=%s max=%s avg=%s (%d values)", version,
+        available ? getValue() : "-", updateCount, min, max, getAvg(), count);
+    return result;
+  }
+}
@@ -0,0 +1,284 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+/**
+ * thins out the samples of a single channel between decoding and
+ * CANValue.setValue - {@link #add(double, long)} returns how many values are to
+ * be passed on which are then available via {@link #getValue(int)} and
+ * {@link #getTime(int)}. An interval is closed by the first sample after it
+ * or by the second {@link #tick()} without a new sample so that a channel
+ * that stops sending still passes on its last value. The methods are not
+ * synchronized - a caller that adds samples and ticks from different threads
+ * has to lock the decimator around each call and the reading of its values.
+ *
+ * @author wf
+ *
+ */
+public class Decimator {
+  /**
+   * the way samples are thinned out
+   */
+  public enum Policy {
+    /**
+     * every sample is passed on e.g. for the inputs of integrators
+     */
+    none,
+    /**
+     * the latest sample of each interval is passed on
+     */
+    latest,
+    /**
+     * the smallest and largest sample of each interval and the latest one are
+     * passed on in time order
+     */
+    minmax,
+    /**
+     * the average of each interval is passed on with the time of the latest
+     * sample
+     */
+    average
+  }
+
+  public static final int MAX_EMITS = 3;
+
+  private final Policy policy;
+  private final long intervalMsecs;
+
+  // the current interval
+  private long intervalStart = Long.MIN_VALUE;
+  private int samples;
+  private double sum;
+  private double min;
+  private long minTime;
+  private double max;
+  private long maxTime;
+  private double latest;
+  private long latestTime;
+
+  // the values to pass on
+  private final double[] emitValues = new double[MAX_EMITS];
+  private final long[] emitTimes = new long[MAX_EMITS];
+
+  private long received;
+  private long passed;
+  // the number of samples received at the last tick
+  private long receivedAtTick;
+  // samples are passed on directly after stop
+  private boolean stopped;
+
+  /**
+   * create a decimator
+   *
+   * @param policy
+   * @param intervalMsecs
+   *          - the length of an interval
+   */
+  public Decimator(Policy policy, long intervalMsecs) {
+    this.policy = policy;
+    this.intervalMsecs = intervalMsecs;
+  }
+
+  /**
+   * get the interval length for a channel - the shorter of the display
+   * interval and the history interval
+   *
+   * @param canInfo
+   * @param displayMsecs
+   * @return the interval in milliseconds
+   */
+  public static long getIntervalMsecs(CANInfo canInfo, long displayMsecs) {
+    long result = displayMsecs;
+    if (canInfo.getHistoryValuesPerMinute() > 0)
+      result = Math.min(result, 60000 / canInfo.getHistoryValuesPerMinute());
+    return result;
+  }
+
+  /**
+   * parse the given policy name
+   *
+   * @param name
+   *          - the name of the policy - may be null
+   * @return the policy - none if the name is null
+   */
+  public static Policy getPolicy(String name) {
+    if (name == null)
+      return Policy.none;
+    return Policy.valueOf(name);
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public long getIntervalMsecs() {
+    return intervalMsecs;
+  }
+
+  /**
+   * add a sample
+   *
+   * @param value
+   * @param time
+   *          - the time of the sample in milliseconds
+   * @return the number of values to pass on
+   */
+  public int add(double value, long time) {
+    received++;
+    int emits = 0;
+    if (policy == Policy.none || intervalMsecs <= 0 || stopped) {
+      emits = emit(emits, value, time);
+    } else {
+      if (samples > 0 && time - intervalStart >= intervalMsecs)
+        emits = close();
+      if (samples == 0) {
+        intervalStart = time;
+        min = value;
+        minTime = time;
+        max = value;
+        maxTime = time;
+        sum = 0;
+      } else if (value < min) {
+        min = value;
+        minTime = time;
+      } else if (value > max) {
+        max = value;
+        maxTime = time;
+      }
+      sum += value;
+      latest = value;
+      latestTime = time;
+      samples++;
+    }
+    passed += emits;
+    return emits;
+  }
+
+  /**
+   * close the current interval
+   *
+   * @return the number of values to pass on
+   */
+  private int close() {
+    int emits = 0;
+    if (policy == Policy.latest) {
+      emits = emit(emits, latest, latestTime);
+    } else if (policy == Policy.average) {
+      emits = emit(emits, sum / samples, latestTime);
+    } else {
+      // min and max in the order they were received then the latest value
+      boolean minFirst = minTime <= maxTime;
+      emits = emit(emits, minFirst ? min : max, minFirst ? minTime : maxTime);
+      if (maxTime != minTime)
+        emits = emit(emits, minFirst ? max : min,
+            minFirst ? maxTime : minTime);
+      if (latestTime != minTime && latestTime != maxTime)
+        emits = emit(emits, latest, latestTime);
+    }
+    samples = 0;
+    return emits;
+  }
+
+  /**
+   * pass on the samples that are still pending e.g. when the connection is
+   * closed
+   *
+   * @return the number of values to pass on
+   */
+  public int flush() {
+    int emits = 0;
+    if (samples > 0)
+      emits = close();
+    passed += emits;
+    return emits;
+  }
+
+  /**
+   * pass on the pending samples if no sample has been added since the
+   * previous tick - to be called periodically e.g. by the display
+   *
+   * @return the number of values to pass on
+   */
+  public int tick() {
+    int emits = 0;
+    if (samples > 0 && received == receivedAtTick)
+      emits = close();
+    receivedAtTick = received;
+    passed += emits;
+    return emits;
+  }
+
+  /**
+   * pass on the samples that are still pending and every further sample
+   * directly e.g. when the decimator is replaced
+   *
+   * @return the number of values to pass on
+   */
+  public int stop() {
+    stopped = true;
+    return flush();
+  }
+
+  private int emit(int index, double value, long time) {
+    emitValues[index] = value;
+    emitTimes[index] = time;
+    return index + 1;
+  }
+
+  /**
+   * get the value to pass on at the given index
+   *
+   * @param index
+   * @return the value
+   */
+  public double getValue(int index) {
+    return emitValues[index];
+  }
+
+  /**
+   * get the time of the value to pass on at the given index
+   *
+   * @param index
+   * @return the time in milliseconds
+   */
+  public long getTime(int index) {
+    return emitTimes[index];
+  }
+
+  public long getReceived() {
+    return received;
+  }
+
+  public long getPassed() {
+    return passed;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format("%s %d msecs: %d of %d samples passed",
+        policy, intervalMsecs, passed, received);
+    return result;
+  }
+}
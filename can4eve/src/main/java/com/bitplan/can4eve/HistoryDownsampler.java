@@ -0,0 +1,277 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+/**
+ * incremental min/max downsampling of a value history for charts
+ *
+ * the time axis is divided into buckets of equal width - each bucket keeps the
+ * minimum and the maximum value and is shown as two points so that peaks are
+ * never lost. The number of buckets is limited to half the point budget: when
+ * the visible range outgrows the buckets the width is doubled and neighbouring
+ * buckets are merged, values that left the history are trimmed from the front.
+ * Otherwise a new sample only touches the last bucket.
+ *
+ * the changes since the last {@link #sync()} are tracked so that a chart only
+ * needs to replace the points from {@link #getFirstChangedPoint()} on
+ *
+ * @author wf
+ *
+ */
+public class HistoryDownsampler {
+  public static final int POINTS_PER_BUCKET = 2;
+
+  private final int pointBudget;
+  private final int maxBuckets;
+  private long origin = Long.MIN_VALUE; // epoch millis of bucket index 0
+  private long width; // width of a bucket in millis
+  private int buckets; // number of non empty buckets
+
+  private final long[] bucketIndex;
+  private final long[] minTime;
+  private final double[] min;
+  private final long[] maxTime;
+  private final double[] max;
+
+  // change tracking
+  private boolean rebuilt = true;
+  private int droppedBuckets;
+  private int firstChanged;
+
+  /**
+   * create a downsampler
+   *
+   * @param pointBudget
+   *          - the maximum number of points to show
+   * @param initialWidth
+   *          - the initial width of a bucket in milliseconds
+   */
+  public HistoryDownsampler(int pointBudget, long initialWidth) {
+    this.pointBudget = Math.max(pointBudget, 2 * POINTS_PER_BUCKET);
+    this.maxBuckets = this.pointBudget / POINTS_PER_BUCKET;
+    this.width = Math.max(initialWidth, 1);
+    bucketIndex = new long[maxBuckets];
+    minTime = new long[maxBuckets];
+    min = new double[maxBuckets];
+    maxTime = new long[maxBuckets];
+    max = new double[maxBuckets];
+  }
+
+  public int getPointBudget() {
+    return pointBudget;
+  }
+
+  public long getWidth() {
+    return width;
+  }
+
+  public int getBucketCount() {
+    return buckets;
+  }
+
+  public int getPointCount() {
+    return buckets * POINTS_PER_BUCKET;
+  }
+
+  /**
+   * add a sample - samples need to be added in time order
+   *
+   * @param time
+   * @param value
+   */
+  public void add(long time, double value) {
+    if (Double.isNaN(value))
+      return;
+    if (origin == Long.MIN_VALUE)
+      origin = time;
+    long index = (time - origin) / width;
+    while (buckets > 0 && index - bucketIndex[0] >= maxBuckets) {
+      merge();
+      index = (time - origin) / width;
+    }
+    int last = buckets - 1;
+    if (last >= 0 && bucketIndex[last] == index) {
+      if (value < min[last]) {
+        min[last] = value;
+        minTime[last] = time;
+      }
+      if (value >= max[last]) {
+        max[last] = value;
+        maxTime[last] = time;
+      }
+      changed(last);
+    } else {
+      int b = buckets++;
+      bucketIndex[b] = index;
+      min[b] = value;
+      minTime[b] = time;
+      max[b] = value;
+      maxTime[b] = time;
+      changed(b);
+    }
+  }
+
+  /**
+   * double the width of the buckets and merge neighbours
+   */
+  private void merge() {
+    width *= 2;
+    int target = -1;
+    for (int b = 0; b < buckets; b++) {
+      long index = bucketIndex[b] / 2;
+      if (target >= 0 && bucketIndex[target] == index) {
+        if (min[b] < min[target]) {
+          min[target] = min[b];
+          minTime[target] = minTime[b];
+        }
+        if (max[b] >= max[target]) {
+          max[target] = max[b];
+          maxTime[target] = maxTime[b];
+        }
+      } else {
+        target++;
+        bucketIndex[target] = index;
+        min[target] = min[b];
+        minTime[target] = minTime[b];
+        max[target] = max[b];
+        maxTime[target] = maxTime[b];
+      }
+    }
+    buckets = target + 1;
+    rebuilt = true;
+  }
+
+  /**
+   * remove the buckets that end before the given time
+   *
+   * @param firstTime
+   *          - the time of the oldest value still in the history
+   */
+  public void trim(long firstTime) {
+    int drop = 0;
+    while (drop < buckets
+        && origin + (bucketIndex[drop] + 1) * width <= firstTime)
+      drop++;
+    if (drop == 0)
+      return;
+    int remaining = buckets - drop;
+    System.arraycopy(bucketIndex, drop, bucketIndex, 0, remaining);
+    System.arraycopy(minTime, drop, minTime, 0, remaining);
+    System.arraycopy(min, drop, min, 0, remaining);
+    System.arraycopy(maxTime, drop, maxTime, 0, remaining);
+    System.arraycopy(max, drop, max, 0, remaining);
+    buckets = remaining;
+    droppedBuckets += drop;
+    firstChanged = Math.max(firstChanged - drop, 0);
+  }
+
+  /**
+   * remember the first bucket changed since the last sync
+   *
+   * @param bucket
+   */
+  private void changed(int bucket) {
+    if (bucket < firstChanged)
+      firstChanged = bucket;
+  }
+
+  /**
+   * get the time of the given point
+   *
+   * @param point
+   * @return the epoch millis of the point
+   */
+  public long getTime(int point) {
+    int b = point / POINTS_PER_BUCKET;
+    return isMinFirst(b) == (point % POINTS_PER_BUCKET == 0) ? minTime[b]
+        : maxTime[b];
+  }
+
+  /**
+   * get the value of the given point
+   *
+   * @param point
+   * @return the value
+   */
+  public double getValue(int point) {
+    int b = point / POINTS_PER_BUCKET;
+    return isMinFirst(b) == (point % POINTS_PER_BUCKET == 0) ? min[b]
+        : max[b];
+  }
+
+  /**
+   * the points of a bucket are in time order
+   *
+   * @param b
+   * @return true if the minimum comes first
+   */
+  private boolean isMinFirst(int b) {
+    return minTime[b] <= maxTime[b];
+  }
+
+  /**
+   * check whether all points have changed since the last sync
+   *
+   * @return true if the points need to be shown all over
+   */
+  public boolean isRebuilt() {
+    return rebuilt;
+  }
+
+  /**
+   * get the number of points removed from the front since the last sync
+   *
+   * @return the number of dropped points
+   */
+  public int getDroppedPoints() {
+    return droppedBuckets * POINTS_PER_BUCKET;
+  }
+
+  /**
+   * get the first point that changed since the last sync (after removing the
+   * dropped points)
+   *
+   * @return the index of the first changed point
+   */
+  public int getFirstChangedPoint() {
+    return Math.min(firstChanged, buckets) * POINTS_PER_BUCKET;
+  }
+
+  /**
+   * the changes have been shown
+   */
+  public void sync() {
+    rebuilt = false;
+    droppedBuckets = 0;
+    firstChanged = buckets;
+  }
+
+  /**
+   * forget all samples
+   */
+  public void clear() {
+    origin = Long.MIN_VALUE;
+    buckets = 0;
+    rebuilt = true;
+    droppedBuckets = 0;
+    firstChanged = 0;
+  }
+}
@@ -45,7 +45,11 @@ public class Pid {
   int freq;        // frequency of transmission on bus per second
   String examples;
   String isoTp;    // if this is an ISO-TP frame based Pid 
+  List<CANSignal> signals; // declarative decoding of the data bytes
   List<CANInfo> caninfos=new ArrayList<CANInfo>();
+  
+  private static final CANSignal[] NO_SIGNALS = new CANSignal[0];
+  transient CANSignal[] compiledSignals = NO_SIGNALS;
 
   /**
    * add the given CANinfo to this PID
@@ -83,6 +87,21 @@ public class Pid {
     this.pid = pid;
   }
 
+  /**
+   * get the numeric CAN id of this PID e.g. 0x373 for "373"
+   * 
+   * @return the CAN id or -1 if the pid is not a hexadecimal number
+   */
+  public int getCanId() {
+    if (pid == null)
+      return -1;
+    try {
+      return Integer.parseInt(pid, 16);
+    } catch (NumberFormatException nfe) {
+      return -1;
+    }
+  }
+
   public int getFreq() {
     return freq;
   }
@@ -106,6 +125,77 @@ public class Pid {
     this.isoTp = isoTp;
   }
   
+  public List<CANSignal> getSignals() {
+    return signals;
+  }
+
+  public void setSignals(List<CANSignal> signals) {
+    this.signals = signals;
+  }
+
+  /**
+   * add the given signal to this PID
+   * @param signal
+   */
+  public void addSignal(CANSignal signal) {
+    if (signals == null)
+      signals = new ArrayList<CANSignal>();
+    signals.add(signal);
+  }
+
+  /**
+   * get the signal with the given name
+   * @param name
+   * @return the signal or null if there is none
+   */
+  public CANSignal getSignal(String name) {
+    for (CANSignal signal : compiledSignals) {
+      if (signal.getName().equals(name))
+        return signal;
+    }
+    return null;
+  }
+
+  /**
+   * compile my signals for the given vehicle group
+   * @param vehicleGroup
+   */
+  public void compileSignals(VehicleGroup vehicleGroup) {
+    if (signals == null || signals.isEmpty()) {
+      compiledSignals = NO_SIGNALS;
+      return;
+    }
+    compiledSignals = new CANSignal[signals.size()];
+    for (int i = 0; i < compiledSignals.length; i++) {
+      CANSignal signal = signals.get(i);
+      signal.compile(vehicleGroup);
+      if (length != null && signal.getEndByte() > length)
+        throw new RuntimeException("Misconfigured signal " + signal.getName()
+            + " exceeds the length " + length + " of PID " + pid);
+      compiledSignals[i] = signal;
+    }
+  }
+
+  /**
+   * check whether this PID has compiled signals
+   * @return true if there are signals to decode
+   */
+  public boolean hasSignals() {
+    return compiledSignals.length > 0;
+  }
+
+  /**
+   * decode all my signals from the given data bytes
+   * @param d - the data bytes
+   * @param timeStamp - the timeStamp of the data in nanoseconds since the epoch
+   * @param handler - the handler to set the values with
+   */
+  public void decodeSignals(int[] d, long timeStamp, CANValueHandler handler) {
+    for (CANSignal signal : compiledSignals) {
+      signal.decode(d, timeStamp, handler);
+    }
+  }
+  
   public List<CANInfo> getCaninfos() {
     return caninfos;
   }
@@ -0,0 +1,374 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Formattable;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * a formatter for a single value that is compiled once from a
+ * {@link String#format(String, Object...)} pattern like "%7.1f A" - the
+ * patterns of the vehicle groups (at most one %d, %f or %s conversion with
+ * width and precision) are formatted with fixed point arithmetic into a
+ * reusable StringBuilder, everything else is left to String.format so the
+ * result is always the same
+ *
+ * @author wf
+ *
+ */
+public class ValueFormatter {
+  // long arithmetic is exact up to 2^53 - leave the rest to String.format
+  public static final double MAX_FIXED = 1E15;
+  // scaled values this many ulps close to .5 are rounded on their decimal
+  // representation - the scaled double may be off by about one ulp from it
+  public static final int HALF_ULPS = 4;
+  public static final int DEFAULT_PRECISION = 6;
+
+  private static final long[] POWERS = new long[16];
+  static {
+    POWERS[0] = 1;
+    for (int i = 1; i < POWERS.length; i++)
+      POWERS[i] = POWERS[i - 1] * 10;
+  }
+
+  private static Map<Locale, Map<String, ValueFormatter>> cache = new ConcurrentHashMap<Locale, Map<String, ValueFormatter>>();
+
+  private static final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(64);
+    }
+  };
+
+  private final String format;
+  private final Locale locale;
+  private String prefix = "";
+  private String suffix = "";
+  private char conversion; // 'd', 'f', 's' or 0 for a constant
+  private int width = -1;
+  private int precision = -1;
+  private boolean compiled;
+  private char zeroDigit;
+  private char decimalSeparator;
+
+  /**
+   * get the formatter for the given format and the default format locale
+   *
+   * @param format
+   * @return the formatter
+   */
+  public static ValueFormatter getInstance(String format) {
+    return getInstance(format, Locale.getDefault(Locale.Category.FORMAT));
+  }
+
+  /**
+   * get the formatter for the given format and locale
+   *
+   * @param format
+   * @param locale
+   * @return the formatter
+   */
+  public static ValueFormatter getInstance(String format, Locale locale) {
+    Map<String, ValueFormatter> formatters = cache.get(locale);
+    if (formatters == null) {
+      formatters = new ConcurrentHashMap<String, ValueFormatter>();
+      cache.put(locale, formatters);
+    }
+    ValueFormatter formatter = formatters.get(format);
+    if (formatter == null) {
+      formatter = new ValueFormatter(format, locale);
+      formatters.put(format, formatter);
+    }
+    return formatter;
+  }
+
+  /**
+   * compile the given format for the given locale
+   *
+   * @param format
+   * @param locale
+   */
+  public ValueFormatter(String format, Locale locale) {
+    this.format = format;
+    this.locale = locale;
+    DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+    zeroDigit = symbols.getZeroDigit();
+    decimalSeparator = symbols.getDecimalSeparator();
+    compiled = compile();
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  public Locale getLocale() {
+    return locale;
+  }
+
+  /**
+   * check whether the format could be compiled
+   *
+   * @return true if values are formatted without String.format
+   */
+  public boolean isCompiled() {
+    return compiled;
+  }
+
+  /**
+   * split the format into prefix, conversion and suffix
+   *
+   * @return true if the format is supported
+   */
+  private boolean compile() {
+    if (format == null)
+      return false;
+    StringBuilder literal = new StringBuilder();
+    int len = format.length();
+    int i = 0;
+    while (i < len) {
+      char c = format.charAt(i++);
+      if (c != '%') {
+        literal.append(c);
+        continue;
+      }
+      if (i >= len)
+        return false;
+      if (format.charAt(i) == '%') {
+        literal.append('%');
+        i++;
+        continue;
+      }
+      // only a single conversion without flags is supported
+      if (conversion != 0)
+        return false;
+      int start = i;
+      while (i < len && Character.isDigit(format.charAt(i)))
+        i++;
+      if (i > start) {
+        // a leading zero is the zero padding flag
+        if (format.charAt(start) == '0')
+          return false;
+        width = Integer.parseInt(format.substring(start, i));
+      }
+      if (i < len && format.charAt(i) == '.') {
+        start = ++i;
+        while (i < len && Character.isDigit(format.charAt(i)))
+          i++;
+        if (i == start)
+          return false;
+        precision = Integer.parseInt(format.substring(start, i));
+      }
+      if (i >= len)
+        return false;
+      conversion = format.charAt(i++);
+      switch (conversion) {
+      case 'd':
+        if (precision >= 0)
+          return false;
+        break;
+      case 'f':
+        if (precision < 0)
+          precision = DEFAULT_PRECISION;
+        if (precision >= POWERS.length)
+          return false;
+        break;
+      case 's':
+        break;
+      default:
+        return false;
+      }
+      prefix = literal.toString();
+      literal.setLength(0);
+    }
+    if (conversion == 0)
+      prefix = literal.toString();
+    else
+      suffix = literal.toString();
+    return true;
+  }
+
+  /**
+   * format the given value
+   *
+   * @param value
+   * @return the formatted value
+   */
+  public String format(Object value) {
+    StringBuilder sb = buffer.get();
+    sb.setLength(0);
+    return format(sb, value).toString();
+  }
+
+  /**
+   * append the formatted value to the given StringBuilder
+   *
+   * @param sb
+   * @param value
+   * @return the StringBuilder
+   */
+  public StringBuilder format(StringBuilder sb, Object value) {
+    if (!compiled || !appendValue(sb, value)) {
+      sb.append(String.format(locale, format, value));
+    }
+    return sb;
+  }
+
+  /**
+   * append the value if possible
+   *
+   * @param sb
+   * @param value
+   * @return false if String.format needs to do the job
+   */
+  private boolean appendValue(StringBuilder sb, Object value) {
+    int mark = sb.length();
+    sb.append(prefix);
+    if (conversion == 0)
+      return true;
+    int start = sb.length();
+    boolean done;
+    switch (conversion) {
+    case 'd':
+      done = appendInteger(sb, value);
+      break;
+    case 'f':
+      done = appendFixed(sb, value);
+      break;
+    default:
+      done = appendString(sb, value);
+    }
+    if (!done) {
+      sb.setLength(mark);
+      return false;
+    }
+    pad(sb, start);
+    sb.append(suffix);
+    return true;
+  }
+
+  /**
+   * right align the conversion result starting at the given position
+   *
+   * @param sb
+   * @param start
+   */
+  private void pad(StringBuilder sb, int start) {
+    int padding = width - (sb.length() - start);
+    for (int i = 0; i < padding; i++)
+      sb.insert(start, ' ');
+  }
+
+  private boolean appendInteger(StringBuilder sb, Object value) {
+    if (!(value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte))
+      return false;
+    long l = ((Number) value).longValue();
+    if (l == Long.MIN_VALUE)
+      return false;
+    if (l < 0) {
+      sb.append('-');
+      l = -l;
+    }
+    appendDigits(sb, l, 1);
+    return true;
+  }
+
+  private boolean appendFixed(StringBuilder sb, Object value) {
+    if (!(value instanceof Double))
+      return false;
+    double d = (Double) value;
+    if (Double.isNaN(d) || Double.isInfinite(d))
+      return false;
+    // keep the sign of -0.0 and of values that round to zero
+    boolean negative = Double.doubleToRawLongBits(d) < 0;
+    double abs = Math.abs(d);
+    double scaled = abs * POWERS[precision];
+    if (scaled >= MAX_FIXED)
+      return false;
+    long units = (long) scaled;
+    double fraction = scaled - units;
+    if (Math.abs(fraction - 0.5) <= HALF_ULPS * Math.ulp(scaled)) {
+      // String.format rounds the shortest decimal representation half up
+      units = new BigDecimal(Double.toString(abs))
+          .setScale(precision, RoundingMode.HALF_UP).unscaledValue()
+          .longValue();
+    } else if (fraction > 0.5) {
+      units++;
+    }
+    if (negative)
+      sb.append('-');
+    long integerPart = units / POWERS[precision];
+    appendDigits(sb, integerPart, 1);
+    if (precision > 0) {
+      sb.append(decimalSeparator);
+      appendDigits(sb, units % POWERS[precision], precision);
+    }
+    return true;
+  }
+
+  private boolean appendString(StringBuilder sb, Object value) {
+    if (value instanceof Formattable)
+      return false;
+    String s = String.valueOf(value);
+    if (precision >= 0 && precision < s.length())
+      sb.append(s, 0, precision);
+    else
+      sb.append(s);
+    return true;
+  }
+
+  /**
+   * append the digits of the given non negative value with the locale's zero
+   * digit
+   *
+   * @param sb
+   * @param value
+   * @param minDigits
+   *          - the number of digits to fill with leading zeros
+   */
+  private void appendDigits(StringBuilder sb, long value, int minDigits) {
+    int start = sb.length();
+    int digits = 0;
+    do {
+      sb.insert(start, (char) (zeroDigit + (int) (value % 10)));
+      value /= 10;
+      digits++;
+    } while (value > 0);
+    for (; digits < minDigits; digits++)
+      sb.insert(start, zeroDigit);
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format("'%s' %s: %s", format, locale,
+        compiled ? "compiled" : "String.format");
+    return result;
+  }
+}
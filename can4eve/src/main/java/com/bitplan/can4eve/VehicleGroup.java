@@ -45,6 +45,8 @@ import com.google.gson.graph.GraphAdapterBuilder;
 public class VehicleGroup implements JsonAble {
   public static boolean asTree = false;
   public static Gson gson = null;
+  // 11 bit CAN ids are in the range 0x000-0x7FF
+  public static final int MAX_CAN_ID = 0x800;
 
   String name;
   String description;
@@ -52,6 +54,7 @@ public class VehicleGroup implements JsonAble {
 
   List<Pid> pids = new ArrayList<Pid>();
   transient Map<String, Pid> pidByPid = new HashMap<String, Pid>();
+  transient Pid[] pidByCanId = new Pid[MAX_CAN_ID];
   transient Map<String, Pid> pidByName = new HashMap<String, Pid>();
   transient Map<String, CANInfo> canInfoByName = new HashMap<String, CANInfo>();
 
@@ -100,6 +103,9 @@ public class VehicleGroup implements JsonAble {
    */
   public void addToMaps(Pid pid) {
     pidByPid.put(pid.getPid(), pid);
+    int canId = pid.getCanId();
+    if (canId >= 0 && canId < MAX_CAN_ID)
+      pidByCanId[canId] = pid;
     pidByName.put(pid.getName(), pid);
     for (CANInfo canInfo : pid.getCaninfos()) {
       this.canInfoByName.put(canInfo.getName(), canInfo);
@@ -119,6 +125,7 @@ public class VehicleGroup implements JsonAble {
    */
   public void reinit() {
     this.pidByPid.clear();
+    this.pidByCanId = new Pid[MAX_CAN_ID];
     // add the pids to the maps including the canInfos
     for (Pid pid : pids) {
       addToMaps(pid);
@@ -140,6 +147,10 @@ public class VehicleGroup implements JsonAble {
         caninfo.getPids().add(pid);
       }
     }
+    // compile the declarative signal decoders
+    for (Pid pid : pids) {
+      pid.compileSignals(this);
+    }
   }
 
   /**
@@ -232,6 +243,19 @@ public class VehicleGroup implements JsonAble {
     return this.pidByPid.get(pidId);
   }
 
+  /**
+   * lookup the given PID by its numeric CAN id
+   * 
+   * @param canId
+   *          - the CAN id e.g. 0x373
+   * @return the Pid or null if there is none for this id
+   */
+  public Pid getPidById(int canId) {
+    if (canId < 0 || canId >= MAX_CAN_ID)
+      return null;
+    return this.pidByCanId[canId];
+  }
+
   /**
    * lookup the given PID byname
    * 
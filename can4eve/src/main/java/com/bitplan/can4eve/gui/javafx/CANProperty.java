@@ -21,17 +21,21 @@
 package com.bitplan.can4eve.gui.javafx;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.bitplan.can4eve.CANData;
 import com.bitplan.can4eve.CANInfo;
 import com.bitplan.can4eve.CANValue;
+import com.bitplan.can4eve.CANValue.BooleanValue;
 import com.bitplan.can4eve.CANValue.DoubleValue;
 import com.bitplan.can4eve.CANValue.IntegerValue;
 import com.bitplan.can4eve.CANValueItem;
+import com.bitplan.can4eve.CANValueSnapshot;
+import com.bitplan.elm327.Clock;
 
-import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -60,6 +64,16 @@ public class CANProperty<CT extends CANValue<T>, T> implements CANData<T> {
   private ObservableList<CANValueItem<T>> propertyList;
   private Property<T> max;
   private Property<T> avg;
+  // set while the property is queued for the next UpdatePulse
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+  // set when a new plain value needs to be shown
+  private volatile boolean valueChanged;
+  // number of complete updates of an indexed value since the last pulse
+  private final AtomicInteger indexedUpdates = new AtomicInteger();
+  // consistent copy of the CANValue - only used by the JavaFX thread
+  private final CANValueSnapshot<T> snapshot = new CANValueSnapshot<T>();
+  // set while a pulse shows the max so that the listener ignores the change
+  private boolean pulsing;
 
   public CT getCanValue() {
     return canValue;
@@ -143,7 +157,8 @@ public class CANProperty<CT extends CANValue<T>, T> implements CANData<T> {
       @Override
       public void changed(ObservableValue<? extends Number> observable,
           Number oldValue, Number newValue) {
-        canValue.setMax(newValue.doubleValue());
+        if (!pulsing)
+          canValue.setMax(newValue.doubleValue());
       }
       
     });
@@ -177,26 +192,99 @@ public class CANProperty<CT extends CANValue<T>, T> implements CANData<T> {
       @Override
       public void changed(ObservableValue<? extends Number> observable,
           Number oldValue, Number newValue) {
-        canValue.setMax(newValue.intValue());
+        if (!pulsing)
+          canValue.setMax(newValue.intValue());
       }
       
     });
   }
 
   /**
-   * set the value for CANValue and property
+   * set the value for CANValue and mark the property for the next UI pulse
    * 
    * @param value
    *          - the value to set
    * @param timeStamp
    */
   public void setValue(T value, Date timeStamp) {
+    setValue(value, Clock.fromDate(timeStamp));
+  }
+
+  /**
+   * set the value for CANValue and mark the property for the next UI pulse
+   * 
+   * @param value
+   *          - the value to set
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  public void setValue(T value, long timeStamp) {
     canValue.setValue(value, timeStamp);
-    Platform.runLater(() -> setValue(value));
+    changed();
+  }
+
+  /**
+   * set a double value without boxing - the value is only boxed when the
+   * pulse shows it
+   * 
+   * @param value
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  @SuppressWarnings("unchecked")
+  public void setDouble(double value, long timeStamp) {
+    if (canValue instanceof DoubleValue) {
+      ((DoubleValue) canValue).setDouble(value, timeStamp);
+      changed();
+    } else {
+      setValue((T) Double.valueOf(value), timeStamp);
+    }
   }
 
   /**
-   * set the value for CANValue and property
+   * set an int value without boxing
+   * 
+   * @param value
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  @SuppressWarnings("unchecked")
+  public void setInt(int value, long timeStamp) {
+    if (canValue instanceof IntegerValue) {
+      ((IntegerValue) canValue).setInt(value, timeStamp);
+      changed();
+    } else {
+      setValue((T) Integer.valueOf(value), timeStamp);
+    }
+  }
+
+  /**
+   * set a boolean value without boxing
+   * 
+   * @param value
+   * @param timeStamp
+   *          - nanoseconds since the epoch
+   */
+  @SuppressWarnings("unchecked")
+  public void setBoolean(boolean value, long timeStamp) {
+    if (canValue instanceof BooleanValue) {
+      ((BooleanValue) canValue).setBoolean(value, timeStamp);
+      changed();
+    } else {
+      setValue((T) Boolean.valueOf(value), timeStamp);
+    }
+  }
+
+  /**
+   * mark the plain value as changed for the next UI pulse
+   */
+  private void changed() {
+    valueChanged = true;
+    UpdatePulse.getInstance().markDirty(this);
+  }
+
+  /**
+   * set the value for CANValue and mark the property for the next UI pulse
    * 
    * @param index
    *          - the index of the value
@@ -205,58 +293,80 @@ public class CANProperty<CT extends CANValue<T>, T> implements CANData<T> {
    * @param timeStamp
    */
   public void setValue(int index, T value, Date timeStamp) {
-    Platform.runLater(() -> doSetValue(index, value, timeStamp));
+    setValue(index, value, Clock.fromDate(timeStamp));
   }
 
   /**
-   * set the value at the given index (needs to be run on JavaFX thread!)
+   * set the value for CANValue and mark the property for the next UI pulse
    * 
    * @param index
+   *          - the index of the value
    * @param value
+   *          - the value to set
+   * @param timeStamp
+   *          - nanoseconds since the epoch
    */
-  private void doSetValue(int index, T value, Date timeStamp) {
+  public void setValue(int index, T value, long timeStamp) {
     canValue.setValue(index, value, timeStamp);
-    setMinMax(value);
     int triggerIndex = canValue.getCANInfo().getMaxIndex() - 1;
-    if (index == triggerIndex) {
-      int newUpdateCount = this.updateCountProperty.getValue() + 1;
-      this.updateCountProperty.setValue(newUpdateCount);
-      if (debug)
-        LOGGER.log(Level.INFO,
-            this.getCANInfo().getName() + " " + newUpdateCount + " updates");
-    }
+    if (index == triggerIndex)
+      indexedUpdates.incrementAndGet();
+    UpdatePulse.getInstance().markDirty(this);
   }
 
   /**
-   * set the value (needs to be run on JavaFX thread!)
+   * mark me as dirty
    * 
-   * @param value
+   * @return true if i was not dirty before and need to be queued
    */
-  private void setValue(T value) {
-    property.setValue(value);
-    this.updateCountProperty.setValue(canValue.getUpdateCount());
-    setMinMax(value);
+  boolean markDirty() {
+    return dirty.compareAndSet(false, true);
   }
 
   /**
-   * sets the minimum and maximum Value as well as the update count
-   * 
-   * @param value
+   * show the latest state (needs to be run on JavaFX thread!)
    */
-  private void setMinMax(T value) {
-    if (canValue instanceof DoubleValue) {
-      DoubleValue dv = (DoubleValue) canValue;
-      if (dv.getMax() != null)
-        getMax().setValue((T) dv.getMax());
-      if (dv.getAvg() != null)
-        getAvg().setValue((T) dv.getAvg());
+  void pulse() {
+    // clear the flag first so that a value set while we copy is not lost
+    dirty.set(false);
+    canValue.getSnapshot(snapshot);
+    if (valueChanged) {
+      valueChanged = false;
+      property.setValue(snapshot.getValue());
+      this.updateCountProperty.setValue(snapshot.getUpdateCount());
     }
-    if (canValue instanceof IntegerValue) {
-      IntegerValue iv = (IntegerValue) canValue;
-      if (iv.getMax() != null)
-        getMax().setValue((T) iv.getMax());
-      if (iv.getAvg() != null)
-        getAvg().setValue((T) iv.getAvg());
+    int newUpdates = indexedUpdates.getAndSet(0);
+    if (newUpdates > 0) {
+      int newUpdateCount = this.updateCountProperty.getValue() + newUpdates;
+      this.updateCountProperty.setValue(newUpdateCount);
+      if (debug)
+        LOGGER.log(Level.INFO,
+            this.getCANInfo().getName() + " " + newUpdateCount + " updates");
+    }
+    setMinMax();
+  }
+
+  /**
+   * sets the maximum and average Value from the snapshot
+   */
+  @SuppressWarnings("unchecked")
+  private void setMinMax() {
+    if (Double.isNaN(snapshot.getMax()))
+      return;
+    pulsing = true;
+    try {
+      if (canValue instanceof DoubleValue) {
+        getMax().setValue((T) Double.valueOf(snapshot.getMax()));
+        if (snapshot.getCount() > 0)
+          getAvg().setValue((T) Double.valueOf(snapshot.getAvg()));
+      }
+      if (canValue instanceof IntegerValue) {
+        getMax().setValue((T) Integer.valueOf((int) snapshot.getMax()));
+        if (snapshot.getCount() > 0)
+          getAvg().setValue((T) Integer.valueOf((int) snapshot.getAvg()));
+      }
+    } finally {
+      pulsing = false;
     }
   }
 
@@ -292,6 +402,11 @@ public class CANProperty<CT extends CANValue<T>, T> implements CANData<T> {
     return this.getCanValue().getTimeStamp();
   }
 
+  @Override
+  public long getTimeNanos() {
+    return this.getCanValue().getTimeNanos();
+  }
+
   @Override
   public int getUpdateCount() {
     return this.getCanValue().getUpdateCount();
@@ -22,12 +22,12 @@ package com.bitplan.can4eve.gui.javafx;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.bitplan.can4eve.CANData;
+import com.bitplan.can4eve.CANHandles;
 import com.bitplan.can4eve.CANInfo;
 import com.bitplan.can4eve.CANValue;
 import com.bitplan.can4eve.CANValue.BooleanValue;
@@ -35,7 +35,10 @@ import com.bitplan.can4eve.CANValue.DoubleValue;
 import com.bitplan.can4eve.CANValue.IntegerValue;
 import com.bitplan.can4eve.CANValue.StringValue;
 import com.bitplan.can4eve.CANValueHandler;
+import com.bitplan.can4eve.Decimator;
+import com.bitplan.can4eve.Decimator.Policy;
 import com.bitplan.can4eve.VehicleGroup;
+import com.bitplan.elm327.Clock;
 
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -53,6 +56,13 @@ import javafx.beans.property.SimpleStringProperty;
 public class CANPropertyManager implements CANValueHandler {
   @SuppressWarnings("rawtypes")
   private Map<String, CANProperty> canProperties = new HashMap<String, CANProperty>();
+  // the properties indexed by the handle of their name
+  @SuppressWarnings("rawtypes")
+  private CANProperty[] propertyByHandle = new CANProperty[0];
+  // the decimators of the thinned out channels indexed by handle - each
+  // decimator is locked while it is used so that the decoding thread and the
+  // display tick never set its property at the same time
+  private volatile Decimator[] decimatorByHandle = new Decimator[0];
   VehicleGroup vehicleGroup;
 
   @SuppressWarnings("rawtypes")
@@ -216,7 +226,7 @@ public class CANPropertyManager implements CANValueHandler {
   public <CT extends CANValue<T>, T> void addCanProperty(CT canValue,
       Property<T> property) {
     CANProperty<CT, T> canProperty = new CANProperty<CT, T>(canValue, property);
-    getCanProperties().put(canValue.canInfo.getName(), canProperty);
+    register(canValue.canInfo, canProperty);
   }
 
   /**
@@ -229,7 +239,7 @@ public class CANPropertyManager implements CANValueHandler {
       SimpleDoubleProperty property) {
     CANProperty<DoubleValue, Double> canProperty = new CANProperty<DoubleValue, Double>(
         canValue, property);
-    getCanProperties().put(canValue.canInfo.getName(), canProperty);
+    register(canValue.canInfo, canProperty);
   }
 
   /**
@@ -242,7 +252,7 @@ public class CANPropertyManager implements CANValueHandler {
       SimpleIntegerProperty property) {
     CANProperty<IntegerValue, Integer> canProperty = new CANProperty<IntegerValue, Integer>(
         canValue, property);
-    getCanProperties().put(canValue.canInfo.getName(), canProperty);
+    register(canValue.canInfo, canProperty);
   }
 
   /**
@@ -255,7 +265,7 @@ public class CANPropertyManager implements CANValueHandler {
       SimpleBooleanProperty property) {
     CANProperty<BooleanValue, Boolean> canProperty = new CANProperty<BooleanValue, Boolean>(
         canValue, property);
-    getCanProperties().put(canValue.canInfo.getName(), canProperty);
+    register(canValue.canInfo, canProperty);
   }
 
   /**
@@ -268,15 +278,215 @@ public class CANPropertyManager implements CANValueHandler {
       SimpleObjectProperty<T> property) {
     CANProperty<CANValue<T>, T> canProperty = new CANProperty<CANValue<T>, T>(
         canValue, property);
-    getCanProperties().put(canValue.canInfo.getName(), canProperty);
+    register(canValue.canInfo, canProperty);
+  }
+
+  /**
+   * register the given CANProperty by name and handle
+   * 
+   * @param canInfo
+   * @param canProperty
+   */
+  @SuppressWarnings("rawtypes")
+  private void register(CANInfo canInfo, CANProperty canProperty) {
+    getCanProperties().put(canInfo.getName(), canProperty);
+    int handle = canInfo.getHandle();
+    if (handle >= propertyByHandle.length) {
+      CANProperty[] newProperties = new CANProperty[Math
+          .max(CANHandles.size(), handle + 1)];
+      System.arraycopy(propertyByHandle, 0, newProperties, 0,
+          propertyByHandle.length);
+      propertyByHandle = newProperties;
+    }
+    propertyByHandle[handle] = canProperty;
+  }
+
+  /**
+   * get the handle for the given CANInfo name
+   * 
+   * @param canInfoName
+   * @return the handle to be used with the fast path setters
+   */
+  public int getHandle(String canInfoName) {
+    return CANHandles.getHandle(canInfoName);
+  }
+
+  /**
+   * get the CANProperty for the given handle
+   * 
+   * @param handle
+   * @return the CANProperty
+   */
+  @SuppressWarnings("rawtypes")
+  public CANProperty get(int handle) {
+    CANProperty result = null;
+    if (handle >= 0 && handle < propertyByHandle.length)
+      result = propertyByHandle[handle];
+    if (result == null)
+      throw new RuntimeException(
+          "invalid canInfoName " + CANHandles.getName(handle));
+    return result;
   }
 
   @SuppressWarnings("unchecked")
   @Override
-  public <T> void setValue(String name, T value, Date timeStamp) {
+  public <T> void setValue(String name, T value, long timeStamp) {
     getCanProperties().get(name).setValue(value, timeStamp);
   }
 
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> void setValue(int handle, T value, long timeStamp) {
+    get(handle).setValue(value, timeStamp);
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public void setDouble(int handle, double value, long timeStamp) {
+    CANProperty property = get(handle);
+    Decimator decimator = getDecimator(handle);
+    if (decimator == null) {
+      property.setDouble(value, timeStamp);
+      return;
+    }
+    synchronized (decimator) {
+      int emits = decimator.add(value, Clock.toMillis(timeStamp));
+      for (int i = 0; i < emits; i++) {
+        property.setDouble(decimator.getValue(i),
+            getTimeStamp(decimator.getTime(i), timeStamp));
+      }
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public void setInt(int handle, int value, long timeStamp) {
+    CANProperty property = get(handle);
+    Decimator decimator = getDecimator(handle);
+    if (decimator == null) {
+      property.setInt(value, timeStamp);
+      return;
+    }
+    synchronized (decimator) {
+      int emits = decimator.add(value, Clock.toMillis(timeStamp));
+      for (int i = 0; i < emits; i++) {
+        property.setInt((int) Math.round(decimator.getValue(i)),
+            getTimeStamp(decimator.getTime(i), timeStamp));
+      }
+    }
+  }
+
+  /**
+   * the decimators work in milliseconds - keep the precise timeStamp of the
+   * current sample if the emitted value is from it
+   * 
+   * @param time
+   *          - the emitted time in milliseconds
+   * @param timeStamp
+   *          - the time stamp of the current sample
+   * @return the time stamp for the given time
+   */
+  private long getTimeStamp(long time, long timeStamp) {
+    if (time == Clock.toMillis(timeStamp))
+      return timeStamp;
+    return Clock.fromMillis(time);
+  }
+
+  /**
+   * get the decimator for the given handle
+   * 
+   * @param handle
+   * @return the decimator or null if every sample is to be set
+   */
+  public Decimator getDecimator(int handle) {
+    Decimator[] decimators = decimatorByHandle;
+    if (handle >= 0 && handle < decimators.length)
+      return decimators[handle];
+    return null;
+  }
+
+  /**
+   * thin out the double and int values of the channels that have a decimation
+   * policy in their CANInfo - the interval of a channel is the shorter of the
+   * display interval and the interval of its history so that neither the
+   * display nor the history misses a value. What the previous decimators
+   * still hold back is set.
+   * 
+   * @param displayMsecs
+   *          - the display interval - 0 to set every sample
+   */
+  @SuppressWarnings("rawtypes")
+  public void setDecimation(long displayMsecs) {
+    Decimator[] decimators = new Decimator[propertyByHandle.length];
+    if (displayMsecs > 0) {
+      for (CANProperty canProperty : canProperties.values()) {
+        CANInfo canInfo = canProperty.getCanValue().getCANInfo();
+        Policy policy = Decimator.getPolicy(canInfo.getDecimation());
+        if (policy != Policy.none && canInfo.getMaxIndex() == 0) {
+          decimators[canInfo.getHandle()] = new Decimator(policy,
+              Decimator.getIntervalMsecs(canInfo, displayMsecs));
+        }
+      }
+    }
+    Decimator[] previous = decimatorByHandle;
+    decimatorByHandle = decimators;
+    // a sample that is still added to a previous decimator is passed on
+    for (int handle = 0; handle < previous.length; handle++) {
+      Decimator decimator = previous[handle];
+      if (decimator != null) {
+        synchronized (decimator) {
+          setEmits(handle, decimator, decimator.stop());
+        }
+      }
+    }
+  }
+
+  /**
+   * set the samples the decimators hold back for channels that have not sent
+   * a sample since the previous tick - to be called periodically e.g. by the
+   * display so that the last value of a channel that settles or whose
+   * duplicate frames are suppressed is shown
+   */
+  public void tickDecimators() {
+    Decimator[] decimators = decimatorByHandle;
+    for (int handle = 0; handle < decimators.length; handle++) {
+      Decimator decimator = decimators[handle];
+      if (decimator != null) {
+        synchronized (decimator) {
+          setEmits(handle, decimator, decimator.tick());
+        }
+      }
+    }
+  }
+
+  /**
+   * set the values the given decimator passes on outside of adding a sample -
+   * the caller holds the lock of the decimator
+   * 
+   * @param handle
+   * @param decimator
+   * @param emits
+   */
+  @SuppressWarnings("rawtypes")
+  private void setEmits(int handle, Decimator decimator, int emits) {
+    if (emits == 0)
+      return;
+    CANProperty property = get(handle);
+    boolean isInt = property.getCanValue() instanceof IntegerValue;
+    for (int i = 0; i < emits; i++) {
+      long timeStamp = Clock.fromMillis(decimator.getTime(i));
+      if (isInt)
+        property.setInt((int) Math.round(decimator.getValue(i)), timeStamp);
+      else
+        property.setDouble(decimator.getValue(i), timeStamp);
+    }
+  }
+
+  @Override
+  public void setBoolean(int handle, boolean value, long timeStamp) {
+    get(handle).setBoolean(value, timeStamp);
+  }
+
   /**
    * get the given CANProperty byName
    * 
@@ -0,0 +1,221 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.can4eve.gui.javafx;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * coalesces the updates of CANProperties to at most one per JavaFX pulse
+ *
+ * the decoding thread only marks a property as dirty - a property is queued
+ * once no matter how often its value changes until the next pulse, the
+ * pulse then copies the latest value to the JavaFX properties and
+ * intermediate values are dropped
+ *
+ * @author wf
+ *
+ */
+public class UpdatePulse extends AnimationTimer {
+  private static UpdatePulse instance;
+  // time to wait before trying to start again when there is no toolkit
+  public static final long RETRY_NANOS = 100 * 1000000L;
+
+  private final ConcurrentLinkedQueue<CANProperty<?, ?>> dirtyProperties = new ConcurrentLinkedQueue<CANProperty<?, ?>>();
+  private final AtomicBoolean started = new AtomicBoolean(false);
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicLong marks = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  // written by the marking threads
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+  // earliest System.nanoTime() for the next try to start the pulse
+  private volatile long retryAt = System.nanoTime();
+
+  // only written by the JavaFX thread
+  volatile long pulses; // pulses that had something to do
+  volatile long updates; // properties updated
+  volatile long pulseNanos; // total time spent in pulses
+  volatile long lastPulseNanos;
+  volatile long maxPulseNanos;
+
+  /**
+   * get the singleton
+   *
+   * @return the instance
+   */
+  public static synchronized UpdatePulse getInstance() {
+    if (instance == null)
+      instance = new UpdatePulse();
+    return instance;
+  }
+
+  private UpdatePulse() {
+  }
+
+  /**
+   * mark the given property as dirty - may be called from any thread
+   *
+   * without a JavaFX toolkit e.g. when values are decoded before the GUI is up
+   * or headless the property just stays queued until a pulse can be started
+   *
+   * @param property
+   */
+  public void markDirty(CANProperty<?, ?> property) {
+    marks.incrementAndGet();
+    if (property.markDirty()) {
+      int depth = queueDepth.incrementAndGet();
+      int max;
+      while (depth > (max = maxQueueDepth.get())
+          && !maxQueueDepth.compareAndSet(max, depth)) {
+        // another thread raised the maximum - check again
+      }
+      dirtyProperties.add(property);
+    } else {
+      // the property is already queued - the previous value is dropped
+      coalesced.incrementAndGet();
+    }
+    if (!started.get())
+      startPulse();
+  }
+
+  /**
+   * try to start the pulse on the JavaFX thread
+   */
+  private void startPulse() {
+    if (System.nanoTime() - retryAt < 0)
+      return;
+    if (started.compareAndSet(false, true)) {
+      try {
+        Platform.runLater(() -> start());
+      } catch (IllegalStateException noToolkit) {
+        // Toolkit not initialized - try again with a later mark
+        retryAt = System.nanoTime() + RETRY_NANOS;
+        started.set(false);
+      }
+    }
+  }
+
+  @Override
+  public void handle(long now) {
+    // only handle what was queued when the pulse started - properties that
+    // are marked again while we run will be handled in the next pulse
+    int pending = queueDepth.get();
+    if (pending == 0)
+      return;
+    long start = System.nanoTime();
+    int count = 0;
+    for (int i = 0; i < pending; i++) {
+      CANProperty<?, ?> property = dirtyProperties.poll();
+      if (property == null)
+        break;
+      queueDepth.decrementAndGet();
+      property.pulse();
+      count++;
+    }
+    long nanos = System.nanoTime() - start;
+    pulses++;
+    updates += count;
+    pulseNanos += nanos;
+    lastPulseNanos = nanos;
+    if (nanos > maxPulseNanos)
+      maxPulseNanos = nanos;
+  }
+
+  /**
+   * get the number of properties waiting for the next pulse
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  public int getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  public long getMarks() {
+    return marks.get();
+  }
+
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  public long getPulses() {
+    return pulses;
+  }
+
+  public long getUpdates() {
+    return updates;
+  }
+
+  public long getLastPulseNanos() {
+    return lastPulseNanos;
+  }
+
+  public long getMaxPulseNanos() {
+    return maxPulseNanos;
+  }
+
+  /**
+   * get the average cost of a pulse that had something to do
+   *
+   * @return the average pulse time in nano seconds
+   */
+  public long getAvgPulseNanos() {
+    if (pulses == 0)
+      return 0;
+    return pulseNanos / pulses;
+  }
+
+  /**
+   * reset the counters
+   */
+  public void reset() {
+    marks.set(0);
+    coalesced.set(0);
+    maxQueueDepth.set(0);
+    pulses = 0;
+    updates = 0;
+    pulseNanos = 0;
+    lastPulseNanos = 0;
+    maxPulseNanos = 0;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format(
+        "%d values, %d dropped, %d pulses with %d updates, queue %d max %d, pulse avg %d usecs max %d usecs",
+        getMarks(), getCoalesced(), pulses, updates, getQueueDepth(),
+        maxQueueDepth.get(), getAvgPulseNanos() / 1000, maxPulseNanos / 1000);
+    return result;
+  }
+}
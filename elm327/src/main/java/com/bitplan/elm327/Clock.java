@@ -0,0 +1,102 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.elm327;
+
+import java.util.Date;
+
+/**
+ * time stamps as primitive longs - a time stamp is the number of nanoseconds
+ * since the epoch. It is taken from the monotonic System.nanoTime() and
+ * anchored to the wall clock once per session so that time stamps have sub
+ * millisecond precision and never jump. Dates are only created at the edges
+ * e.g. for display and logging.
+ *
+ * @author wf
+ *
+ */
+public class Clock {
+  public static final long NANOS_PER_MILLI = 1000000L;
+  // the time stamp for no time at all
+  public static final long NO_TIME = Long.MIN_VALUE;
+
+  // the wall clock anchor of this session
+  private static final long anchorNanoTime = System.nanoTime();
+  private static final long anchorTime = System.currentTimeMillis()
+      * NANOS_PER_MILLI;
+
+  /**
+   * get the current time stamp
+   *
+   * @return the nanoseconds since the epoch
+   */
+  public static long now() {
+    return anchorTime + (System.nanoTime() - anchorNanoTime);
+  }
+
+  /**
+   * convert the given time stamp to milliseconds
+   *
+   * @param timeStamp
+   * @return the milliseconds since the epoch
+   */
+  public static long toMillis(long timeStamp) {
+    if (timeStamp == NO_TIME)
+      return NO_TIME;
+    return timeStamp / NANOS_PER_MILLI;
+  }
+
+  /**
+   * convert the given milliseconds to a time stamp
+   *
+   * @param millis
+   * @return the time stamp
+   */
+  public static long fromMillis(long millis) {
+    if (millis == NO_TIME)
+      return NO_TIME;
+    return millis * NANOS_PER_MILLI;
+  }
+
+  /**
+   * convert the given date to a time stamp
+   *
+   * @param date
+   *          - may be null
+   * @return the time stamp or {@link #NO_TIME} if the date is null
+   */
+  public static long fromDate(Date date) {
+    if (date == null)
+      return NO_TIME;
+    return fromMillis(date.getTime());
+  }
+
+  /**
+   * convert the given time stamp to a date
+   *
+   * @param timeStamp
+   * @return the date or null for {@link #NO_TIME}
+   */
+  public static Date toDate(long timeStamp) {
+    if (timeStamp == NO_TIME)
+      return null;
+    return new Date(toMillis(timeStamp));
+  }
+}
@@ -31,6 +31,20 @@ import java.net.Socket;
  */
 
 public interface Connection extends Watchable,Debugable, Runnable {
+    /**
+     * what to do with a response if the response queue is full
+     */
+    public enum OverflowPolicy {
+      /**
+       * the reader waits up to the timeout for the consumer before the oldest
+       * response is dropped e.g. for command/response
+       */
+      block,
+      /**
+       * the oldest response is dropped e.g. for monitoring
+       */
+      dropOldest
+    }
 
     public boolean isSendLineFeed();
 
@@ -156,6 +170,29 @@ public interface Connection extends Watchable,Debugable, Runnable {
 
     public void setHandleResponses(boolean handleResponses);
 
+    /**
+     * get the queue of responses for {@link #getResponse(Packet)}
+     * @return the response queue
+     */
+    public RingBuffer<Packet> getResponseQueue();
+
+    public OverflowPolicy getOverflowPolicy();
+
+    /**
+     * set what to do with a response if the response queue is full
+     * @param overflowPolicy
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy);
+
+    public boolean isQueueResponses();
+
+    /**
+     * set whether responses are queued for {@link #getResponse(Packet)} if
+     * they are handled by the ResponseHandler
+     * @param queueResponses - false to only hand responses to the handler
+     */
+    public void setQueueResponses(boolean queueResponses);
+
     public void close() throws IOException;
     
     /**
@@ -164,6 +201,12 @@ public interface Connection extends Watchable,Debugable, Runnable {
      */
     public boolean isAlive();
     
+    /**
+     * get the metrics of the reader thread
+     * @return the metrics
+     */
+    public ConnectionMetrics getMetrics();
+
     /**
      * set a restarter for this connection
      * @param restarter
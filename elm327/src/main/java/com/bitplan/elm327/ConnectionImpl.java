@@ -20,20 +20,18 @@
  */
 package com.bitplan.elm327;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.Reader;
 import java.net.Socket;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by wf on 03.06.17.
@@ -47,22 +45,35 @@ public class ConnectionImpl extends Thread implements Connection {
   String title = "con";
 
   InputStream input;
+  // the channel to read from - derived from the input if not set explicitly
+  ReadableByteChannel inputChannel;
   OutputStream output;
   long timeOut = DEFAULT_TIMEOUT;
   Log log;
-  boolean running = false;
-  long pauses = 0;
+  volatile boolean running = false;
+  ConnectionMetrics metrics = new ConnectionMetrics();
 
+  // java.nio.charset.StandardCharsets needs Android API level 19
+  static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
   public static long DEFAULT_TIMEOUT = 250; // 250 millisecs
+  public static int RESPONSE_QUEUE_CAPACITY = 1024;
   final static int BUFFER_SIZE = 8192;
 
-  // regular expression to check that an elm327 response is "complete"
-  // while there is no line feed received
-  final static Pattern snippetPattern = Pattern.compile(
-      "(.*\\>)|STOPPED|BUFFER FULL|CAN ERROR|\\<DATA ERROR|OUT OF MEMORY",
-      Pattern.MULTILINE | Pattern.DOTALL);
+  // splits the bytes read into complete responses
+  final ResponseFramer framer = new ResponseFramer(
+      new ResponseFramer.FrameListener() {
+        @Override
+        public void onFrame(byte[] frame, int length) {
+          addResponseLine(
+              new String(frame, 0, length, ISO_8859_1));
+        }
+      });
 
-  LinkedBlockingQueue<Packet> responses = new LinkedBlockingQueue<Packet>();
+  RingBuffer<Packet> responses = new RingBuffer<Packet>(
+      RESPONSE_QUEUE_CAPACITY);
+  // set by the monitoring thread - read by the reader thread
+  volatile OverflowPolicy overflowPolicy = OverflowPolicy.block;
+  volatile boolean queueResponses = true;
 
   public boolean isSendLineFeed() {
     return sendLineFeed;
@@ -78,6 +89,7 @@ public class ConnectionImpl extends Thread implements Connection {
 
   public void setReceiveLineFeed(boolean receiveLineFeed) {
     this.receiveLineFeed = receiveLineFeed;
+    framer.setLineMode(receiveLineFeed);
   }
 
   @Override
@@ -88,6 +100,25 @@ public class ConnectionImpl extends Thread implements Connection {
   @Override
   public void setInput(InputStream input) {
     this.input = input;
+    this.inputChannel = null;
+  }
+
+  /**
+   * get the channel to read from
+   * 
+   * @return - the channel for the current input
+   */
+  public ReadableByteChannel getInputChannel() {
+    if (inputChannel == null && input != null) {
+      // for a FileInputStream this is the FileChannel
+      inputChannel = Channels.newChannel(input);
+    }
+    return inputChannel;
+  }
+
+  @Override
+  public ConnectionMetrics getMetrics() {
+    return metrics;
   }
 
   @Override
@@ -102,80 +133,67 @@ public class ConnectionImpl extends Thread implements Connection {
 
   @Override
   public void run() {
-    // prepare infinite loop
-    Reader in = null;
     try {
-      in = new InputStreamReader(this.getInput(), "UTF-8");
-      BufferedReader reader = new BufferedReader(in);
-      final char[] buffer = new char[BUFFER_SIZE];
-
-      String line = "";
+      ReadableByteChannel in = this.getInputChannel();
+      final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      final byte[] bytes = buffer.array();
       running = true;
       if (this.isDebug()) {
         log(String.format("%s ready for reading", this.getTitle()));
       }
       while (running) {
-        if (this.receiveLineFeed) {
-          line = reader.readLine();
-          if (line.length() > 0) {
-            this.addResponseLine(line);
-          }
-        } else {
-          // while initializing there may be no linefeeds yet
-          // we have to read the stream char for char ...
-          // is there data in the input stream?
-          if (!reader.ready()) {
-            // wait a very small of time (0,2 milliseconds) - to not overload
-            // the CPU too much with
-            // busy polling
-            int microsecs = 200;
-            pause(0, microsecs);
-            pauses += microsecs;
-          } else {
-            int readCount = reader.read(buffer);
-            if (readCount > 0) {
-              StringBuffer strBuf = new StringBuffer();
-              strBuf.append(buffer, 0, readCount);
-              String snippet = strBuf.toString();
-              if (isDebug()) {
-                log(String.format("read %3d char '%s'", readCount, snippet));
-              }
-              addSnippet(snippet);
-            }
-          }
+        // block until there is data - no busy polling needed
+        long waitStart = System.nanoTime();
+        buffer.clear();
+        int readCount = in.read(buffer);
+        long wakeUp = System.nanoTime();
+        if (readCount < 0) {
+          if (this.isDebug())
+            log(String.format("%s end of input", this.getTitle()));
+          break;
+        }
+        if (readCount > 0) {
+          addBytes(bytes, readCount);
+          metrics.wakeUp(readCount, wakeUp - waitStart,
+              System.nanoTime() - wakeUp);
         }
       }
     } catch (Throwable th) {
-      handle("run failed", th);
+      if (running)
+        handle("run failed", th);
     }
+    running = false;
+  }
+
+  /**
+   * add the given bytes that have just been read
+   * 
+   * @param bytes
+   * @param count
+   *          - the number of valid bytes
+   */
+  protected void addBytes(byte[] bytes, int count) {
+    if (isDebug() && !receiveLineFeed) {
+      log(String.format("read %3d char '%s'", count,
+          new String(bytes, 0, count, ISO_8859_1)));
+    }
+    framer.feed(bytes, 0, count);
   }
 
-  String response = "";
   private WatchDog watchDog;
   private Restartable restarter;
   public static int WATCHDOG_TIMEOUT=2000; // how long do we wait if no communication is happening
 
   /**
    * we are not in receiveLineFeed Mode and might receive any kind of snippets
-   * that might be just part of a reponse or span multiple responses - we have
-   * to look at the snippet and split it up into responses
+   * that might be just part of a reponse or span multiple responses - the
+   * framer splits them up into responses
    * 
    * @param snippet
    */
   public void addSnippet(String snippet) {
-    response += snippet;
-    Matcher m = snippetPattern.matcher(response);
-    boolean responseComplete = m.find();
-    if (responseComplete) {
-      if (isDebug()) {
-        log(String.format("complete response is '%s' with %2d groups",
-            response.replace("\r\n", "|CRLF|"), m.groupCount()));
-      }
-      synchronized (this) {
-        addResponseLine(response);
-        response = "";
-      }
-    }
+    byte[] bytes = snippet.getBytes(ISO_8859_1);
+    addBytes(bytes, bytes.length);
   }
 
   /**
@@ -190,20 +208,42 @@ public class ConnectionImpl extends Thread implements Connection {
     if (isDebug()) {
       log(String.format("response for %s is: '%s' (%3d)", title, line,line.length()));
     }
+    // the time stamp is taken when the packet is created
     Packet response = new PacketImpl();
     response.setData(line);
-    response.updateTimeStamp();
     response.setResponse(response);
-    responses.add(response);
+    metrics.response();
+    boolean handled = this.handleResponses && this.responseHandler != null;
+    if (queueResponses || !handled)
+      queueResponse(response);
     // tell the watchDog all is well
     if (watchDog!=null)
       watchDog.ping(this);
-    if (this.handleResponses && this.responseHandler!=null) {
+    if (handled) {
       this.responseHandler.handleResponse(response);
     }
     
   }
 
+  /**
+   * add the given response to the response queue according to the overflow
+   * policy
+   * 
+   * @param response
+   */
+  protected void queueResponse(Packet response) {
+    boolean queued = false;
+    // give the consumer up to the timeout to catch up
+    if (overflowPolicy == OverflowPolicy.block && running)
+      queued = responses.put(response, timeOut, TimeUnit.MILLISECONDS);
+    if (!queued) {
+      int dropped = responses.offerDropOldest(response);
+      if (dropped > 0 && isDebug())
+        log(String.format("%s response queue full - dropped %d response(s)",
+            title, dropped));
+    }
+  }
+
   /**
    * pause for the given number of milliseconds
    *
@@ -217,9 +257,16 @@ public class ConnectionImpl extends Thread implements Connection {
     }
   }
 
+  /**
+   * stop reading - the reader thread blocks in the read of the input channel
+   * so it is interrupted which closes the (interruptible) channel and with it
+   * the input
+   */
   @Override
   public void halt() {
     running = false;
+    if (isAlive() && Thread.currentThread() != this)
+      interrupt();
   }
 
   @Override
@@ -241,12 +288,18 @@ public class ConnectionImpl extends Thread implements Connection {
   public void connect(Socket socket) throws IOException {
     setInput(socket.getInputStream());
     setOutput(socket.getOutputStream());
+    // sockets opened via a blocking SocketChannel are read directly from the
+    // channel
+    if (socket.getChannel() != null && socket.getChannel().isBlocking())
+      inputChannel = socket.getChannel();
   }
 
   @Override
   public void connect(File device) throws IOException {
-    setInput(new FileInputStream(device));
+    FileInputStream deviceInput = new FileInputStream(device);
+    setInput(deviceInput);
     setOutput(new FileOutputStream(device));
+    inputChannel = deviceInput.getChannel();
   }
 
   @Override
@@ -298,11 +351,7 @@ public class ConnectionImpl extends Thread implements Connection {
   public Packet getResponse(Packet request) {
     Packet response =null;
 
-    try {
-      response = responses.poll(timeOut, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException e) {
-      // ignore - handle like timeOut
-    }
+    response = responses.poll(timeOut, TimeUnit.MILLISECONDS);
     if (response == null) {
       response = new PacketImpl();
       response.setResponse(response);
@@ -370,6 +419,31 @@ public class ConnectionImpl extends Thread implements Connection {
     this.handleResponses = handleResponses;
   }
 
+  @Override
+  public RingBuffer<Packet> getResponseQueue() {
+    return responses;
+  }
+
+  @Override
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  @Override
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  @Override
+  public boolean isQueueResponses() {
+    return queueResponses;
+  }
+
+  @Override
+  public void setQueueResponses(boolean queueResponses) {
+    this.queueResponses = queueResponses;
+  }
+
   @Override
   public void setWatchDog(WatchDog watchDog) {
     this.watchDog=watchDog;
@@ -0,0 +1,137 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.elm327;
+
+/**
+ * statistics of the reader thread of a connection
+ *
+ * the counters are only written by the reader thread - other threads may read
+ * them for display purposes
+ *
+ * @author wf
+ *
+ */
+public class ConnectionMetrics {
+  volatile long wakeUps; // how often did the reader wake up with data
+  volatile long bytesRead; // how many bytes have been read
+  volatile long responses; // how many responses have been framed
+  volatile long idleNanos; // time spent blocked waiting for data
+  volatile long busyNanos; // time spent handling the data after a wake up
+  volatile long maxLatencyNanos; // worst time from wake up to dispatch
+
+  public long getWakeUps() {
+    return wakeUps;
+  }
+
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  public long getResponses() {
+    return responses;
+  }
+
+  /**
+   * record a complete response
+   */
+  public void response() {
+    responses++;
+  }
+
+  public long getIdleNanos() {
+    return idleNanos;
+  }
+
+  public long getBusyNanos() {
+    return busyNanos;
+  }
+
+  public long getMaxLatencyNanos() {
+    return maxLatencyNanos;
+  }
+
+  /**
+   * record a wake up of the reader
+   *
+   * @param bytes
+   *          - the number of bytes received
+   * @param waitNanos
+   *          - how long the reader was blocked before the bytes arrived
+   * @param handleNanos
+   *          - how long it took to dispatch the bytes
+   */
+  public void wakeUp(int bytes, long waitNanos, long handleNanos) {
+    wakeUps++;
+    bytesRead += bytes;
+    idleNanos += waitNanos;
+    busyNanos += handleNanos;
+    if (handleNanos > maxLatencyNanos)
+      maxLatencyNanos = handleNanos;
+  }
+
+  /**
+   * get the average time from wake up to dispatch
+   *
+   * @return the average latency in nano seconds
+   */
+  public long getAvgLatencyNanos() {
+    if (wakeUps == 0)
+      return 0;
+    return busyNanos / wakeUps;
+  }
+
+  /**
+   * get the share of the time the reader was busy (not blocked)
+   *
+   * @return the busy ratio 0.0 - 1.0
+   */
+  public double getBusyRatio() {
+    long total = idleNanos + busyNanos;
+    if (total == 0)
+      return 0.0;
+    return busyNanos * 1.0 / total;
+  }
+
+  /**
+   * reset the counters
+   */
+  public void reset() {
+    wakeUps = 0;
+    bytesRead = 0;
+    responses = 0;
+    idleNanos = 0;
+    busyNanos = 0;
+    maxLatencyNanos = 0;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format(
+        "%d wake ups, %d bytes, %d responses, busy %5.2f%%, latency avg %d usecs max %d usecs",
+        wakeUps, bytesRead, responses, getBusyRatio() * 100.0,
+        getAvgLatencyNanos() / 1000, maxLatencyNanos / 1000);
+    return result;
+  }
+}
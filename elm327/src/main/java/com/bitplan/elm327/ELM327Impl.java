@@ -217,6 +217,7 @@ public class ELM327Impl extends ELM327DeviceImpl implements ELM327 {
    * @throws Exception
    */
   public void flushResponseQueue() throws Exception {
+    resetResponseQueue();
     // send a CR to stop current monitoring command like STM
     Packet r;
     // sendCommand("", ".*", true);
@@ -230,9 +231,20 @@ public class ELM327Impl extends ELM327DeviceImpl implements ELM327 {
     } while (data!=null  && (++retries<MAX_RETRIES));
   }
 
+  /**
+   * go back to command/response after monitoring - monitored frames that
+   * have not been taken from the response queue are discarded
+   */
+  protected void resetResponseQueue() {
+    con.setOverflowPolicy(Connection.OverflowPolicy.block);
+    con.setQueueResponses(true);
+    con.getResponseQueue().clear();
+  }
+
   @Override
   public void reinitCommunication(long timeOutMsecs) throws Exception {
     started = true;
+    resetResponseQueue();
     // keep the old timeout
     long timeout = con.getTimeout();
     // operate with a much lower timeout to quickly reinitialize
@@ -32,7 +32,7 @@ import java.util.Date;
  */
 
 public interface Packet {
-    // when the packet was sent/received
+    // when the packet was sent/received in nanoseconds since the epoch see Clock
     long getTimeStamp();
     // time in millisecs for response
     long getResponseTime();
@@ -57,6 +57,7 @@ public interface Packet {
     public Packet getResponse();
     public void setResponse(Packet p);
     String asString();
+    // when the packet was sent/received as a Date - created on each call
     Date getTime();
 
 }
@@ -28,7 +28,7 @@ import java.util.Date;
  */
 
 public class PacketImpl implements Packet {
-  Date time;
+  // nanoseconds since the epoch see Clock
   long timeStamp;
   String data;
   boolean valid;
@@ -57,7 +57,18 @@ public class PacketImpl implements Packet {
    *          - the time of the data
    */
   public PacketImpl(String data, Date time) {
-    this.time = time;
+    this(data, Clock.fromDate(time));
+  }
+
+  /**
+   * construct me
+   * 
+   * @param data
+   * @param timeStamp
+   *          - the time of the data in nanoseconds since the epoch
+   */
+  public PacketImpl(String data, long timeStamp) {
+    this.timeStamp = timeStamp;
     this.data = data;
   }
 
@@ -68,7 +79,7 @@ public class PacketImpl implements Packet {
 
   @Override
   public Date getTime() {
-    return time;
+    return Clock.toDate(timeStamp);
   }
 
   @Override
@@ -122,8 +133,7 @@ public class PacketImpl implements Packet {
 
   @Override
   public void updateTimeStamp() {
-    timeStamp = System.nanoTime();
-    time = new Date();
+    timeStamp = Clock.now();
   }
 
   @Override
@@ -142,7 +152,7 @@ public class PacketImpl implements Packet {
     String ts = "";
 
     // http://bugs.java.com/bugdatabase/view_bug.do?bug_id=6231579
-    ts = getIsoDateFormatter().format(time);
+    ts = getIsoDateFormatter().format(getTime());
     String result = "null";
     if (response != null)
       result = String.format("%s (%s): %s", ts, getData(), response.getData());
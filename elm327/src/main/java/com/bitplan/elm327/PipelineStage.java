@@ -0,0 +1,197 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.elm327;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a stage of a processing pipeline - items are put into the bounded
+ * {@link RingBuffer} of the stage by a single producer thread and processed
+ * in order by the thread of the stage
+ *
+ * @author wf
+ *
+ * @param <T>
+ */
+public abstract class PipelineStage<T> extends Thread {
+  // how often to yield before going to sleep when the queue is empty
+  public static final int SPINS = 100;
+  // the longest sleep when the queue is empty - guards against missed wake ups
+  public static final long IDLE_PARK_NANOS = 1000000;
+
+  protected final RingBuffer<T> queue;
+  protected Log log;
+  private volatile boolean running = false;
+  private volatile boolean sleeping = false;
+
+  // metrics - written by the stage thread only
+  private volatile long processed;
+  private volatile long busyNanos;
+  private volatile long errors;
+  private long startNanos;
+
+  /**
+   * create a stage
+   *
+   * @param name
+   *          - the name of the thread
+   * @param capacity
+   *          - the capacity of the queue
+   */
+  public PipelineStage(String name, int capacity) {
+    super(name);
+    setDaemon(true);
+    queue = new RingBuffer<T>(capacity);
+  }
+
+  /**
+   * process the given item
+   *
+   * @param item
+   * @throws Exception
+   */
+  protected abstract void process(T item) throws Exception;
+
+  /**
+   * put the given item - only a single producer thread may call this
+   *
+   * @param item
+   */
+  public void put(T item) {
+    queue.put(item);
+    if (sleeping)
+      LockSupport.unpark(this);
+  }
+
+  @Override
+  public synchronized void start() {
+    running = true;
+    startNanos = System.nanoTime();
+    super.start();
+  }
+
+  @Override
+  public void run() {
+    int spins = 0;
+    // the items that are still queued are processed before stopping
+    while (running || !queue.isEmpty()) {
+      T item = queue.poll();
+      if (item == null) {
+        if (spins++ < SPINS) {
+          Thread.yield();
+        } else {
+          sleeping = true;
+          if (queue.isEmpty() && running)
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+          sleeping = false;
+        }
+        continue;
+      }
+      spins = 0;
+      long start = System.nanoTime();
+      try {
+        process(item);
+      } catch (Throwable th) {
+        errors++;
+        LogImpl.handle(log, getName() + " failed", th);
+      }
+      busyNanos += System.nanoTime() - start;
+      processed++;
+    }
+  }
+
+  /**
+   * stop the stage after the queued items have been processed
+   */
+  public void halt() {
+    running = false;
+    LockSupport.unpark(this);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * check whether all items put so far have been processed
+   *
+   * @return true if the stage has nothing to do
+   */
+  public boolean isIdle() {
+    return processed == queue.getPutCount();
+  }
+
+  public RingBuffer<T> getQueue() {
+    return queue;
+  }
+
+  public void setLog(Log log) {
+    this.log = log;
+  }
+
+  public long getProcessed() {
+    return processed;
+  }
+
+  public long getBusyNanos() {
+    return busyNanos;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * get the number of items processed per second since the stage was started
+   *
+   * @return the throughput
+   */
+  public double getThroughput() {
+    long elapsed = System.nanoTime() - startNanos;
+    if (startNanos == 0 || elapsed <= 0)
+      return 0.0;
+    return processed * 1E9 / elapsed;
+  }
+
+  /**
+   * get the average processing time of an item
+   *
+   * @return the average time in nano seconds
+   */
+  public long getAvgNanos() {
+    if (processed == 0)
+      return 0;
+    return busyNanos / processed;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format(
+        "%s: %d items %7.1f/s avg %d usecs %d errors queue %s", getName(),
+        processed, getThroughput(), getAvgNanos() / 1000, errors,
+        queue.asString());
+    return result;
+  }
+}
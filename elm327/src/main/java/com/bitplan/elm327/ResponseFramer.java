@@ -0,0 +1,193 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.elm327;
+
+import java.nio.charset.Charset;
+
+/**
+ * incremental framer for ELM327 responses
+ *
+ * bytes are fed as they arrive and each byte is looked at exactly once - a
+ * frame is complete when
+ * <ul>
+ * <li>the prompt '&gt;' is received</li>
+ * <li>one of the terminal tokens like STOPPED or BUFFER FULL is received</li>
+ * <li>a CR or LF is received in line mode</li>
+ * </ul>
+ * complete frames are handed to the {@link FrameListener} from a reusable
+ * buffer
+ *
+ * @author wf
+ *
+ */
+public class ResponseFramer {
+  /**
+   * tokens that terminate a response even if no prompt follows
+   */
+  public static final String[] TERMINAL_TOKENS = { "STOPPED", "BUFFER FULL",
+      "CAN ERROR", "<DATA ERROR", "OUT OF MEMORY" };
+
+  /**
+   * listener for complete frames
+   */
+  public interface FrameListener {
+    /**
+     * a frame is complete
+     *
+     * @param frame
+     *          - the buffer with the frame bytes - only valid during the call
+     * @param length
+     *          - the number of valid bytes in the buffer
+     */
+    public void onFrame(byte[] frame, int length);
+  }
+
+  private final FrameListener listener;
+  private boolean lineMode = false;
+  private byte[] frame = new byte[256];
+  private int frameLength = 0;
+
+  // incremental (Knuth-Morris-Pratt) matching state of the terminal tokens
+  private static final byte[][] tokens = new byte[TERMINAL_TOKENS.length][];
+  private static final int[][] fallbacks = new int[TERMINAL_TOKENS.length][];
+  private final int[] matched = new int[TERMINAL_TOKENS.length];
+  // java.nio.charset.StandardCharsets needs Android API level 19
+  private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+  static {
+    for (int t = 0; t < TERMINAL_TOKENS.length; t++) {
+      byte[] token = TERMINAL_TOKENS[t].getBytes(US_ASCII);
+      int[] fallback = new int[token.length];
+      int k = 0;
+      for (int i = 1; i < token.length; i++) {
+        while (k > 0 && token[i] != token[k])
+          k = fallback[k - 1];
+        if (token[i] == token[k])
+          k++;
+        fallback[i] = k;
+      }
+      tokens[t] = token;
+      fallbacks[t] = fallback;
+    }
+  }
+
+  /**
+   * create a framer for the given listener
+   *
+   * @param listener
+   */
+  public ResponseFramer(FrameListener listener) {
+    this.listener = listener;
+  }
+
+  public boolean isLineMode() {
+    return lineMode;
+  }
+
+  /**
+   * switch line mode - in line mode CR and LF terminate a frame
+   *
+   * @param lineMode
+   */
+  public void setLineMode(boolean lineMode) {
+    this.lineMode = lineMode;
+  }
+
+  /**
+   * get the number of bytes of the frame that is not complete yet
+   *
+   * @return the number of pending bytes
+   */
+  public int getPending() {
+    return frameLength;
+  }
+
+  /**
+   * feed the given bytes
+   *
+   * @param bytes
+   * @param offset
+   * @param count
+   */
+  public void feed(byte[] bytes, int offset, int count) {
+    int end = offset + count;
+    for (int i = offset; i < end; i++) {
+      feed(bytes[i]);
+    }
+  }
+
+  /**
+   * feed a single byte
+   *
+   * @param b
+   */
+  public void feed(byte b) {
+    if (lineMode && (b == '\r' || b == '\n')) {
+      emit();
+      return;
+    }
+    if (frameLength == frame.length) {
+      byte[] newFrame = new byte[frame.length * 2];
+      System.arraycopy(frame, 0, newFrame, 0, frameLength);
+      frame = newFrame;
+    }
+    frame[frameLength++] = b;
+    if (b == '>') {
+      emit();
+      return;
+    }
+    for (int t = 0; t < tokens.length; t++) {
+      byte[] token = tokens[t];
+      int k = matched[t];
+      while (k > 0 && b != token[k])
+        k = fallbacks[t][k - 1];
+      if (b == token[k])
+        k++;
+      if (k == token.length) {
+        emit();
+        return;
+      }
+      matched[t] = k;
+    }
+  }
+
+  /**
+   * hand the current frame to the listener and start a new one
+   */
+  private void emit() {
+    for (int t = 0; t < matched.length; t++)
+      matched[t] = 0;
+    if (frameLength > 0) {
+      int length = frameLength;
+      frameLength = 0;
+      listener.onFrame(frame, length);
+    }
+  }
+
+  /**
+   * discard the frame that is not complete yet
+   */
+  public void reset() {
+    frameLength = 0;
+    for (int t = 0; t < matched.length; t++)
+      matched[t] = 0;
+  }
+}
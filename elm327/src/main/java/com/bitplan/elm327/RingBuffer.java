@@ -0,0 +1,302 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.elm327;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * bounded lock free ring buffer for a single producer thread (Disruptor style)
+ * - the capacity is rounded up to a power of two, the producer position is
+ * published with lazySet and the producer caches the consumer position to
+ * avoid touching the shared cache line on every call. Items are taken with a
+ * compare and set of the consumer position so that the producer may drop the
+ * oldest item while a consumer is taking items. Taken items are not cleared
+ * so up to capacity items stay referenced until their slot is reused.
+ *
+ * @author wf
+ *
+ * @param <T>
+ */
+public class RingBuffer<T> {
+  public static final int DEFAULT_CAPACITY = 1024;
+  // how long to wait before retrying when the buffer is full or empty
+  public static final long PARK_NANOS = 50000;
+  // the longest wait of a consumer before checking again
+  public static final long MAX_WAIT_NANOS = 1000000;
+
+  private final Object[] slots;
+  private final int mask;
+  // the position of the next item to take
+  private final AtomicLong head = new AtomicLong();
+  // the position of the next item to put - written by the producer only
+  private final AtomicLong tail = new AtomicLong();
+  // producer side copy of the head
+  private long cachedHead;
+  // a consumer waiting for an item
+  private volatile Thread waiter;
+
+  // metrics - written by the producer only
+  private volatile int highWaterMark;
+  private volatile long fullWaits;
+  private volatile long drops;
+
+  /**
+   * create a ring buffer with the default capacity
+   */
+  public RingBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * create a ring buffer
+   *
+   * @param capacity
+   *          - the minimum number of items the buffer can hold
+   */
+  public RingBuffer(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException(
+          "capacity must be positive but is " + capacity);
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity)
+      size = size << 1;
+    slots = new Object[size];
+    mask = size - 1;
+  }
+
+  /**
+   * offer the given item - producer only
+   *
+   * @param item
+   * @return false if the buffer is full
+   */
+  public boolean offer(T item) {
+    long t = tail.get();
+    if (t - cachedHead >= slots.length) {
+      cachedHead = head.get();
+      if (t - cachedHead >= slots.length)
+        return false;
+    }
+    slots[(int) (t & mask)] = item;
+    tail.lazySet(t + 1);
+    // the cached head is behind so the real size is only checked when the
+    // high water mark might be exceeded
+    if (t + 1 - cachedHead > highWaterMark) {
+      cachedHead = head.get();
+      int size = (int) (t + 1 - cachedHead);
+      if (size > highWaterMark)
+        highWaterMark = size;
+    }
+    Thread w = waiter;
+    if (w != null)
+      LockSupport.unpark(w);
+    return true;
+  }
+
+  /**
+   * offer the given item and drop the oldest items if the buffer is full -
+   * producer only
+   *
+   * @param item
+   * @return the number of items dropped
+   */
+  public int offerDropOldest(T item) {
+    int dropped = 0;
+    while (!offer(item)) {
+      if (poll() != null) {
+        dropped++;
+        drops++;
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * put the given item waiting while the buffer is full - producer only
+   *
+   * @param item
+   * @return the number of times the producer had to wait
+   */
+  public int put(T item) {
+    int waits = 0;
+    while (!offer(item)) {
+      if (waits++ == 0)
+        fullWaits++;
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+    return waits;
+  }
+
+  /**
+   * put the given item waiting at most the given time while the buffer is
+   * full - producer only
+   *
+   * @param item
+   * @param timeout
+   * @param unit
+   * @return true if the item was put
+   */
+  public boolean put(T item, long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    boolean waited = false;
+    while (!offer(item)) {
+      if (!waited) {
+        waited = true;
+        fullWaits++;
+      }
+      if (System.nanoTime() - deadline >= 0)
+        return false;
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+    return true;
+  }
+
+  /**
+   * take the next item
+   *
+   * @return the item or null if the buffer is empty
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    while (true) {
+      long h = head.get();
+      if (h >= tail.get())
+        return null;
+      // the slot can not be reused by the producer before the head has moved
+      T item = (T) slots[(int) (h & mask)];
+      if (head.compareAndSet(h, h + 1))
+        return item;
+    }
+  }
+
+  /**
+   * take the next item waiting at most the given time for it - only a single
+   * thread may wait at a time
+   *
+   * @param timeout
+   * @param unit
+   * @return the item or null if there was none within the given time
+   */
+  public T poll(long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    T item;
+    while ((item = poll()) == null) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+        return null;
+      waiter = Thread.currentThread();
+      // the producer unparks the waiter - the limit guards against a missed
+      // wake up
+      if (isEmpty())
+        LockSupport.parkNanos(this, Math.min(remaining, MAX_WAIT_NANOS));
+      waiter = null;
+    }
+    return item;
+  }
+
+  /**
+   * remove all items
+   *
+   * @return the number of items removed
+   */
+  public int clear() {
+    int removed = 0;
+    while (poll() != null)
+      removed++;
+    return removed;
+  }
+
+  /**
+   * get the number of items in the buffer
+   *
+   * @return the current occupancy
+   */
+  public int size() {
+    long h = head.get();
+    return (int) (tail.get() - h);
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * get the total number of items that have been put
+   *
+   * @return the number of items
+   */
+  public long getPutCount() {
+    return tail.get();
+  }
+
+  /**
+   * get the total number of items that have been taken
+   *
+   * @return the number of items
+   */
+  public long getTakeCount() {
+    return head.get();
+  }
+
+  /**
+   * get the highest occupancy seen so far
+   *
+   * @return the high water mark
+   */
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  /**
+   * get how often a producer had to wait for a full buffer
+   *
+   * @return the number of waits
+   */
+  public long getFullWaits() {
+    return fullWaits;
+  }
+
+  /**
+   * get how many items have been dropped to make room for newer ones
+   *
+   * @return the number of dropped items
+   */
+  public long getDrops() {
+    return drops;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format("%d/%d (max %d, %d full waits, %d drops)",
+        size(), capacity(), highWaterMark, fullWaits, drops);
+    return result;
+  }
+}
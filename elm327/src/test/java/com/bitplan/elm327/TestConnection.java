@@ -31,6 +31,7 @@ import static org.junit.Assert.*;
 
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by wf on 03.06.17.
@@ -138,6 +139,104 @@ public class TestConnection {
     }
   }
 
+  /**
+   * test that the reader blocks while idle and wakes up when data arrives
+   */
+  @Test
+  public void testBlockingReader() throws Exception {
+    ServerSocket serverSocket = new ServerSocket(0);
+    Socket clientSocket = new Socket("localhost", serverSocket.getLocalPort());
+    Socket elmSocket = serverSocket.accept();
+    ConnectionImpl con = new ConnectionImpl();
+    con.setReceiveLineFeed(true);
+    con.connect(clientSocket);
+    con.start();
+    // idle - the reader must not wake up
+    Thread.sleep(200);
+    ConnectionMetrics metrics = con.getMetrics();
+    assertEquals(0, metrics.getWakeUps());
+    elmSocket.getOutputStream().write("OK\r\n\r\n>".getBytes());
+    elmSocket.getOutputStream().write("373 8 C7 C6 7F 5E 0C C0 00 06\r\n".getBytes());
+    Packet p = con.getResponse(null);
+    assertEquals("OK", p.getData());
+    p = con.getResponse(null);
+    assertEquals("373 8 C7 C6 7F 5E 0C C0 00 06", p.getData());
+    // the metrics are updated after the dispatch
+    Thread.sleep(50);
+    assertTrue(metrics.getWakeUps() >= 1);
+    assertEquals(38, metrics.getBytesRead());
+    con.close();
+    elmSocket.close();
+    serverSocket.close();
+  }
+
+  /**
+   * halt must stop a reader that is blocked in read
+   */
+  @Test
+  public void testHalt() throws Exception {
+    ServerSocket serverSocket = new ServerSocket(0);
+    Socket clientSocket = new Socket("localhost", serverSocket.getLocalPort());
+    Socket elmSocket = serverSocket.accept();
+    ConnectionImpl con = new ConnectionImpl();
+    con.setReceiveLineFeed(false);
+    con.connect(clientSocket);
+    con.start();
+    elmSocket.getOutputStream().write("OK\r\n>".getBytes());
+    assertEquals("OK", con.getResponse(null).getData().trim());
+    // nothing more arrives - the reader is blocked
+    con.halt();
+    con.join(1000);
+    assertFalse(con.isAlive());
+    elmSocket.close();
+    serverSocket.close();
+  }
+
+  /**
+   * test the bounded response queue
+   */
+  @Test
+  public void testResponseQueue() throws Exception {
+    ConnectionImpl con = new ConnectionImpl();
+    con.setReceiveLineFeed(true);
+    RingBuffer<Packet> queue = con.getResponseQueue();
+    int capacity = queue.capacity();
+    assertEquals(ConnectionImpl.RESPONSE_QUEUE_CAPACITY, capacity);
+    con.setOverflowPolicy(Connection.OverflowPolicy.dropOldest);
+    for (int i = 0; i < capacity + 6; i++)
+      con.addSnippet(String.format("373 8 C7 C6 7F 5E 0C C0 00 %02X\r", i % 256));
+    assertEquals(capacity, queue.size());
+    assertEquals(capacity, queue.getHighWaterMark());
+    assertEquals(6, queue.getDrops());
+    assertEquals("373 8 C7 C6 7F 5E 0C C0 00 06", con.getResponse(null).getData());
+    assertEquals(capacity + 6, con.getMetrics().getResponses());
+    queue.clear();
+    // responses that are consumed by the handler are not queued
+    final int[] handled = { 0 };
+    con.setResponseHandler(new ResponseHandler() {
+      @Override
+      public void handleResponse(Packet response) {
+        handled[0]++;
+      }
+    });
+    con.setHandleResponses(true);
+    con.setQueueResponses(false);
+    con.addSnippet("OK\r");
+    assertEquals(1, handled[0]);
+    assertTrue(queue.isEmpty());
+    // a full queue makes the producer wait for the given time
+    RingBuffer<Integer> ring = new RingBuffer<Integer>(2);
+    assertTrue(ring.put(1, 10, TimeUnit.MILLISECONDS));
+    assertTrue(ring.put(2, 10, TimeUnit.MILLISECONDS));
+    long start = System.nanoTime();
+    assertFalse(ring.put(3, 20, TimeUnit.MILLISECONDS));
+    assertTrue(System.nanoTime() - start >= 20000000);
+    assertEquals(1, ring.getFullWaits());
+    assertEquals(1, ring.poll(10, TimeUnit.MILLISECONDS).intValue());
+    assertEquals(2, ring.poll(10, TimeUnit.MILLISECONDS).intValue());
+    assertNull(ring.poll(10, TimeUnit.MILLISECONDS));
+  }
+
   /**
    * get an ELM327 connection via WIFI
    * 
@@ -22,6 +22,9 @@ package com.bitplan.elm327;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 /**
@@ -48,4 +51,69 @@ public class TestSnippets {
       index++;
     }
   }
+
+  /**
+   * get the frames of the given snippets
+   * 
+   * @param lineMode
+   * @param snippets
+   * @return the list of frames
+   */
+  public List<String> frame(boolean lineMode, String... snippets) {
+    final List<String> frames = new ArrayList<String>();
+    ResponseFramer framer = new ResponseFramer(
+        new ResponseFramer.FrameListener() {
+          @Override
+          public void onFrame(byte[] frame, int length) {
+            frames.add(new String(frame, 0, length));
+          }
+        });
+    framer.setLineMode(lineMode);
+    for (String snippet : snippets) {
+      byte[] bytes = snippet.getBytes();
+      framer.feed(bytes, 0, bytes.length);
+    }
+    return frames;
+  }
+
+  @Test
+  public void testFramer() {
+    List<String> frames = frame(false, "AT", " Z\r\rELM327", " v1.3a\r\r>",
+        "OK\r", ">");
+    assertEquals(2, frames.size());
+    assertEquals("AT Z\r\rELM327 v1.3a\r\r>", frames.get(0));
+    assertEquals("OK\r>", frames.get(1));
+    // terminal tokens split across snippets
+    frames = frame(false, "373 8 C7 C6 7F 5E 0C C0 00 06\rBUF", "FER F",
+        "ULL", "CAN ERR", "OR", "OUT OUT OF MEMORY");
+    assertEquals(3, frames.size());
+    assertTrue(frames.get(0).endsWith("BUFFER FULL"));
+    assertEquals("CAN ERROR", frames.get(1));
+    assertEquals("OUT OUT OF MEMORY", frames.get(2));
+    // line mode
+    frames = frame(true, "OK\r\n\r\n>373 8 C7", " C6 7F 5E 0C C0 00 06\r\n",
+        "STOPPED\r\n");
+    assertEquals(4, frames.size());
+    assertEquals(">", frames.get(1));
+    assertEquals("373 8 C7 C6 7F 5E 0C C0 00 06", frames.get(2));
+    assertEquals("STOPPED", frames.get(3));
+  }
+
+  @Test
+  public void testStreaming() {
+    // a long monitoring stream fed in small pieces
+    String line = "373 8 C7 C6 7F 5E 0C C0 00 06\r\n";
+    StringBuffer stream = new StringBuffer();
+    int lines = 10000;
+    for (int i = 0; i < lines; i++)
+      stream.append(line);
+    String[] snippets = new String[stream.length() / 7 + 1];
+    for (int i = 0; i < snippets.length; i++) {
+      snippets[i] = stream.substring(i * 7,
+          Math.min(stream.length(), i * 7 + 7));
+    }
+    List<String> frames = frame(true, snippets);
+    assertEquals(lines, frames.size());
+    assertEquals(line.trim(), frames.get(lines - 1));
+  }
 }
@@ -25,7 +25,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -40,10 +39,12 @@ import com.bitplan.can4eve.CANValue.CANRawValue;
 import com.bitplan.can4eve.Pid;
 import com.bitplan.can4eve.VehicleGroup;
 import com.bitplan.elm327.Connection;
+import com.bitplan.elm327.ConnectionMetrics;
 import com.bitplan.elm327.Packet;
 import com.bitplan.elm327.ResponseHandler;
 import com.bitplan.elm327.SerialImpl;
 import com.bitplan.obdii.elm327.ELM327;
+import com.bitplan.obdii.elm327.LogWriter;
 
 /**
  * general OBDII communication to any vehicle
@@ -66,13 +67,15 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
 
   private File device;
   private File logFile;
-  protected PrintWriter logWriter;
+  protected LogWriter logWriter;
   protected List<CANValue<?>> canValues;
   private Map<String, CANRawValue> canRawValues = new HashMap<String, CANRawValue>();
 
   protected int bufferOverruns = 0;
   protected int errCounter=0;
   private VehicleGroup vehicleGroup;
+  private FramePipeline pipeline;
+  private boolean queueMonitoredFrames = true;
 
   public ELM327 getElm327() {
     return elm327;
@@ -86,6 +89,20 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
     return vehicleGroup;
   }
 
+  public boolean isQueueMonitoredFrames() {
+    return queueMonitoredFrames;
+  }
+
+  /**
+   * set whether monitored frames are queued as responses - if not they are
+   * only handed to the response handler
+   * 
+   * @param queueMonitoredFrames
+   */
+  public void setQueueMonitoredFrames(boolean queueMonitoredFrames) {
+    this.queueMonitoredFrames = queueMonitoredFrames;
+  }
+
   /**
    * get the CAN Raw values
    * @return the map of CANRawValues
@@ -265,9 +282,46 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
     lelm.send("AT CRA " + pid);
     // lelm.send("AT CAF0"); // do we need this for china adapters?
     lelm.send("AT MA");
+    long frameCount = startMonitoring(lelm.getCon());
     for (long i = 0; i < frameLimit; i++) {
       // FIXME - Pseudo request - timeout handling ...
-      lelm.getCon().getResponse(null);
+      awaitMonitoredFrame(lelm.getCon(), ++frameCount);
+    }
+    lelm.getCon().setQueueResponses(true);
+  }
+
+  /**
+   * prepare the response queue of the given connection for monitoring - the
+   * oldest frames are dropped if the queue is full and frames are only queued
+   * if queueMonitoredFrames is set. Command/response mode is restored by the
+   * next flush of the response queue
+   * 
+   * @param con
+   * @return the current response count of the connection
+   */
+  protected long startMonitoring(Connection con) {
+    con.setOverflowPolicy(Connection.OverflowPolicy.dropOldest);
+    con.setQueueResponses(queueMonitoredFrames);
+    return con.getMetrics().getResponses();
+  }
+
+  /**
+   * wait for the next monitored frame
+   * 
+   * @param con
+   * @param frameCount
+   *          - the response count of the connection to wait for if frames
+   *          are not queued
+   */
+  protected void awaitMonitoredFrame(Connection con, long frameCount) {
+    if (con.isQueueResponses()) {
+      con.getResponse(null);
+    } else {
+      ConnectionMetrics metrics = con.getMetrics();
+      long deadline = System.currentTimeMillis() + con.getTimeout();
+      while (metrics.getResponses() < frameCount
+          && System.currentTimeMillis() < deadline)
+        con.pause(1, 0);
     }
   }
   
@@ -328,17 +382,16 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
   }
 
   /**
-   * optionally log the response to the logWriter
+   * optionally log the response to the logWriter - the response is only
+   * handed over and written in batches by the thread of the logWriter
    * 
    * @param pLogWriter
    * @param response
    */
-  public void logWrite(PrintWriter pLogWriter, Packet response) {
+  public void logWrite(LogWriter pLogWriter, Packet response) {
     // if logging is enabled
     if (pLogWriter != null) {
-      pLogWriter.println(
-          timeStampIsoDateFormatter.format(response.getTime()) + " " + response.getData());
-      pLogWriter.flush();
+      pLogWriter.write(response);
     }
   }
 
@@ -356,16 +409,29 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
     String filename = vehicleName + "_" + logIsoDateFormatter.format(now)
         + ".log";
     logFile = new File(logRoot, filename);
-    logWriter = new PrintWriter(logFile);
+    logWriter = new LogWriter(logFile);
+    logWriter.start();
     return logFile;
   }
 
+  /**
+   * get the writer of the response log
+   * 
+   * @return the logWriter or null if responses are not logged
+   */
+  public LogWriter getLogWriter() {
+    return logWriter;
+  }
+
   /**
    * close me
    */
   public void close() {
+    stopPipeline();
     if (logWriter != null) {
       logWriter.close();
+      if (debug)
+        LOGGER.log(Level.INFO, logWriter.asString());
       logWriter = null;
       logFile = null;
     }
@@ -378,6 +444,17 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
    */
   @Override
   public void handleResponse(Packet response) {
+    handleResponse(response, knownPidHandler);
+  }
+
+  /**
+   * handle the given Response and hand over the PIDResponses found in it
+   * 
+   * @param response
+   * @param pidHandler
+   *          - the handler for the PIDResponses
+   */
+  public void handleResponse(Packet response, PIDResponseHandler pidHandler) {
     if (response == null)
       return;
     log(" handling response " + response.asString());
@@ -389,13 +466,58 @@ public abstract class AbstractOBDHandler implements ResponseHandler {
       this.bufferOverruns++;
       return;
     }
-    List<PIDResponse> pidResponses = PIDResponse.fromResponse(getElm327(), response);
-    for (PIDResponse pidResponse : pidResponses) {
-      if (pidResponse.pid != null)
-        handleResponse(pidResponse);
-    }
+    PIDResponse.fromResponse(getElm327(), response, pidHandler);
   }
+
+  // only hand over PIDResponses for PIDs known in the vehicle group
+  private final PIDResponseHandler knownPidHandler = pidResponse -> {
+    if (pidResponse.pid != null)
+      handleResponse(pidResponse);
+  };
   
+  /**
+   * handle responses in a pipeline - the reader thread of the connection only
+   * hands over the responses which are then parsed and decoded by the
+   * threads of the pipeline
+   * 
+   * @param decoderCount
+   *          - the number of decode stages
+   * @param capacity
+   *          - the capacity of the queue of each stage
+   * @return the pipeline
+   */
+  public FramePipeline startPipeline(int decoderCount, int capacity) {
+    stopPipeline();
+    pipeline = new FramePipeline(this, decoderCount, capacity);
+    pipeline.start();
+    getElm327().getCon().setResponseHandler(pipeline);
+    return pipeline;
+  }
+
+  /**
+   * stop the pipeline after the pending responses have been handled and
+   * handle responses on the reader thread again
+   */
+  public void stopPipeline() {
+    if (pipeline != null) {
+      getElm327().getCon().setResponseHandler(this);
+      pipeline.halt();
+      if (debug)
+        LOGGER.log(Level.INFO, pipeline.asString());
+      pipeline = null;
+    }
+  }
+
+  /**
+   * get the pipeline
+   * 
+   * @return the pipeline or null if responses are handled on the reader
+   *         thread
+   */
+  public FramePipeline getPipeline() {
+    return pipeline;
+  }
+
   /**
    * log the given error
    * @param msg
@@ -0,0 +1,215 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii;
+
+/**
+ * parser for a single CAN line as returned by the ELM327 with headers and
+ * length switched on e.g.
+ *
+ * <pre>
+ * 373 8 C7 C6 7F 5E 0C C0 00 06
+ * </pre>
+ *
+ * the line is parsed in place without creating any objects - the result is
+ * available in the fields of the parser until the next call of parse
+ *
+ * ISO-TP frames like "762 21 00 01 8F 4A 0C D0 4E" have no length but a two
+ * digit first data byte instead - for these the length is 8
+ *
+ * @author wf
+ *
+ */
+public class CANLineParser {
+  public static final int MAX_DATA = 8;
+  public static final int ISOTP_LENGTH = 8;
+
+  // hex value of the ASCII characters or -1
+  private static final int[] HEX = new int[128];
+  static {
+    for (int i = 0; i < HEX.length; i++)
+      HEX[i] = -1;
+    for (int i = 0; i < 10; i++)
+      HEX['0' + i] = i;
+    for (int i = 0; i < 6; i++) {
+      HEX['A' + i] = 10 + i;
+      HEX['a' + i] = 10 + i;
+    }
+  }
+
+  // the parsed header id e.g. 0x373
+  public int id;
+  // the start and end index of the header id in the line
+  public int idStart;
+  public int idEnd;
+  // the length reported by the ELM327 or ISOTP_LENGTH for ISO-TP frames
+  public int length;
+  // true if this is an ISO-TP frame
+  public boolean isoTp;
+  // the number of data bytes found
+  public int count;
+  // the data bytes
+  public final int[] data = new int[MAX_DATA];
+  // the data bytes packed big endian - first byte is the most significant
+  public long payload;
+
+  /**
+   * get the hex value of the given char
+   *
+   * @param c
+   * @return the value 0-15 or -1 if c is not a hex digit
+   */
+  public static int hexValue(char c) {
+    if (c >= HEX.length)
+      return -1;
+    return HEX[c];
+  }
+
+  /**
+   * check whether the given char is a white space as in \s
+   *
+   * @param c
+   * @return true if c is white space
+   */
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f'
+        || c == 0x0B;
+  }
+
+  /**
+   * parse the given line
+   *
+   * @param line
+   *          - the line to parse
+   * @param withLength
+   *          - true if the ELM327 has been asked to show the length (AT D1)
+   * @return true if the line has the expected structure
+   */
+  public boolean parse(CharSequence line, boolean withLength) {
+    return parse(line, 0, line.length(), withLength);
+  }
+
+  /**
+   * parse the line in the given range
+   *
+   * @param line
+   *          - the characters to parse
+   * @param start
+   *          - the start index
+   * @param end
+   *          - the end index (exclusive)
+   * @param withLength
+   *          - true if the ELM327 has been asked to show the length (AT D1)
+   * @return true if the line has the expected structure
+   */
+  public boolean parse(CharSequence line, int start, int end,
+      boolean withLength) {
+    count = 0;
+    payload = 0;
+    int pos = start;
+    while (pos < end && isSpace(line.charAt(pos)))
+      pos++;
+    // three digit header id
+    if (pos + 3 > end)
+      return false;
+    idStart = pos;
+    id = 0;
+    for (int i = 0; i < 3; i++) {
+      int nibble = hexValue(line.charAt(pos++));
+      if (nibble < 0)
+        return false;
+      id = (id << 4) | nibble;
+    }
+    idEnd = pos;
+    // at least one white space
+    if (pos >= end || !isSpace(line.charAt(pos)))
+      return false;
+    while (pos < end && isSpace(line.charAt(pos)))
+      pos++;
+    // length - one decimal digit or the first data byte of an ISO-TP frame
+    if (pos >= end)
+      return false;
+    int first = hexValue(line.charAt(pos++));
+    if (first < 0)
+      return false;
+    int second = pos < end ? hexValue(line.charAt(pos)) : -1;
+    if (second >= 0) {
+      pos++;
+      isoTp = true;
+      data[count++] = (first << 4) | second;
+      payload = data[0];
+      length = ISOTP_LENGTH;
+    } else {
+      if (first > 9)
+        return false;
+      isoTp = false;
+      length = withLength ? first : ISOTP_LENGTH;
+    }
+    // exactly one white space after the length
+    if (pos >= end || !isSpace(line.charAt(pos++)))
+      return false;
+    // data bytes separated by white space
+    boolean dataFound = false;
+    while (pos < end) {
+      char c = line.charAt(pos);
+      if (isSpace(c)) {
+        pos++;
+        continue;
+      }
+      if (pos + 1 >= end)
+        return false;
+      int high = hexValue(c);
+      int low = hexValue(line.charAt(pos + 1));
+      if (high < 0 || low < 0)
+        return false;
+      pos += 2;
+      // bytes must be separated
+      if (pos < end && !isSpace(line.charAt(pos)))
+        return false;
+      if (count == MAX_DATA)
+        return false;
+      int value = (high << 4) | low;
+      data[count++] = value;
+      payload = (payload << 8) | value;
+      dataFound = true;
+    }
+    return dataFound;
+  }
+
+  /**
+   * check whether the number of data bytes matches the length
+   *
+   * @return true if the length is as reported
+   */
+  public boolean isComplete() {
+    return count == length;
+  }
+
+  /**
+   * copy the data bytes to a new array
+   *
+   * @return the array of data bytes
+   */
+  public int[] copyData() {
+    int[] result = new int[count];
+    System.arraycopy(data, 0, result, 0, count);
+    return result;
+  }
+}
@@ -31,4 +31,11 @@ import com.bitplan.gui.Display;
 public interface CANValueDisplay extends Display {
   public void updateCanValueField(CANValue<?> canValue);
   public void updateField(String title, Object value, int updateCount);
+
+  /**
+   * show all fields of the given batch at once
+   * 
+   * @param batch
+   */
+  public void updateFields(FieldBatch batch);
 }
@@ -0,0 +1,105 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bitplan.can4eve.CANValue;
+import com.bitplan.can4eve.CANValueSnapshot;
+
+/**
+ * a batch of field updates to be shown in one go
+ * 
+ * @author wf
+ *
+ */
+public class FieldBatch {
+  private final List<String> titles = new ArrayList<String>();
+  private final List<Object> values = new ArrayList<Object>();
+  private final List<Integer> updateCounts = new ArrayList<Integer>();
+  // reused for all values of the batch
+  private final CANValueSnapshot<Object> snapshot = new CANValueSnapshot<Object>();
+
+  /**
+   * add the update of a field
+   * 
+   * @param title
+   * @param value
+   * @param updateCount
+   */
+  public void add(String title, Object value, int updateCount) {
+    titles.add(title);
+    values.add(value);
+    updateCounts.add(updateCount);
+  }
+
+  /**
+   * add the given CANValue if it has changed since it was last shown - the
+   * value is only formatted in this case
+   * 
+   * @param canValue
+   * @param force
+   *          - add the value even if it has not changed
+   * @return true if the value was added
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public boolean add(CANValue<?> canValue, boolean force) {
+    if (!force
+        && canValue.getUpdateCount() == canValue.getDisplayedUpdateCount())
+      return false;
+    // value and update count of the same update
+    CANValue<Object> value = (CANValue) canValue;
+    value.getSnapshot(snapshot);
+    int updateCount = snapshot.getUpdateCount();
+    canValue.setDisplayedUpdateCount(updateCount);
+    // indexed values are shown by plots
+    if (canValue.canInfo.getMaxIndex() != 0)
+      return false;
+    String text;
+    if (snapshot.isAvailable())
+      text = value.asString(snapshot.getValue());
+    else
+      text = canValue.asString();
+    add(canValue.canInfo.getTitle(), text, updateCount);
+    return true;
+  }
+
+  public int size() {
+    return titles.size();
+  }
+
+  public boolean isEmpty() {
+    return titles.isEmpty();
+  }
+
+  public String getTitle(int i) {
+    return titles.get(i);
+  }
+
+  public Object getValue(int i) {
+    return values.get(i);
+  }
+
+  public int getUpdateCount(int i) {
+    return updateCounts.get(i);
+  }
+}
@@ -0,0 +1,285 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bitplan.can4eve.CANInfo;
+import com.bitplan.can4eve.Pid;
+import com.bitplan.can4eve.VehicleGroup;
+import com.bitplan.elm327.ConnectionMetrics;
+import com.bitplan.elm327.Packet;
+import com.bitplan.elm327.PipelineStage;
+import com.bitplan.elm327.ResponseHandler;
+
+/**
+ * pipelined handling of responses - the reader thread of the connection only
+ * frames the bytes into packets, a parse stage splits the packets into
+ * PIDResponses and decode stages decode them. The stages are connected by
+ * bounded lock free ring buffers. PIDResponses are partitioned by the
+ * CANInfos their PID sets - PIDs that set the same CANInfo e.g. the four cell
+ * info PIDs are decoded by the same stage so that each value is only ever set
+ * by a single thread and the responses of a PID are decoded in order.
+ * 
+ * @author wf
+ *
+ */
+public class FramePipeline implements ResponseHandler {
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private final AbstractOBDHandler handler;
+  private final ParseStage parser;
+  private final DecodeStage[] decoders;
+  // the decode stage of each CAN id
+  private final int[] partitionByCanId = new int[VehicleGroup.MAX_CAN_ID];
+
+  /**
+   * the parse stage - splits packets into PIDResponses
+   */
+  class ParseStage extends PipelineStage<Packet> {
+    // dispatch the PIDResponses of known PIDs to their decode stage
+    private final PIDResponseHandler dispatcher = pidResponse -> {
+      if (pidResponse.pid != null)
+        decoders[getPartition(pidResponse.pidHex)].put(pidResponse);
+    };
+
+    public ParseStage(int capacity) {
+      super("parse", capacity);
+    }
+
+    @Override
+    protected void process(Packet response) {
+      handler.handleResponse(response, dispatcher);
+    }
+  }
+
+  /**
+   * a decode stage - decodes the PIDResponses of its partition
+   */
+  class DecodeStage extends PipelineStage<PIDResponse> {
+    public DecodeStage(int partition, int capacity) {
+      super("decode " + partition, capacity);
+    }
+
+    @Override
+    protected void process(PIDResponse pidResponse) {
+      handler.handleResponse(pidResponse);
+    }
+  }
+
+  /**
+   * create a pipeline for the given handler
+   * 
+   * @param handler
+   * @param decoderCount
+   *          - the number of decode stages
+   * @param capacity
+   *          - the capacity of the queue of each stage
+   */
+  public FramePipeline(AbstractOBDHandler handler, int decoderCount,
+      int capacity) {
+    this.handler = handler;
+    parser = new ParseStage(capacity);
+    decoders = new DecodeStage[Math.max(1, decoderCount)];
+    for (int i = 0; i < decoders.length; i++)
+      decoders[i] = new DecodeStage(i, capacity);
+    if (decoders.length > 1)
+      partition(handler.getVehicleGroup());
+  }
+
+  /**
+   * assign the PIDs of the given vehicle group to the decode stages - PIDs
+   * that set a common CANInfo form a group, the groups are assigned by
+   * frequency to the least loaded stage
+   * 
+   * @param vehicleGroup
+   */
+  private void partition(VehicleGroup vehicleGroup) {
+    List<Pid> pids = vehicleGroup.getPids();
+    // union find over the PIDs connected by their CANInfos
+    int[] parent = new int[pids.size()];
+    Map<String, Integer> pidByInfo = new HashMap<String, Integer>();
+    for (int i = 0; i < pids.size(); i++) {
+      parent[i] = i;
+      for (CANInfo canInfo : pids.get(i).getCaninfos()) {
+        Integer other = pidByInfo.get(canInfo.getName());
+        if (other == null)
+          pidByInfo.put(canInfo.getName(), i);
+        else
+          parent[find(parent, i)] = find(parent, other);
+      }
+    }
+    Map<Integer, List<Pid>> groupMap = new HashMap<Integer, List<Pid>>();
+    Map<Integer, Integer> freqs = new HashMap<Integer, Integer>();
+    for (int i = 0; i < pids.size(); i++) {
+      int root = find(parent, i);
+      List<Pid> group = groupMap.get(root);
+      if (group == null) {
+        group = new ArrayList<Pid>();
+        groupMap.put(root, group);
+        freqs.put(root, 0);
+      }
+      group.add(pids.get(i));
+      freqs.put(root, freqs.get(root) + Math.max(1, pids.get(i).getFreq()));
+    }
+    List<Integer> roots = new ArrayList<Integer>(groupMap.keySet());
+    Collections.sort(roots, (a, b) -> {
+      int cmp = freqs.get(b).compareTo(freqs.get(a));
+      return cmp != 0 ? cmp : a.compareTo(b);
+    });
+    long[] load = new long[decoders.length];
+    for (Integer root : roots) {
+      int stage = 0;
+      for (int i = 1; i < load.length; i++)
+        if (load[i] < load[stage])
+          stage = i;
+      load[stage] += freqs.get(root);
+      for (Pid pid : groupMap.get(root)) {
+        int canId = pid.getCanId();
+        if (canId >= 0 && canId < partitionByCanId.length)
+          partitionByCanId[canId] = stage;
+      }
+    }
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i)
+      i = parent[i] = parent[parent[i]];
+    return i;
+  }
+
+  /**
+   * get the decode stage of the given CAN id
+   * 
+   * @param canId
+   * @return the index of the decode stage - 0 for unknown CAN ids
+   */
+  public int getPartition(int canId) {
+    if (canId < 0 || canId >= partitionByCanId.length)
+      return 0;
+    return partitionByCanId[canId];
+  }
+
+  /**
+   * start the stages
+   */
+  public void start() {
+    for (DecodeStage decoder : decoders)
+      decoder.start();
+    parser.start();
+  }
+
+  /**
+   * stop the stages after the queued responses have been handled
+   */
+  public void halt() {
+    parser.halt();
+    try {
+      parser.join();
+    } catch (InterruptedException e) {
+      // ignore
+    }
+    for (DecodeStage decoder : decoders)
+      decoder.halt();
+  }
+
+  /**
+   * the reader stage - called by the reader thread of the connection
+   */
+  @Override
+  public void handleResponse(Packet response) {
+    if (response != null)
+      parser.put(response);
+  }
+
+  /**
+   * check whether all responses handed over so far have been handled
+   * 
+   * @return true if all stages are idle
+   */
+  public boolean isIdle() {
+    if (!parser.isIdle())
+      return false;
+    for (DecodeStage decoder : decoders)
+      if (!decoder.isIdle())
+        return false;
+    return true;
+  }
+
+  /**
+   * wait until all responses handed over so far have been handled
+   * 
+   * @param timeoutMsecs
+   * @return true if the pipeline is idle
+   * @throws InterruptedException
+   */
+  public boolean awaitIdle(long timeoutMsecs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMsecs;
+    while (!isIdle()) {
+      if (System.currentTimeMillis() > deadline)
+        return false;
+      Thread.sleep(1);
+    }
+    return true;
+  }
+
+  public PipelineStage<Packet> getParser() {
+    return parser;
+  }
+
+  public PipelineStage<PIDResponse>[] getDecoders() {
+    return decoders;
+  }
+
+  /**
+   * get the highest queue occupancy of all stages relative to its capacity
+   * 
+   * @return the occupancy between 0 and 1
+   */
+  public double getMaxOccupancy() {
+    double result = (double) parser.getQueue().getHighWaterMark()
+        / parser.getQueue().capacity();
+    for (DecodeStage decoder : decoders)
+      result = Math.max(result, (double) decoder.getQueue().getHighWaterMark()
+          / decoder.getQueue().capacity());
+    return result;
+  }
+
+  /**
+   * return me as a string
+   * 
+   * @return me as a string
+   */
+  public String asString() {
+    StringBuilder sb = new StringBuilder();
+    ConnectionMetrics metrics = handler.getElm327().getCon().getMetrics();
+    if (metrics != null)
+      sb.append("read: " + metrics.asString());
+    sb.append(String.format("%n%s", parser.asString()));
+    for (DecodeStage decoder : decoders)
+      sb.append(String.format("%n%s", decoder.asString()));
+    return sb.toString();
+  }
+}
@@ -20,9 +20,12 @@
  */
 package com.bitplan.obdii;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Level;
 
 import org.controlsfx.glyphfont.FontAwesome;
@@ -37,6 +40,9 @@ import com.bitplan.i18n.I18n;
 import com.bitplan.obdii.javafx.CANValuePane;
 import com.bitplan.obdii.javafx.JFXCanCellStatePlot;
 import com.bitplan.obdii.javafx.JFXCanValueHistoryPlot;
+import com.bitplan.obdii.javafx.JFXCanValuePlot;
+import com.bitplan.obdii.javafx.JFXCanvasCellStatePlot;
+import com.bitplan.obdii.javafx.JFXCanvasHistoryPlot;
 import com.bitplan.obdii.javafx.JavaFXDisplay;
 
 import eu.hansolo.medusa.Gauge;
@@ -56,6 +62,34 @@ import javafx.scene.layout.Region;
  *
  */
 public class JFXTripletDisplay extends JavaFXDisplay {
+  // ids of the plot tabs to draw on a canvas instead of a chart
+  private Set<String> canvasTabs = new HashSet<String>();
+
+  public Set<String> getCanvasTabs() {
+    return canvasTabs;
+  }
+
+  /**
+   * set the ids of the plot tabs to draw on a canvas
+   * 
+   * @param tabIds
+   *          - comma separated list of tab ids e.g. cellTemp,cellVoltage,soc_rr
+   */
+  public void setCanvasTabs(String tabIds) {
+    canvasTabs.clear();
+    if (tabIds != null && !tabIds.trim().isEmpty())
+      canvasTabs.addAll(Arrays.asList(tabIds.trim().split("\\s*,\\s*")));
+  }
+
+  /**
+   * check whether the plot of the given tab is to be drawn on a canvas
+   * 
+   * @param tabId
+   * @return true if a canvas is to be used
+   */
+  public boolean isCanvas(String tabId) {
+    return canvasTabs.contains(tabId);
+  }
 
   /**
    * construct me
@@ -157,7 +191,8 @@ public class JFXTripletDisplay extends JavaFXDisplay {
         if (newValue.equals(0.0)) {
           CANProperty<DoubleValue, Double> tripRounds = cpm.get("TripRounds");
           Date timeStamp = new Date();
-          tripRounds.getCanValue().setValue(0.0, timeStamp);
+          // the decoding thread does the reset
+          tripRounds.getCanValue().requestValue(0.0, timeStamp);
         }
       }
 
@@ -166,19 +201,29 @@ public class JFXTripletDisplay extends JavaFXDisplay {
     if (tabPane != null) {
       CANProperty<DoubleValue, Double> cellTemperature = cpm
           .get("CellTemperature");
-      final JFXCanCellStatePlot cellStatePlot = new JFXCanCellStatePlot(
-          "cellTemperature", "cell", "Temperature", cellTemperature, 1.0, 0.5);
+      final JFXCanValuePlot cellStatePlot;
+      if (isCanvas("cellTemp"))
+        cellStatePlot = new JFXCanvasCellStatePlot("cellTemperature", "cell",
+            "Temperature", cellTemperature, 1.0, 0.5);
+      else
+        cellStatePlot = new JFXCanCellStatePlot("cellTemperature", "cell",
+            "Temperature", cellTemperature, 1.0, 0.5);
 
       Platform.runLater(() -> super.getXyTabPane().addTab(tabPane, "cellTemp",
-          I18n.get(Can4EveI18n.CELL_TEMP), "temp50", cellStatePlot.getBarChart()));
+          I18n.get(Can4EveI18n.CELL_TEMP), "temp50", cellStatePlot.getRegion()));
       cellStatePlot.updateOn(cellTemperature.getUpdateCountProperty());
 
       CANProperty<DoubleValue, Double> cellVoltage = cpm.get("CellVoltage");
-      final JFXCanCellStatePlot cellVoltagePlot = new JFXCanCellStatePlot(
-          "cellVoltage", "cell", "Voltage", cellVoltage, 0.01, 0.1);
+      final JFXCanValuePlot cellVoltagePlot;
+      if (isCanvas("cellVoltage"))
+        cellVoltagePlot = new JFXCanvasCellStatePlot("cellVoltage", "cell",
+            "Voltage", cellVoltage, 0.01, 0.1);
+      else
+        cellVoltagePlot = new JFXCanCellStatePlot("cellVoltage", "cell",
+            "Voltage", cellVoltage, 0.01, 0.1);
       Platform.runLater(() -> super.getXyTabPane().addTab(tabPane,
           "cellVoltage", I18n.get(Can4EveI18n.CELL_VOLTAGE),
-          FontAwesome.Glyph.FLASH.name(), cellVoltagePlot.getBarChart()));
+          FontAwesome.Glyph.FLASH.name(), cellVoltagePlot.getRegion()));
       cellVoltagePlot.updateOn(cellVoltage.getUpdateCountProperty());
 
       // setup history
@@ -187,10 +232,15 @@ public class JFXTripletDisplay extends JavaFXDisplay {
       String yTitle = "%/km";
       Map<String, CANProperty> properties = cpm.getCANProperties("SOC",
           "Range");
-      final JFXCanValueHistoryPlot valuePlot = new JFXCanValueHistoryPlot(title,
-          xTitle, yTitle, properties);
+      final JFXCanValuePlot valuePlot;
+      if (isCanvas("soc_rr"))
+        valuePlot = new JFXCanvasHistoryPlot(title, xTitle, yTitle,
+            properties);
+      else
+        valuePlot = new JFXCanValueHistoryPlot(title, xTitle, yTitle,
+            properties);
       // TODO - use addTab and remove from the json app declaration file
-      Platform.runLater(() -> updateTab("soc_rr", valuePlot.createLineChart()));
+      Platform.runLater(() -> updateTab("soc_rr", valuePlot.getRegion()));
       valuePlot.updateOn(cpm.get("SOC").getUpdateCountProperty());
     }
   }
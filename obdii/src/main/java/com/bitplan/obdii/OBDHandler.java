@@ -241,6 +241,10 @@ public abstract class OBDHandler extends AbstractOBDHandler {
       displayexecutor.shutdown();
       displayexecutor = null;
     }
+    // set what the decimators still hold back and set every sample again
+    if (cpm != null) {
+      cpm.setDecimation(0);
+    }
   }
 
   /**
@@ -274,10 +278,12 @@ public abstract class OBDHandler extends AbstractOBDHandler {
     if (lelm.isSTN()) {
       this.setSTMFilter(canValues);
       lcon.output("STM");
+      long frameCount = startMonitoring(lcon);
       setMonitoring(true);
       for (long i = 0; i < frameLimit && isMonitoring(); i++) {
-        lcon.getResponse(null);
+        awaitMonitoredFrame(lcon, ++frameCount);
       }
+      lcon.setQueueResponses(true);
     } else {
       if (debug)
         LOGGER.log(Level.INFO, "super slow China clone loop entered");
@@ -353,12 +359,16 @@ public abstract class OBDHandler extends AbstractOBDHandler {
         ErrorHandler.handle(e);
       }
     }
+    // channels that arrive faster than they are shown are thinned out
+    cpm.setDecimation(msecs);
     displayexecutor = Executors.newSingleThreadScheduledExecutor();
     displayStart = new Date();
     displayTask = new Runnable() {
       public void run() {
         // Invoke method(s) to do the work
         try {
+          // channels that went quiet pass on their last value
+          cpm.tickDecimators();
           showValues(display);
         } catch (Exception e) {
           ErrorHandler.handle(e);
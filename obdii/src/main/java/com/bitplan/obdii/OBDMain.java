@@ -50,6 +50,7 @@ import com.bitplan.obdii.elm327.ELM327;
 import com.bitplan.obdii.elm327.ElmSimulator;
 import com.bitplan.obdii.elm327.LogPlayer;
 import com.bitplan.obdii.elm327.LogPlayerImpl;
+import com.bitplan.obdii.elm327.LogWriter;
 import com.bitplan.obdii.javafx.JavaFXDisplay;
 import com.bitplan.triplet.OBDTriplet;
 
@@ -125,6 +126,24 @@ public class OBDMain extends Main implements OBDApp {
   "--tabid" }, usage = "tabId\nthe id of the tab to start with")
   String tabId = "latest";
 
+  @Option(name = "--canvas", usage = "tabIds\ncomma separated ids of the plot tabs to draw on a canvas e.g. cellTemp,cellVoltage,soc_rr")
+  String canvasTabs;
+
+  @Option(name = "--dedup", usage = "suppress duplicates\ndo not decode frames that repeat the previous payload of their PID")
+  boolean suppressDuplicates = false;
+
+  @Option(name = "--pipeline", usage = "decode stages\nparse and decode responses in a pipeline with the given number of decode stages instead of on the reader thread")
+  int pipelineDecoders = 0;
+
+  @Option(name = "--noqueue", usage = "do not queue monitored frames\nonly hand monitored frames to the decoders")
+  boolean noQueue = false;
+
+  @Option(name = "--logflush", usage = "log flush interval\nthe longest time in milliseconds a logged response may stay unwritten - 0 writes every response")
+  long logFlushMsecs = LogWriter.DEFAULT_FLUSH_MSECS;
+
+  @Option(name = "--logdrop", usage = "drop log entries\ndrop the oldest responses instead of waiting when the log writer falls behind")
+  boolean logDrop = false;
+
   @Option(name = "-c", aliases = {
       "--conn" }, usage = "connection device\nthe connection to use")
   String device;
@@ -254,6 +273,8 @@ public class OBDMain extends Main implements OBDApp {
       if (vehicle.getMmPerRound() != null)
         obdTriplet.setMmPerRound(vehicle.getMmPerRound());
     }
+    obdTriplet.setSuppressDuplicates(suppressDuplicates);
+    obdTriplet.setQueueMonitoredFrames(!noQueue);
     // the simulator is pre started and timeout and debug set
     // all other devices are configured here
     if (config.getDeviceType() != DeviceType.Simulator) {
@@ -292,7 +313,15 @@ public class OBDMain extends Main implements OBDApp {
           obdTriplet.logResponses(new File(pref.getLogDirectory()), pref.getLogPrefix());
         }
       }
+      LogWriter logWriter = obdTriplet.getLogWriter();
+      if (logWriter != null) {
+        logWriter.setFlushMsecs(logFlushMsecs);
+        if (logDrop)
+          logWriter.setPolicy(LogWriter.Policy.dropOldest);
+      }
     }
+    if (pipelineDecoders > 0)
+      obdTriplet.startPipeline(pipelineDecoders, FramePipeline.DEFAULT_CAPACITY);
     obdTriplet.startDisplay(canValueDisplay, 333);
     if (this.reportFileName != null) {
       obdTriplet.report(reportFileName, frameLimit);
@@ -301,6 +330,7 @@ public class OBDMain extends Main implements OBDApp {
     else {
       obdTriplet.pidMonitor(obdTriplet.getCANValues(), frameLimit);
     }
+    obdTriplet.stopPipeline();
     obdTriplet.stopDisplay();
     return elm;
   }
@@ -388,7 +418,10 @@ public class OBDMain extends Main implements OBDApp {
       switch (displayChoice) {
       case JavaFX:
         App app=App.getInstance(APP_PATH);
-        jfxDisplay = new JFXTripletDisplay(app, this, this);
+        JFXTripletDisplay tripletDisplay = new JFXTripletDisplay(app, this,
+            this);
+        tripletDisplay.setCanvasTabs(canvasTabs);
+        jfxDisplay = tripletDisplay;
         canValueDisplay = jfxDisplay;
         break;
       default:
@@ -0,0 +1,42 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii;
+
+/**
+ * decoder for the responses of a single PID
+ * 
+ * decoders are looked up by the numeric CAN id of the response so that the
+ * dispatch needs no String comparison
+ * 
+ * @author wf
+ *
+ */
+public interface PIDDecoder {
+  /**
+   * decode the given PIDResponse
+   * 
+   * @param pr
+   *          - the response to decode - the length has already been checked
+   * @param timeStamp
+   *          - the time stamp of the response in nanoseconds since the epoch
+   */
+  public void decode(PIDResponse pr, long timeStamp);
+}
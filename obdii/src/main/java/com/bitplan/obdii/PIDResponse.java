@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.bitplan.can4eve.Pid;
@@ -42,7 +41,11 @@ public class PIDResponse {
   public static boolean debug = false;
 
   public static final Pattern PID_LINE_PATTERN = Pattern
-      .compile("([0-9A-F]{3})\\s+([0-9]|[0-9A_F]{2})\\s(([0-9A-F]{2}\\s)+)");
+      .compile("([0-9A-F]{3})\\s+([0-9]|[0-9A-F]{2})\\s(([0-9A-F]{2}\\s)+)");
+
+  // the parser is not thread safe so each thread gets it's own
+  private static final ThreadLocal<CANLineParser> parsers = ThreadLocal
+      .withInitial(() -> new CANLineParser());
 
   // data representation
   // FIXME use byte?
@@ -52,6 +55,7 @@ public class PIDResponse {
   public int pidHex;
   int len;
   private Packet response;
+  private String rawString;
   boolean valid = true;
 
   /**
@@ -62,48 +66,68 @@ public class PIDResponse {
    */
   public PIDResponse(ELM327 elm327, Packet response) {
     String line = response.getData();
-    Matcher pmatcher = PIDResponse.PID_LINE_PATTERN.matcher(line+" ");
-    if (pmatcher.matches()) {
-      if (debug) {
-        LOGGER.log(Level.INFO, "creating PIDResponse for " + line);
-      }
-      this.setResponse(response);
-      pidId = pmatcher.group(1);
-      String lenStr = pmatcher.group(2);
-      boolean isotp = lenStr.length() == 2;
-      String data;
-      if (isotp) {
-        data = lenStr + " " + pmatcher.group(3);
-      } else {
-        data = pmatcher.group(3);
-      }
-      String[] ds = data.split("\\s");
-      pidHex = hex2decimal(pidId);
-      pid = elm327.getVehicleGroup().getPidById(pidId);
-      if (pid == null) {
-        LOGGER.log(Level.WARNING, "Unknown PID " + pidId);
-      } else {
+    CANLineParser parser = parsers.get();
+    if (parser.parse(line, elm327.isLength())) {
+      init(elm327, response, line, line, parser);
+    }
+  }
+
+  /**
+   * create this PIDResponse from a line that has just been parsed
+   * 
+   * @param elm327
+   * @param response
+   *          - the packet the line is part of
+   * @param data
+   *          - the data that has been parsed
+   * @param line
+   *          - the line
+   * @param parser
+   *          - the parser holding the parse result for the line
+   */
+  PIDResponse(ELM327 elm327, Packet response, String data, String line,
+      CANLineParser parser) {
+    init(elm327, response, data, line, parser);
+  }
+
+  /**
+   * initialize me from the given parse result
+   * 
+   * @param elm327
+   * @param response
+   * @param data
+   * @param line
+   * @param parser
+   */
+  private void init(ELM327 elm327, Packet response, String data, String line,
+      CANLineParser parser) {
+    if (debug) {
+      LOGGER.log(Level.INFO, "creating PIDResponse for " + line);
+    }
+    this.setResponse(response);
+    this.rawString = line;
+    pidHex = parser.id;
+    pid = elm327.getVehicleGroup().getPidById(pidHex);
+    // known PIDs share the id String of the Pid
+    if (pid != null)
+      pidId = pid.getPid();
+    else
+      pidId = data.substring(parser.idStart, parser.idEnd);
+    if (pid == null) {
+      LOGGER.log(Level.WARNING, "Unknown PID " + pidId);
+    } else {
+      if (debug)
         log("pid=" + pid.toString());
-        if (elm327.isLength() && !isotp) {
-          len = hex2decimal(lenStr);
-        } else {
-          len = 8; // FIXME - what if length not set? - e.g look for next three
-                   // letter PID String?
-        }
-        if (ds.length != len) {
-          if (debug)
-            LOGGER.log(Level.WARNING,
-                String.format(
-                    "length mismatch reported len %3d != found len %3d for %s",
-                    len, ds.length, response));
-          valid = false;
-        } else {
-          d = new int[len];
-
-          for (int i = 0; i < d.length; i++) {
-            d[i] = hex2decimal(ds[i]);
-          }
-        }
+      len = parser.length;
+      if (!parser.isComplete()) {
+        if (debug)
+          LOGGER.log(Level.WARNING,
+              String.format(
+                  "length mismatch reported len %3d != found len %3d for %s",
+                  len, parser.count, response));
+        valid = false;
+      } else {
+        d = parser.copyData();
       }
     }
   }
@@ -116,12 +140,9 @@ public class PIDResponse {
    * @return - the integer equivalent
    */
   public static int hex2decimal(String s) {
-    String digits = "0123456789ABCDEF";
-    s = s.toUpperCase();
     int val = 0;
     for (int i = 0; i < s.length(); i++) {
-      char c = s.charAt(i);
-      int d = digits.indexOf(c);
+      int d = CANLineParser.hexValue(s.charAt(i));
       val = 16 * val + d;
     }
     return val;
@@ -133,29 +154,58 @@ public class PIDResponse {
    * @param elm327
    *          - the device for reading
    * @param response
-   * @return
+   * @return the list of valid PIDResponses
    */
   public static List<PIDResponse> fromResponse(ELM327 elm327, Packet response) {
+    List<PIDResponse> responses = new ArrayList<PIDResponse>();
+    fromResponse(elm327, response, responses::add);
+    return responses;
+  }
+
+  /**
+   * analyze the given OBDII response string line by line - the response is
+   * walked exactly once and the handler is called for each valid PIDResponse
+   * 
+   * @param elm327
+   *          - the device for reading
+   * @param response
+   *          - the packet with one or more lines
+   * @param handler
+   *          - the handler to call
+   */
+  public static void fromResponse(ELM327 elm327, Packet response,
+      PIDResponseHandler handler) {
     if (debug)
       LOGGER.log(Level.INFO,
           "handling pid response '" + response.asString() + "'");
-    List<PIDResponse> responses = new ArrayList<PIDResponse>();
-    Matcher matcher = null;
-    if (elm327.isHeader() && elm327.isLength()) {
-      matcher = PIDResponse.PID_LINE_PATTERN.matcher(response.getData() + " ");
-    }
-    if (matcher == null)
+    if (!(elm327.isHeader() && elm327.isLength()))
       throw new RuntimeException(
           "PIDResponse currently only works with header and length enabled!");
-    while (matcher.find()) {
-      String pidline = matcher.group();
-      if (debug)
-        LOGGER.log(Level.INFO, "handling pidline '" + pidline + "'");
-      PIDResponse pidResponse = new PIDResponse(elm327, response);
-      if (pidResponse.valid)
-        responses.add(pidResponse);
+    String data = response.getData();
+    if (data == null)
+      return;
+    CANLineParser parser = parsers.get();
+    int end = data.length();
+    int lineStart = 0;
+    while (lineStart < end) {
+      int lineEnd = lineStart;
+      char c = 0;
+      while (lineEnd < end && (c = data.charAt(lineEnd)) != '\r' && c != '\n')
+        lineEnd++;
+      if (parser.parse(data, lineStart, lineEnd, true)) {
+        // the packet is usually a single line - no need to copy it then
+        String line = data;
+        if (lineStart > 0 || lineEnd < end)
+          line = data.substring(lineStart, lineEnd);
+        if (debug)
+          LOGGER.log(Level.INFO, "handling pidline '" + line + "'");
+        PIDResponse pidResponse = new PIDResponse(elm327, response, data,
+            line, parser);
+        if (pidResponse.valid)
+          handler.handleResponse(pidResponse);
+      }
+      lineStart = lineEnd + 1;
     }
-    return responses;
   }
 
   public Packet getResponse() {
@@ -203,7 +253,12 @@ public class PIDResponse {
     return str;
   }
 
+  /**
+   * get the line this PIDResponse was created from
+   * 
+   * @return the raw line
+   */
   public String getRawString() {
-    return this.getResponse().getData();
+    return rawString;
   }
 }
@@ -0,0 +1,539 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.bitplan.elm327.Clock;
+import com.bitplan.elm327.Packet;
+import com.bitplan.elm327.PacketImpl;
+
+/**
+ * reader for binary CAN log files as written by {@link BinaryLogWriter}
+ * 
+ * <pre>
+ * file:   int magic "C4LG", int version
+ *         blocks
+ * block:  int records, long first time, long last time (millis since the
+ *         epoch), int length, records (length bytes), int CRC32 of the records
+ * record: varint zig zag delta to the time of the previous record
+ *         byte h
+ *         h &lt; 0x80: 11 bit id - upper 3 bits in bit 4-6 of h, DLC in bit
+ *                   0-3, byte lower 8 bits of the id, DLC payload bytes
+ *         h = 0x8n: 29 bit id - DLC n, varint id, DLC payload bytes
+ *         h = 0xAn: repeat of the previous frame of the 11 bit id in this
+ *                   block - upper 3 bits of the id in n, byte lower 8 bits
+ *         h = 0x90: varint length, UTF-8 text
+ *         h = 0x91: varint length, UTF-8 line without time stamp
+ * </pre>
+ * 
+ * A frame takes at most about 11 bytes and a repeated frame 3 bytes instead
+ * of the about 55 bytes of a text log line and needs no date parsing. Each
+ * block can be decoded on its own.
+ *
+ * @author wf
+ *
+ */
+public class BinaryLogReader {
+  public static final int MAGIC = 0x43344C47;
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 8;
+  public static final int BLOCK_HEADER_SIZE = 24;
+  // record types
+  public static final int STANDARD = 0x00;
+  public static final int EXTENDED = 0x80;
+  public static final int TEXT = 0x90;
+  public static final int RAW_LINE = 0x91;
+  public static final int REPEAT = 0xA0;
+  public static final long MAX_STANDARD_ID = 0x7FF;
+  public static final long MAX_EXTENDED_ID = 0x1FFFFFFF;
+  public static final int STANDARD_IDS = (int) MAX_STANDARD_ID + 1;
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  /**
+   * the position and time range of a block
+   */
+  public static class Block {
+    long offset;
+    int records;
+    // the times of blocks without time stamps are those of the previous block
+    long firstTime;
+    long lastTime;
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getRecords() {
+      return records;
+    }
+
+    public long getFirstTime() {
+      return firstTime;
+    }
+
+    public long getLastTime() {
+      return lastTime;
+    }
+  }
+
+  private final DataInput input;
+  private final RandomAccessFile raf;
+  private List<Block> blocks;
+  private final CRC32 crc = new CRC32();
+  private final LogTimeFormat timeFormat = new LogTimeFormat();
+
+  // the current block
+  private byte[] block = new byte[BinaryLogWriter.BLOCK_SIZE + 1024];
+  private int length;
+  private int pos;
+  private int remaining;
+  // true if the current record is to be returned by the next call of next()
+  private boolean pending;
+
+  // the current record
+  private long time = Clock.NO_TIME;
+  private int kind;
+  private long canId;
+  private int dlc;
+  private final int[] payload = new int[8];
+  // the previous frame of each 11 bit id in the current block
+  private final long[] previousPayloads = new long[STANDARD_IDS];
+  private final int[] previousDlcs = new int[STANDARD_IDS];
+  private final char[] chars = new char[8 + 3 + 8 * 3];
+  private String data;
+
+  /**
+   * read a binary log from the given stream
+   *
+   * @param inputStream
+   *          - should be buffered
+   * @throws IOException
+   */
+  public BinaryLogReader(InputStream inputStream) throws IOException {
+    input = new DataInputStream(inputStream);
+    raf = null;
+    readHeader();
+  }
+
+  /**
+   * read a binary log from the given file with random access
+   *
+   * @param raf
+   * @throws IOException
+   */
+  public BinaryLogReader(RandomAccessFile raf) throws IOException {
+    input = raf;
+    this.raf = raf;
+    raf.seek(0);
+    readHeader();
+  }
+
+  /**
+   * check whether the given stream is a binary log - the stream is reset to
+   * its position
+   *
+   * @param in
+   *          - a stream that supports mark
+   * @return true if the stream starts with the magic number
+   * @throws IOException
+   */
+  public static boolean isBinaryLog(InputStream in) throws IOException {
+    in.mark(4);
+    int magic = 0;
+    for (int i = 0; i < 4; i++) {
+      int b = in.read();
+      if (b < 0) {
+        in.reset();
+        return false;
+      }
+      magic = magic << 8 | b;
+    }
+    in.reset();
+    return magic == MAGIC;
+  }
+
+  /**
+   * check whether the given file is a binary log
+   *
+   * @param file
+   * @return true if the file starts with the magic number
+   * @throws IOException
+   */
+  public static boolean isBinaryLog(File file) throws IOException {
+    if (file.length() < HEADER_SIZE)
+      return false;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return raf.readInt() == MAGIC;
+    }
+  }
+
+  private void readHeader() throws IOException {
+    if (input.readInt() != MAGIC)
+      throw new IOException("not a binary CAN log");
+    int version = input.readInt();
+    if (version != VERSION)
+      throw new IOException("unsupported binary CAN log version " + version);
+  }
+
+  /**
+   * get the blocks of a random access log - the block headers are read on
+   * first use
+   *
+   * @return the blocks
+   * @throws IOException
+   */
+  public List<Block> getBlocks() throws IOException {
+    if (blocks == null) {
+      if (raf == null)
+        throw new IllegalStateException("blocks need random access");
+      long current = raf.getFilePointer();
+      blocks = new ArrayList<Block>();
+      long offset = HEADER_SIZE;
+      long fileLength = raf.length();
+      long previousTime = Clock.NO_TIME;
+      while (offset + BLOCK_HEADER_SIZE <= fileLength) {
+        raf.seek(offset);
+        Block b = new Block();
+        b.offset = offset;
+        b.records = raf.readInt();
+        b.firstTime = raf.readLong();
+        b.lastTime = raf.readLong();
+        int blockLength = raf.readInt();
+        if (b.firstTime == Clock.NO_TIME) {
+          b.firstTime = previousTime;
+          b.lastTime = previousTime;
+        }
+        previousTime = b.lastTime;
+        blocks.add(b);
+        offset += BLOCK_HEADER_SIZE + blockLength + 4;
+      }
+      raf.seek(current);
+    }
+    return blocks;
+  }
+
+  /**
+   * read the next block
+   *
+   * @return false at the end of the log
+   * @throws IOException
+   */
+  private boolean readBlock() throws IOException {
+    int records;
+    try {
+      records = input.readInt();
+    } catch (EOFException e) {
+      return false;
+    }
+    long firstTime = input.readLong();
+    input.readLong();
+    int blockLength = input.readInt();
+    if (blockLength > block.length)
+      block = new byte[blockLength];
+    input.readFully(block, 0, blockLength);
+    int blockCrc = input.readInt();
+    crc.reset();
+    crc.update(block, 0, blockLength);
+    if ((int) crc.getValue() != blockCrc)
+      throw new IOException("CRC error in binary CAN log");
+    length = blockLength;
+    Arrays.fill(previousDlcs, 0);
+    pos = 0;
+    remaining = records;
+    time = firstTime;
+    return true;
+  }
+
+  /**
+   * move to the next record
+   *
+   * @return false at the end of the log
+   * @throws IOException
+   */
+  public boolean next() throws IOException {
+    if (pending) {
+      pending = false;
+      return true;
+    }
+    while (remaining == 0) {
+      if (!readBlock())
+        return false;
+    }
+    long zigZag = readVarLong();
+    long delta = (zigZag >>> 1) ^ -(zigZag & 1);
+    if (time != Clock.NO_TIME)
+      time += delta;
+    int h = block[pos++] & 0xFF;
+    data = null;
+    if (h < EXTENDED) {
+      kind = STANDARD;
+      dlc = h & 0x0F;
+      canId = (h >> 4) << 8 | (block[pos++] & 0xFF);
+    } else if ((h & 0xF8) == REPEAT) {
+      kind = STANDARD;
+      canId = (h & 0x07) << 8 | (block[pos++] & 0xFF);
+      int id = (int) canId;
+      if (previousDlcs[id] == 0)
+        throw new IOException(String.format("repeat of missing frame %03X", id));
+      dlc = previousDlcs[id] - 1;
+      long packed = previousPayloads[id];
+      for (int i = dlc - 1; i >= 0; i--) {
+        payload[i] = (int) packed & 0xFF;
+        packed >>>= 8;
+      }
+    } else if ((h & 0xF0) == EXTENDED) {
+      kind = EXTENDED;
+      dlc = h & 0x0F;
+      canId = readVarLong();
+    } else if (h == TEXT || h == RAW_LINE) {
+      kind = h;
+      int textLength = (int) readVarLong();
+      data = new String(block, pos, textLength, StandardCharsets.UTF_8);
+      pos += textLength;
+    } else {
+      throw new IOException(String.format("invalid record type %02X", h));
+    }
+    if ((kind == STANDARD || kind == EXTENDED) && (h & 0xF8) != REPEAT) {
+      if (dlc > payload.length)
+        throw new IOException("invalid DLC " + dlc);
+      long packed = 0;
+      for (int i = 0; i < dlc; i++) {
+        payload[i] = block[pos++] & 0xFF;
+        packed = packed << 8 | payload[i];
+      }
+      if (kind == STANDARD) {
+        previousDlcs[(int) canId] = dlc + 1;
+        previousPayloads[(int) canId] = packed;
+      }
+    }
+    if (pos > length)
+      throw new IOException("record exceeds block");
+    remaining--;
+    return true;
+  }
+
+  private long readVarLong() {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = block[pos++];
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  /**
+   * move to the first record at or after the given time - random access only
+   *
+   * @param millis
+   *          - the milliseconds since the epoch
+   * @throws IOException
+   */
+  public void seek(long millis) throws IOException {
+    List<Block> blockList = getBlocks();
+    // binary search for the first block that ends at or after the time
+    int low = 0;
+    int high = blockList.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (blockList.get(middle).lastTime < millis)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    if (low == blockList.size()) {
+      seekEnd();
+      return;
+    }
+    seekBlock(low);
+    while (next()) {
+      if (kind != RAW_LINE && time >= millis) {
+        pending = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * move to the start of the block with the given index - random access only
+   *
+   * @param index
+   * @throws IOException
+   */
+  public void seekBlock(int index) throws IOException {
+    raf.seek(getBlocks().get(index).offset);
+    remaining = 0;
+    pending = false;
+  }
+
+  /**
+   * move to the end of the log - random access only
+   *
+   * @throws IOException
+   */
+  public void seekEnd() throws IOException {
+    raf.seek(raf.length());
+    remaining = 0;
+    pending = false;
+  }
+
+  /**
+   * get the index of the block that contains the given file position
+   *
+   * @param position
+   * @return the block index or -1 if there are no blocks
+   * @throws IOException
+   */
+  public int getBlockIndex(long position) throws IOException {
+    List<Block> blockList = getBlocks();
+    int index = blockList.size() - 1;
+    while (index > 0 && blockList.get(index).offset > position)
+      index--;
+    return index;
+  }
+
+  /**
+   * get the time of the current record
+   *
+   * @return the milliseconds since the epoch
+   */
+  public long getTime() {
+    return time;
+  }
+
+  public int getKind() {
+    return kind;
+  }
+
+  public boolean isFrame() {
+    return kind == STANDARD || kind == EXTENDED;
+  }
+
+  public long getCanId() {
+    return canId;
+  }
+
+  public int getDLC() {
+    return dlc;
+  }
+
+  /**
+   * get the payload byte at the given index of the current frame
+   *
+   * @param index
+   * @return the byte
+   */
+  public int getByte(int index) {
+    return payload[index];
+  }
+
+  /**
+   * get the data of the current record as the ELM327 shows it e.g. "373 8 C4
+   * C3 7E FD 0C AC 00 06"
+   *
+   * @return the data
+   */
+  public String getData() {
+    if (data == null) {
+      int n = 0;
+      int idLength = kind == STANDARD ? 3 : 8;
+      for (int i = idLength - 1; i >= 0; i--)
+        chars[n++] = HEX[(int) (canId >> (4 * i)) & 0xF];
+      chars[n++] = ' ';
+      chars[n++] = (char) ('0' + dlc);
+      for (int i = 0; i < dlc; i++) {
+        chars[n++] = ' ';
+        chars[n++] = HEX[payload[i] >> 4];
+        chars[n++] = HEX[payload[i] & 0xF];
+      }
+      data = new String(chars, 0, n);
+    }
+    return data;
+  }
+
+  /**
+   * get the current record as a line of a text log
+   *
+   * @return the line
+   */
+  public String getLine() {
+    if (kind == RAW_LINE)
+      return getData();
+    StringBuilder sb = new StringBuilder(LogTimeFormat.LENGTH + 32);
+    timeFormat.append(sb, time);
+    return sb.append(' ').append(getData()).toString();
+  }
+
+  /**
+   * get the current record as a packet - like
+   * {@link LogReader#lineAsPacket(String)} for the line of the record
+   *
+   * @return the packet or null if the record is no packet
+   * @throws Exception
+   */
+  public Packet getPacket() throws Exception {
+    if (kind == RAW_LINE)
+      return LogReader.lineAsPacket(getData());
+    String canLine = getData() + "\n";
+    if (canLine.length() > 5)
+      return new PacketImpl(canLine, Clock.fromMillis(time));
+    return null;
+  }
+
+  /**
+   * close the log
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    ((Closeable) input).close();
+  }
+
+  /**
+   * get the next packet
+   *
+   * @return the packet or null at the end of the log
+   * @throws Exception
+   */
+  public Packet nextPacket() throws Exception {
+    while (next()) {
+      Packet p = getPacket();
+      if (p != null)
+        return p;
+    }
+    return null;
+  }
+}
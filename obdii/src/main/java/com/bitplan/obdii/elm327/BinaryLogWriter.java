@@ -0,0 +1,306 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import com.bitplan.elm327.Clock;
+
+/**
+ * writer for binary CAN log files - see {@link BinaryLogReader} for the
+ * format. Frames in the "373 8 C4 C3 7E FD 0C AC 00 06" form of the ELM327
+ * are stored as id, DLC and payload bytes, all other lines as text so that
+ * the text log can be restored exactly.
+ *
+ * @author wf
+ *
+ */
+public class BinaryLogWriter {
+  // the payload size at which a block is written
+  public static final int BLOCK_SIZE = 64 * 1024;
+
+  private final DataOutputStream out;
+  private final LogTimeFormat timeFormat = new LogTimeFormat();
+  private final CRC32 crc = new CRC32();
+  private final int[] payload = new int[8];
+  // the previous frame of each 11 bit id in the current block
+  private final long[] previousPayloads = new long[BinaryLogReader.STANDARD_IDS];
+  private final int[] previousDlcs = new int[previousPayloads.length];
+
+  // the current block
+  private byte[] block = new byte[BLOCK_SIZE + 1024];
+  private int length;
+  private int records;
+  // the time of the first and the last record with a time stamp
+  private long firstTime = Clock.NO_TIME;
+  private long lastTime = Clock.NO_TIME;
+
+  private long frames;
+  private long texts;
+  private long blocks;
+
+  /**
+   * create a binary log writer
+   *
+   * @param outputStream
+   * @throws IOException
+   */
+  public BinaryLogWriter(OutputStream outputStream) throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(outputStream));
+    out.writeInt(BinaryLogReader.MAGIC);
+    out.writeInt(BinaryLogReader.VERSION);
+  }
+
+  /**
+   * write the given line of a text log
+   *
+   * @param line
+   *          - a line of the form "2017-04-14 19:18:49.558 373 8 C4 C3 ..."
+   *          - lines without time stamp are kept as they are
+   * @throws IOException
+   */
+  public void writeLine(String line) throws IOException {
+    long time = timeFormat.parse(line);
+    if (time != Clock.NO_TIME && line.length() > LogTimeFormat.LENGTH
+        && line.charAt(LogTimeFormat.LENGTH) == ' ') {
+      write(time, line.substring(LogTimeFormat.LENGTH + 1));
+    } else {
+      // the line gets the time of the previous record
+      writeVarLong(0);
+      writeText(BinaryLogReader.RAW_LINE, line);
+      endRecord();
+    }
+  }
+
+  /**
+   * write the given data
+   *
+   * @param time
+   *          - the milliseconds since the epoch
+   * @param data
+   *          - the data without line end
+   * @throws IOException
+   */
+  public void write(long time, String data) throws IOException {
+    startRecord(time);
+    if (!writeFrame(data))
+      writeText(BinaryLogReader.TEXT, data);
+    endRecord();
+  }
+
+  /**
+   * start a record with the delta of the given time to the previous record
+   *
+   * @param time
+   */
+  private void startRecord(long time) {
+    if (firstTime == Clock.NO_TIME) {
+      firstTime = time;
+      lastTime = time;
+    }
+    // zig zag encoding - the time may go backwards
+    long delta = time - lastTime;
+    writeVarLong((delta << 1) ^ (delta >> 63));
+    lastTime = time;
+  }
+
+  /**
+   * end the current record and write the block if it is full
+   *
+   * @throws IOException
+   */
+  private void endRecord() throws IOException {
+    records++;
+    if (length >= BLOCK_SIZE)
+      writeBlock();
+  }
+
+  /**
+   * write the given data as a frame if it is in the form the ELM327 shows
+   * frames with headers and length e.g. "373 8 C4 C3 7E FD 0C AC 00 06"
+   *
+   * @param data
+   * @return false if the data is not a frame that can be restored exactly
+   */
+  private boolean writeFrame(String data) {
+    int len = data.length();
+    int idLength;
+    if (len > 3 && data.charAt(3) == ' ')
+      idLength = 3;
+    else if (len > 8 && data.charAt(8) == ' ')
+      idLength = 8;
+    else
+      return false;
+    long id = 0;
+    for (int i = 0; i < idLength; i++) {
+      int digit = hexDigit(data.charAt(i));
+      if (digit < 0)
+        return false;
+      id = (id << 4) | digit;
+    }
+    if (idLength == 3 ? id > BinaryLogReader.MAX_STANDARD_ID
+        : id > BinaryLogReader.MAX_EXTENDED_ID)
+      return false;
+    if (len < idLength + 2)
+      return false;
+    int dlc = data.charAt(idLength + 1) - '0';
+    if (dlc < 0 || dlc > payload.length || len != idLength + 2 + dlc * 3)
+      return false;
+    for (int i = 0; i < dlc; i++) {
+      int pos = idLength + 2 + i * 3;
+      int high = hexDigit(data.charAt(pos + 1));
+      int low = hexDigit(data.charAt(pos + 2));
+      if (data.charAt(pos) != ' ' || high < 0 || low < 0)
+        return false;
+      payload[i] = high << 4 | low;
+    }
+    if (idLength == 3) {
+      int canId = (int) id;
+      long packed = 0;
+      for (int i = 0; i < dlc; i++)
+        packed = packed << 8 | payload[i];
+      // previousDlcs holds the DLC + 1 so that 0 means no frame yet
+      if (previousDlcs[canId] == dlc + 1 && previousPayloads[canId] == packed) {
+        writeByte(BinaryLogReader.REPEAT | canId >> 8);
+        writeByte(canId);
+        frames++;
+        return true;
+      }
+      previousDlcs[canId] = dlc + 1;
+      previousPayloads[canId] = packed;
+      // the upper 3 bits of the id share the byte with the DLC
+      writeByte(canId >> 8 << 4 | dlc);
+      writeByte(canId);
+    } else {
+      writeByte(BinaryLogReader.EXTENDED | dlc);
+      writeVarLong(id);
+    }
+    for (int i = 0; i < dlc; i++)
+      writeByte(payload[i]);
+    frames++;
+    return true;
+  }
+
+  /**
+   * get the value of the given upper case hex digit
+   *
+   * @param c
+   * @return the value or -1 if c is not an upper case hex digit
+   */
+  private static int hexDigit(char c) {
+    if (c >= '0' && c <= '9')
+      return c - '0';
+    if (c >= 'A' && c <= 'F')
+      return c - 'A' + 10;
+    return -1;
+  }
+
+  private void writeText(int kind, String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    writeByte(kind);
+    writeVarLong(bytes.length);
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, block, length, bytes.length);
+    length += bytes.length;
+    texts++;
+  }
+
+  private void writeVarLong(long value) {
+    while ((value & ~0x7FL) != 0) {
+      writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    writeByte((int) value);
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    block[length++] = (byte) b;
+  }
+
+  private void ensureCapacity(int bytes) {
+    if (length + bytes > block.length)
+      block = Arrays.copyOf(block, Math.max(block.length * 2, length + bytes));
+  }
+
+  /**
+   * write the current block
+   *
+   * @throws IOException
+   */
+  private void writeBlock() throws IOException {
+    if (records == 0)
+      return;
+    crc.reset();
+    crc.update(block, 0, length);
+    out.writeInt(records);
+    out.writeLong(firstTime);
+    // a block of lines without time stamps has no time
+    out.writeLong(firstTime == Clock.NO_TIME ? Clock.NO_TIME : lastTime);
+    out.writeInt(length);
+    out.write(block, 0, length);
+    out.writeInt((int) crc.getValue());
+    blocks++;
+    records = 0;
+    length = 0;
+    firstTime = Clock.NO_TIME;
+    // each block can be decoded on its own
+    Arrays.fill(previousDlcs, 0);
+  }
+
+  /**
+   * write the pending records
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+    writeBlock();
+    out.flush();
+  }
+
+  /**
+   * write the pending records and close the stream
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    flush();
+    out.close();
+  }
+
+  public long getFrames() {
+    return frames;
+  }
+
+  public long getTexts() {
+    return texts;
+  }
+
+  public long getBlocks() {
+    return blocks;
+  }
+}
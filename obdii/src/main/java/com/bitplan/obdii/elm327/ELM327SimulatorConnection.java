@@ -53,6 +53,8 @@ public class ELM327SimulatorConnection extends ELM327
     super(vehicleGroup);
     this.getCon().setHandleResponses(true);
     this.getCon().setResponseHandler(this);
+    // the requests are only handled - nobody waits for them
+    this.getCon().setQueueResponses(false);
   }
 
   public void setHandleResponses(boolean handleResponses) {
@@ -0,0 +1,129 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * converts ELM327 raw log files between the text and the binary format - the
+ * input may be zipped and its format is detected by its content
+ *
+ * @author wf
+ *
+ */
+public class LogConverter {
+
+  /**
+   * convert the given text log to a binary log
+   *
+   * @param textLog
+   * @param binaryLog
+   * @return the number of lines converted
+   * @throws Exception
+   */
+  public static int toBinary(File textLog, File binaryLog) throws Exception {
+    LogReader logReader = new LogReader(textLog);
+    final BinaryLogWriter writer = new BinaryLogWriter(
+        new FileOutputStream(binaryLog));
+    final int[] lines = { 0 };
+    logReader.addLogListener((line, len, index, count) -> {
+      try {
+        writer.writeLine(line);
+        lines[0]++;
+        return true;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    try {
+      logReader.read();
+    } finally {
+      writer.close();
+    }
+    return lines[0];
+  }
+
+  /**
+   * convert the given binary log to a text log
+   *
+   * @param binaryLog
+   * @param textLog
+   * @return the number of lines converted
+   * @throws Exception
+   */
+  public static int toText(File binaryLog, File textLog) throws Exception {
+    LogReader logReader = new LogReader(binaryLog);
+    if (!logReader.isBinary())
+      throw new IOException(binaryLog.getName() + " is not a binary log");
+    final Writer writer = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(textLog)), 64 * 1024);
+    final String lineSeparator = System.lineSeparator();
+    final int[] lines = { 0 };
+    logReader.addLogListener((line, len, index, count) -> {
+      try {
+        writer.write(line);
+        writer.write(lineSeparator);
+        lines[0]++;
+        return true;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    try {
+      logReader.read();
+    } finally {
+      writer.close();
+    }
+    return lines[0];
+  }
+
+  /**
+   * convert the given log to the other format
+   *
+   * @param args
+   *          - the input and the output file
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("usage: LogConverter <input log> <output log>");
+      System.exit(1);
+    }
+    File input = new File(args[0]);
+    File output = new File(args[1]);
+    LogReader logReader = new LogReader(input);
+    boolean binary = logReader.isBinary();
+    logReader.close();
+    int lines;
+    if (binary)
+      lines = toText(input, output);
+    else
+      lines = toBinary(input, output);
+    System.out.println(String.format("%d lines: %s (%d bytes) -> %s (%d bytes)",
+        lines, input.getName(), input.length(), output.getName(),
+        output.length()));
+  }
+}
@@ -0,0 +1,294 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.bitplan.elm327.Clock;
+import com.bitplan.elm327.Packet;
+
+/**
+ * sparse time index of an ELM327 raw log file - there is an entry with the
+ * time and the offset of a packet line every few seconds so that a time can
+ * be found with a lookup and a short forward scan. The index is kept in a
+ * sidecar file next to the log that is only valid for the size and
+ * modification time of the log it was created for.
+ *
+ * @author wf
+ *
+ */
+public class LogIndex {
+  public static final int MAGIC = 0x43344958; // "C4IX"
+  public static final int VERSION = 1;
+  public static final String EXTENSION = ".idx";
+  public static final long DEFAULT_INTERVAL_MSECS = 5000;
+
+  private final long intervalMsecs;
+  private int size;
+  private long[] times = new long[64];
+  private long[] offsets = new long[64];
+  // the last packet of the log
+  private long endTime = Clock.NO_TIME;
+  private long endOffset = -1;
+
+  /**
+   * create an empty index
+   *
+   * @param intervalMsecs
+   *          - the time between two entries
+   */
+  public LogIndex(long intervalMsecs) {
+    this.intervalMsecs = intervalMsecs;
+  }
+
+  public long getIntervalMsecs() {
+    return intervalMsecs;
+  }
+
+  /**
+   * get the number of entries
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  public long getTime(int index) {
+    return times[index];
+  }
+
+  public long getOffset(int index) {
+    return offsets[index];
+  }
+
+  /**
+   * get the time of the first packet
+   *
+   * @return the time in milliseconds or {@link Clock#NO_TIME} if the index is
+   *         empty
+   */
+  public long getStartTime() {
+    return size == 0 ? Clock.NO_TIME : times[0];
+  }
+
+  /**
+   * get the time of the last packet
+   *
+   * @return the time in milliseconds or {@link Clock#NO_TIME} if the index is
+   *         empty
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+
+  public long getEndOffset() {
+    return endOffset;
+  }
+
+  /**
+   * check whether a packet with the given time needs an entry
+   *
+   * @param time
+   * @return true if the interval has passed since the last entry
+   */
+  public boolean isDue(long time) {
+    return size == 0 || time - times[size - 1] >= intervalMsecs;
+  }
+
+  /**
+   * add a packet - there is only an entry if it is due
+   *
+   * @param time
+   *          - the time of the packet in milliseconds
+   * @param offset
+   *          - the offset of the line of the packet
+   */
+  public void add(long time, long offset) {
+    if (isDue(time)) {
+      if (size == times.length) {
+        times = Arrays.copyOf(times, size * 2);
+        offsets = Arrays.copyOf(offsets, size * 2);
+      }
+      times[size] = time;
+      offsets[size] = offset;
+      size++;
+    }
+    endTime = time;
+    endOffset = offset;
+  }
+
+  /**
+   * get the offset to scan forward from for the given time
+   *
+   * @param time
+   *          - the time in milliseconds
+   * @return the offset of the last entry that is not after the time or 0
+   */
+  public long floorOffset(long time) {
+    int index = Arrays.binarySearch(times, 0, size, time);
+    if (index < 0)
+      index = -index - 2;
+    if (index < 0)
+      return 0;
+    return offsets[index];
+  }
+
+  /**
+   * get the sidecar file of the given log
+   *
+   * @param logFile
+   * @return the index file
+   */
+  public static File getIndexFile(File logFile) {
+    return new File(logFile.getPath() + EXTENSION);
+  }
+
+  /**
+   * save me next to the given log
+   *
+   * @param logFile
+   * @throws IOException
+   */
+  public void save(File logFile) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(getIndexFile(logFile))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(logFile.length());
+      out.writeLong(logFile.lastModified());
+      out.writeLong(intervalMsecs);
+      out.writeLong(endTime);
+      out.writeLong(endOffset);
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        out.writeLong(times[i]);
+        out.writeLong(offsets[i]);
+      }
+    }
+  }
+
+  /**
+   * load the index of the given log
+   *
+   * @param logFile
+   * @return the index or null if there is no index or it does not fit the
+   *         size and modification time of the log
+   */
+  public static LogIndex load(File logFile) {
+    File indexFile = getIndexFile(logFile);
+    if (!indexFile.isFile())
+      return null;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return null;
+      if (in.readLong() != logFile.length()
+          || in.readLong() != logFile.lastModified())
+        return null;
+      LogIndex index = new LogIndex(in.readLong());
+      index.endTime = in.readLong();
+      index.endOffset = in.readLong();
+      int size = in.readInt();
+      index.times = new long[Math.max(size, 1)];
+      index.offsets = new long[Math.max(size, 1)];
+      for (int i = 0; i < size; i++) {
+        index.times[i] = in.readLong();
+        index.offsets[i] = in.readLong();
+      }
+      index.size = size;
+      return index;
+    } catch (IOException e) {
+      // a damaged index is built again
+      return null;
+    }
+  }
+
+  /**
+   * build the index of a mapped log by scanning all its lines
+   *
+   * @param mapped
+   * @param intervalMsecs
+   * @return the index
+   * @throws Exception
+   */
+  public static LogIndex build(MappedLogFile mapped, long intervalMsecs)
+      throws Exception {
+    LogIndex index = new LogIndex(intervalMsecs);
+    LogTimeFormat timeFormat = new LogTimeFormat();
+    long pos = 0;
+    String line;
+    while ((line = mapped.readLine(pos)) != null) {
+      long time = Clock.NO_TIME;
+      Packet packet = null;
+      if (line.startsWith("20")) {
+        // a time stamp without data is no packet
+        if (line.length() > LogTimeFormat.LENGTH)
+          time = timeFormat.parse(line);
+      } else {
+        // e.g. capture files with another time format
+        packet = LogReader.lineAsPacket(line);
+        if (packet != null)
+          time = packet.getTime().getTime();
+      }
+      // only lines with a packet are entries - most lines are not due
+      if (time != Clock.NO_TIME && index.isDue(time)) {
+        if (packet == null)
+          packet = LogReader.lineAsPacket(line);
+        if (packet != null)
+          index.add(time, pos);
+      }
+      pos = mapped.nextLine(pos);
+    }
+    // the last packet
+    long end = mapped.length();
+    while (end > 0) {
+      pos = mapped.lineStart(end - 1);
+      Packet packet = LogReader.lineAsPacket(mapped.readLine(pos));
+      if (packet != null) {
+        if (packet.getTime().getTime() >= index.getStartTime())
+          index.add(packet.getTime().getTime(), pos);
+        break;
+      }
+      end = pos;
+    }
+    return index;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format("%d entries every %d msecs %d - %d", size,
+        intervalMsecs, getStartTime(), endTime);
+    return result;
+  }
+}
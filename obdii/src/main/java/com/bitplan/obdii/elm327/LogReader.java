@@ -20,9 +20,11 @@
  */
 package com.bitplan.obdii.elm327;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
@@ -48,6 +50,7 @@ public class LogReader {
   public static boolean debug = false;
   protected static Logger LOGGER = Logger.getLogger("com.bitplan.obdii");
   private BufferedReader logReader;
+  private BinaryLogReader binaryLogReader;
 
   int index = 0;
   public static SimpleDateFormat captureDateFormatter = new SimpleDateFormat(
@@ -106,7 +109,20 @@ public class LogReader {
     } else {
       inputStream = new FileInputStream(logFile);
     }
-    logReader = new BufferedReader(new InputStreamReader(inputStream));
+    inputStream = new BufferedInputStream(inputStream);
+    if (BinaryLogReader.isBinaryLog(inputStream))
+      binaryLogReader = new BinaryLogReader(inputStream);
+    else
+      logReader = new BufferedReader(new InputStreamReader(inputStream));
+  }
+
+  /**
+   * check whether I read a binary log
+   * 
+   * @return true if the log is a binary log
+   */
+  public boolean isBinary() {
+    return binaryLogReader != null;
   }
 
   /**
@@ -161,6 +177,10 @@ public class LogReader {
    * @throws Exception
    */
   public void read() throws Exception {
+    if (binaryLogReader != null) {
+      readBinary();
+      return;
+    }
     String line; // a line read
     int count = 0;
     boolean stop = false;
@@ -177,10 +197,53 @@ public class LogReader {
           stop = true;
       }
     }
-    logReader.close();
+    close();
+    index++;
+  }
+
+  /**
+   * read the binary log - the text lines for the listeners are only created
+   * if there are listeners
+   * 
+   * @throws Exception
+   */
+  private void readBinary() throws Exception {
+    int count = 0;
+    boolean stop = false;
+    while (!stop && binaryLogReader.next()) {
+      count++;
+      if (!responseHandlers.isEmpty()) {
+        Packet p = binaryLogReader.getPacket();
+        if (p != null) {
+          for (ResponseHandler responseHandler : this.responseHandlers) {
+            responseHandler.handleResponse(p);
+          }
+        }
+      }
+      if (!logListeners.isEmpty()) {
+        String line = binaryLogReader.getLine();
+        for (LogListener logListener : this.logListeners) {
+          if (!logListener.onUpdate(line, line.length(), index, count))
+            stop = true;
+        }
+      }
+    }
+    close();
+    index++;
+  }
+
+  /**
+   * close me
+   * 
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (logReader != null)
+      logReader.close();
+    if (binaryLogReader != null)
+      binaryLogReader.close();
     if (zipFile != null)
       zipFile.close();
-    index++;
   }
 
 }
@@ -0,0 +1,105 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.bitplan.elm327.Clock;
+
+/**
+ * the time stamp at the start of the lines of ELM327 raw log files e.g.
+ * "2017-04-14 19:18:49.409" - the date and time up to the seconds is only
+ * formatted or parsed once per second. Not thread safe - each thread needs
+ * its own instance.
+ *
+ * @author wf
+ *
+ */
+public class LogTimeFormat {
+  // the length of the time stamp
+  public static final int LENGTH = 23;
+  // the length of the time stamp up to the seconds
+  private static final int SECONDS_LENGTH = 19;
+
+  private final SimpleDateFormat secondFormatter = new SimpleDateFormat(
+      "yyyy-MM-dd HH:mm:ss");
+
+  // the second that was formatted last
+  private long formattedSecond = Long.MIN_VALUE;
+  private String formatted;
+  // the second that was parsed last
+  private String parsed;
+  private long parsedSecond;
+
+  /**
+   * append the time stamp for the given time
+   *
+   * @param sb
+   * @param millis
+   *          - the milliseconds since the epoch
+   * @return the StringBuilder
+   */
+  public StringBuilder append(StringBuilder sb, long millis) {
+    long second = Math.floorDiv(millis, 1000);
+    if (second != formattedSecond) {
+      formatted = secondFormatter.format(new Date(second * 1000));
+      formattedSecond = second;
+    }
+    int msecs = (int) (millis - second * 1000);
+    sb.append(formatted).append('.');
+    if (msecs < 100)
+      sb.append('0');
+    if (msecs < 10)
+      sb.append('0');
+    return sb.append(msecs);
+  }
+
+  /**
+   * parse the time stamp at the start of the given line
+   *
+   * @param line
+   * @return the milliseconds since the epoch or {@link Clock#NO_TIME} if the
+   *         line does not start with a time stamp
+   */
+  public long parse(String line) {
+    if (line.length() < LENGTH || line.charAt(SECONDS_LENGTH) != '.')
+      return Clock.NO_TIME;
+    int msecs = 0;
+    for (int i = SECONDS_LENGTH + 1; i < LENGTH; i++) {
+      char c = line.charAt(i);
+      if (c < '0' || c > '9')
+        return Clock.NO_TIME;
+      msecs = msecs * 10 + c - '0';
+    }
+    if (parsed == null || !line.regionMatches(0, parsed, 0, SECONDS_LENGTH)) {
+      String seconds = line.substring(0, SECONDS_LENGTH);
+      try {
+        parsedSecond = secondFormatter.parse(seconds).getTime();
+      } catch (ParseException e) {
+        return Clock.NO_TIME;
+      }
+      parsed = seconds;
+    }
+    return parsedSecond + msecs;
+  }
+}
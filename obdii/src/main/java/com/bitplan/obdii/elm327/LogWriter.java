@@ -0,0 +1,387 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bitplan.elm327.Clock;
+import com.bitplan.elm327.Packet;
+import com.bitplan.elm327.RingBuffer;
+
+/**
+ * writer for ELM327 raw log files - the thread that handles the responses
+ * only puts the packets into a lock free {@link RingBuffer}. The thread of
+ * the writer formats them and writes them in batches so that there is no
+ * write or flush per frame. Only a single thread may call
+ * {@link #write(Packet)}. A writer for a log file also keeps the
+ * {@link LogIndex} of the file and saves it when it is closed.
+ *
+ * @author wf
+ *
+ */
+public class LogWriter extends Thread {
+  protected static Logger LOGGER = Logger.getLogger("com.bitplan.obdii");
+  public static final int DEFAULT_CAPACITY = 8192;
+  public static final long DEFAULT_FLUSH_MSECS = 1000;
+  public static final int DEFAULT_FLUSH_BYTES = 64 * 1024;
+  // how often a blocked producer checks that the writer is still alive
+  public static final long PUT_WAIT_MSECS = 100;
+
+  /**
+   * what to do with a frame if the writer falls behind
+   */
+  public enum Policy {
+    /**
+     * wait for the writer - no frame is lost
+     */
+    block,
+    /**
+     * drop the oldest frames - the loss is bounded by the capacity
+     */
+    dropOldest
+  }
+
+  private final Writer writer;
+  // the log file and its index - null if writing to some other writer
+  private File logFile;
+  private LogIndex index;
+  private final RingBuffer<Packet> queue;
+  private volatile boolean running = false;
+  // may be changed while the writer is running
+  private volatile Policy policy = Policy.block;
+  private volatile long flushMsecs = DEFAULT_FLUSH_MSECS;
+  private volatile int flushBytes = DEFAULT_FLUSH_BYTES;
+
+  // written by the writer thread only
+  private final StringBuilder batch = new StringBuilder(
+      DEFAULT_FLUSH_BYTES + 256);
+  private final LogTimeFormat timeFormat = new LogTimeFormat();
+  private final String lineSeparator = System.lineSeparator();
+
+  // metrics - written by the writer thread only
+  private volatile long frames;
+  private volatile long bytes;
+  private volatile long batches;
+  private volatile long writeNanos;
+  private volatile long maxWriteNanos;
+  private volatile long errors;
+  // frames that were given up because the writer thread died
+  private final AtomicLong lost = new AtomicLong();
+
+  /**
+   * create a writer for the given log file - the file is written as
+   * ISO-8859-1 like it is read by {@link MappedLogFile} so that every
+   * character is one byte and the offsets of the index are byte offsets
+   *
+   * @param logFile
+   * @throws FileNotFoundException
+   */
+  public LogWriter(File logFile) throws FileNotFoundException {
+    this(new OutputStreamWriter(new FileOutputStream(logFile),
+        StandardCharsets.ISO_8859_1), DEFAULT_CAPACITY);
+    this.logFile = logFile;
+    index = new LogIndex(LogIndex.DEFAULT_INTERVAL_MSECS);
+  }
+
+  /**
+   * create a writer
+   *
+   * @param writer
+   *          - the writer to write the lines to
+   * @param capacity
+   *          - the number of frames that may be pending
+   */
+  public LogWriter(Writer writer, int capacity) {
+    super("log writer");
+    setDaemon(true);
+    this.writer = writer;
+    queue = new RingBuffer<Packet>(capacity);
+  }
+
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public void setPolicy(Policy policy) {
+    this.policy = policy;
+  }
+
+  public long getFlushMsecs() {
+    return flushMsecs;
+  }
+
+  /**
+   * set the longest time a frame may stay unwritten
+   *
+   * @param flushMsecs
+   *          - 0 to write every frame when it arrives
+   */
+  public void setFlushMsecs(long flushMsecs) {
+    this.flushMsecs = flushMsecs;
+  }
+
+  public int getFlushBytes() {
+    return flushBytes;
+  }
+
+  /**
+   * set the size of the batch that is written without waiting for the flush
+   * interval
+   *
+   * @param flushBytes
+   */
+  public void setFlushBytes(int flushBytes) {
+    this.flushBytes = flushBytes;
+  }
+
+  @Override
+  public synchronized void start() {
+    running = true;
+    super.start();
+  }
+
+  /**
+   * hand the given packet to the writer - only a single thread may call this
+   *
+   * @param packet
+   * @return false if the writer is not running
+   */
+  public boolean write(Packet packet) {
+    if (!running)
+      return false;
+    if (policy == Policy.block) {
+      // wait for the writer as long as it is alive
+      while (!queue.put(packet, PUT_WAIT_MSECS, TimeUnit.MILLISECONDS)) {
+        if (!running || !isAlive()) {
+          lost.incrementAndGet();
+          return false;
+        }
+      }
+    } else {
+      queue.offerDropOldest(packet);
+    }
+    return true;
+  }
+
+  @Override
+  public void run() {
+    try {
+      writeFrames();
+    } catch (Throwable th) {
+      // stop taking frames so that the producer does not wait for us
+      running = false;
+      errors++;
+      LOGGER.log(Level.SEVERE, "the log writer failed", th);
+      // the batch may end with a partial line
+      batch.setLength(0);
+      while (queue.poll() != null)
+        lost.incrementAndGet();
+    }
+    closeLog();
+  }
+
+  /**
+   * write the frames until the writer is closed and all frames are written
+   */
+  private void writeFrames() {
+    long lastFlush = System.nanoTime();
+    while (running || !queue.isEmpty()) {
+      // the producer wakes us up - the flush interval limits the wait
+      Packet packet = queue.poll(flushMsecs > 0 ? flushMsecs : 100,
+          TimeUnit.MILLISECONDS);
+      if (packet != null)
+        append(packet);
+      if (batch.length() == 0)
+        continue;
+      long now = System.nanoTime();
+      if (batch.length() >= flushBytes
+          || now - lastFlush >= flushMsecs * Clock.NANOS_PER_MILLI) {
+        flushBatch();
+        lastFlush = now;
+      }
+    }
+  }
+
+  /**
+   * close the log and save the index
+   */
+  private void closeLog() {
+    flushBatch();
+    try {
+      writer.close();
+    } catch (IOException e) {
+      errors++;
+      LOGGER.log(Level.WARNING, "closing the log failed", e);
+    }
+    // after a failed write the offsets would be wrong
+    if (logFile != null && errors == 0) {
+      try {
+        index.save(logFile);
+      } catch (IOException e) {
+        // the index is built when the log is opened
+        LOGGER.log(Level.WARNING, "saving the log index failed", e);
+      }
+    }
+  }
+
+  /**
+   * append the log line of the given packet to the batch
+   *
+   * @param packet
+   */
+  private void append(Packet packet) {
+    long millis = Clock.toMillis(packet.getTimeStamp());
+    // every character is one byte of the ISO-8859-1 file
+    if (index != null)
+      index.add(millis, bytes + batch.length());
+    timeFormat.append(batch, millis);
+    batch.append(' ').append(packet.getData()).append(lineSeparator);
+    frames++;
+  }
+
+  /**
+   * write and flush the batch
+   */
+  private void flushBatch() {
+    if (batch.length() == 0)
+      return;
+    long start = System.nanoTime();
+    try {
+      writer.append(batch);
+      writer.flush();
+      bytes += batch.length();
+      batches++;
+    } catch (IOException e) {
+      errors++;
+      LOGGER.log(Level.WARNING, "writing the log failed", e);
+    }
+    long nanos = System.nanoTime() - start;
+    writeNanos += nanos;
+    if (nanos > maxWriteNanos)
+      maxWriteNanos = nanos;
+    batch.setLength(0);
+  }
+
+  /**
+   * write the pending frames and close the log
+   */
+  public void close() {
+    running = false;
+    LockSupport.unpark(this);
+    try {
+      join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * get the number of frames that have been written
+   *
+   * @return the number of frames
+   */
+  public long getFrames() {
+    return frames;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getBatches() {
+    return batches;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   * get the number of frames that were dropped because the writer fell behind
+   * or failed
+   *
+   * @return the number of dropped frames
+   */
+  public long getDrops() {
+    return queue.getDrops() + lost.get();
+  }
+
+  /**
+   * get the average time to write and flush a batch
+   *
+   * @return the average time in nano seconds
+   */
+  public long getAvgWriteNanos() {
+    if (batches == 0)
+      return 0;
+    return writeNanos / batches;
+  }
+
+  /**
+   * get the longest time to write and flush a batch
+   *
+   * @return the longest time in nano seconds
+   */
+  public long getMaxWriteNanos() {
+    return maxWriteNanos;
+  }
+
+  /**
+   * get the index of the log file
+   *
+   * @return the index or null if not writing to a log file
+   */
+  public LogIndex getIndex() {
+    return index;
+  }
+
+  public RingBuffer<Packet> getQueue() {
+    return queue;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format(
+        "log: %d frames %d bytes %d batches write avg %d usecs max %d usecs %d dropped %d errors queue %s",
+        frames, bytes, batches, getAvgWriteNanos() / 1000,
+        maxWriteNanos / 1000, getDrops(), errors, queue.asString());
+    return result;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.elm327;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * a log file mapped into memory for reading lines at arbitrary positions -
+ * the file is mapped in chunks so that files larger than 2 GB can be read.
+ * Lines are found by scanning for the line feed in the mapped memory without
+ * any system call.
+ *
+ * @author wf
+ *
+ */
+public class MappedLogFile {
+  // 1 GB chunks
+  public static final int DEFAULT_CHUNK_BITS = 30;
+
+  private final long length;
+  private final int chunkBits;
+  private final long chunkMask;
+  private final MappedByteBuffer[] chunks;
+  // the bytes of the current line
+  private byte[] lineBytes = new byte[256];
+
+  /**
+   * map the given file
+   *
+   * @param file
+   * @throws IOException
+   */
+  public MappedLogFile(File file) throws IOException {
+    this(file, DEFAULT_CHUNK_BITS);
+  }
+
+  /**
+   * map the given file in chunks of the given size
+   *
+   * @param file
+   * @param chunkBits
+   *          - the chunk size as a power of 2
+   * @throws IOException
+   */
+  public MappedLogFile(File file, int chunkBits) throws IOException {
+    this.chunkBits = chunkBits;
+    long chunkSize = 1L << chunkBits;
+    chunkMask = chunkSize - 1;
+    // the mapping stays valid when the channel is closed
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      length = channel.size();
+      int chunkCount = (int) ((length + chunkSize - 1) >>> chunkBits);
+      chunks = new MappedByteBuffer[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        long offset = (long) i << chunkBits;
+        chunks[i] = channel.map(MapMode.READ_ONLY, offset,
+            Math.min(chunkSize, length - offset));
+      }
+    }
+  }
+
+  public long length() {
+    return length;
+  }
+
+  /**
+   * get the byte at the given position
+   *
+   * @param pos
+   * @return the byte
+   */
+  public byte get(long pos) {
+    return chunks[(int) (pos >>> chunkBits)].get((int) (pos & chunkMask));
+  }
+
+  /**
+   * get the start of the line that contains the given position
+   *
+   * @param pos
+   * @return the position after the previous line feed or 0
+   */
+  public long lineStart(long pos) {
+    if (pos >= length)
+      pos = length - 1;
+    while (pos > 0 && get(pos - 1) != '\n')
+      pos--;
+    return Math.max(pos, 0);
+  }
+
+  /**
+   * get the start of the line after the line at the given position
+   *
+   * @param pos
+   * @return the position after the next line feed or the length of the file
+   */
+  public long nextLine(long pos) {
+    while (pos < length) {
+      if (get(pos++) == '\n')
+        return pos;
+    }
+    return length;
+  }
+
+  /**
+   * read the line at the given position - like
+   * {@link RandomAccessFile#readLine()} the bytes are taken as ISO-8859-1
+   * characters and the line end is removed
+   *
+   * @param pos
+   * @return the line or null at the end of the file
+   */
+  public String readLine(long pos) {
+    if (pos >= length)
+      return null;
+    int n = 0;
+    while (pos < length) {
+      byte b = get(pos++);
+      if (b == '\n')
+        break;
+      if (n == lineBytes.length) {
+        byte[] newBytes = new byte[n * 2];
+        System.arraycopy(lineBytes, 0, newBytes, 0, n);
+        lineBytes = newBytes;
+      }
+      lineBytes[n++] = b;
+    }
+    if (n > 0 && lineBytes[n - 1] == '\r')
+      n--;
+    return new String(lineBytes, 0, n, StandardCharsets.ISO_8859_1);
+  }
+}
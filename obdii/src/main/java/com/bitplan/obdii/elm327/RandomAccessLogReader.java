@@ -21,7 +21,6 @@
 package com.bitplan.obdii.elm327;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,6 +28,7 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -36,9 +36,12 @@ import java.util.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 
 import com.bitplan.elm327.Packet;
+import com.bitplan.obdii.elm327.BinaryLogReader.Block;
 
 /**
- * random access log file reader
+ * random access log file reader - text logs are mapped into memory and
+ * scanned for lines there starting at the entries of their {@link LogIndex},
+ * binary logs are read by block
  * 
  * @author wf
  *
@@ -54,8 +57,15 @@ public class RandomAccessLogReader {
   private Date endDate;
 
   private RandomAccessFile raf;
-  private PacketSeek low;
-  private PacketSeek high;
+  // text logs are read from the mapping
+  private int chunkBits = MappedLogFile.DEFAULT_CHUNK_BITS;
+  private MappedLogFile mapped;
+  private long position;
+  private long indexMsecs = LogIndex.DEFAULT_INTERVAL_MSECS;
+  private LogIndex index;
+  // binary logs are read by block
+  private boolean binary;
+  private BinaryLogReader binaryLog;
 
   /**
    * create me based on a (potentially zipped) file
@@ -75,16 +85,48 @@ public class RandomAccessLogReader {
             unzipped.mkdir();
           }
           elmLogFile = new File(unzipped, entry.getName());
-          InputStream in = zipFile.getInputStream(entry);
-          OutputStream out = new FileOutputStream(elmLogFile);
-          IOUtils.copy(in, out);
-          IOUtils.closeQuietly(in);
-          out.close();
+          // keep an unzipped log - its index is only valid if it is unchanged
+          if (!elmLogFile.isFile() || elmLogFile.length() != entry.getSize()) {
+            InputStream in = zipFile.getInputStream(entry);
+            OutputStream out = new FileOutputStream(elmLogFile);
+            IOUtils.copy(in, out);
+            IOUtils.closeQuietly(in);
+            out.close();
+          }
         }
       }
     } else {
       elmLogFile = logFile;
     }
+    binary = BinaryLogReader.isBinaryLog(elmLogFile);
+  }
+
+  /**
+   * get the log file I read - the unzipped one for zipped logs
+   * 
+   * @return the log file
+   */
+  public File getLogFile() {
+    return elmLogFile;
+  }
+
+  /**
+   * check whether I read a binary log
+   * 
+   * @return true if the log is a binary log
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /**
+   * set the size of the chunks text logs are mapped with
+   * 
+   * @param chunkBits
+   *          - the chunk size as a power of 2
+   */
+  public void setChunkBits(int chunkBits) {
+    this.chunkBits = chunkBits;
   }
 
   /**
@@ -95,21 +137,47 @@ public class RandomAccessLogReader {
    * @throws Exception
    */
   public Packet getPacket(long start) throws Exception {
-    open();
-    PacketSeek ps = getPacket(this.raf, start);
-    close();
-    if (ps != null)
-      return ps.packet;
-    return null;
+    boolean wasOpen = isOpen();
+    if (!wasOpen)
+      open();
+    Packet p = null;
+    if (binary) {
+      // the first packet of the block that contains the position
+      if (start > 0)
+        binaryLog.seekBlock(binaryLog.getBlockIndex(start));
+      p = binaryLog.nextPacket();
+    } else {
+      PacketSeek ps = getPacketSeek(start);
+      if (ps != null)
+        p = ps.packet;
+    }
+    if (!wasOpen)
+      close();
+    return p;
   }
 
   /**
    * open me
    * 
-   * @throws FileNotFoundException
+   * @throws IOException
    */
-  public void open() throws FileNotFoundException {
-    raf = new RandomAccessFile(elmLogFile, "r");
+  public void open() throws IOException {
+    if (binary) {
+      raf = new RandomAccessFile(elmLogFile, "r");
+      binaryLog = new BinaryLogReader(raf);
+    } else {
+      mapped = new MappedLogFile(elmLogFile, chunkBits);
+      position = 0;
+    }
+  }
+
+  /**
+   * check whether I am open
+   * 
+   * @return true if open has been called and close not yet
+   */
+  public boolean isOpen() {
+    return binaryLog != null || mapped != null;
   }
 
   /**
@@ -118,7 +186,12 @@ public class RandomAccessLogReader {
    * @throws IOException
    */
   public void close() throws IOException {
-    raf.close();
+    if (raf != null)
+      raf.close();
+    raf = null;
+    binaryLog = null;
+    // the mapping is released when it is garbage collected
+    mapped = null;
   }
 
   /**
@@ -133,34 +206,20 @@ public class RandomAccessLogReader {
   }
 
   /**
-   * get a line from the Random Access file
+   * get the packet of the line that contains the given position or of the
+   * first line after it that has a packet
    * 
-   * @param raf
-   *          - the random access file
    * @param start
-   * @return
+   * @return the seek result or null if there is no packet
    * @throws Exception
    */
-  public PacketSeek getPacket(RandomAccessFile raf, long start)
-      throws Exception {
-    // we want an even start if 2 bytes per char
-    // long pos = (start % 2 == 0) ? start : start - 1;
+  public PacketSeek getPacketSeek(long start) throws Exception {
     long pos = start;
-    if (pos == 0) {
-      return nextPacket(raf);
+    if (pos > 0) {
+      pos = mapped.lineStart(pos);
     }
-    byte b;
-    int count = 0;
-    // seek backward
-    do {
-      pos -= 1;
-      raf.seek(pos);
-      checkCountLimit("char", count++, true);
-    } while (pos > 0 && raf.readByte() != 0x0a);
-    // pos = (pos <= 0) ? 0 : pos + 2;
-    // raf.seek(pos);
-    return nextPacket(raf);
-  } // getPacket
+    return nextPacketSeek(pos);
+  } // getPacketSeek
 
   /**
    * check the count limit
@@ -189,64 +248,80 @@ public class RandomAccessLogReader {
    * @throws Exception
    */
   public Packet nextPacket() throws Exception {
-    PacketSeek ps = nextPacket(raf);
-    if (ps!=null && ps.packet != null)
+    if (binary)
+      return binaryLog.nextPacket();
+    PacketSeek ps = nextPacketSeek(position);
+    if (ps != null && ps.packet != null)
       return ps.packet;
     return null;
   }
 
   /**
-   * get the next Packet from the RandomAccessFile
+   * get the next Packet starting with the line at the given position - the
+   * position of the reader is set to the line after the packet
    * 
-   * @param raf
-   * @return - the Packet
+   * @param pos
+   *          - the start of a line
+   * @return - the seek result or null if there is no packet
    * @throws Exception
    */
-  public PacketSeek nextPacket(RandomAccessFile raf) throws Exception {
+  public PacketSeek nextPacketSeek(long pos) throws Exception {
     String line = null;
     int count = 0;
-    long pos = raf.getFilePointer();
-    while ((line = raf.readLine()) != null) {
+    while ((line = mapped.readLine(pos)) != null) {
+      long next = mapped.nextLine(pos);
       Packet p = LogReader.lineAsPacket(line);
       if (p != null) {
         PacketSeek packetSeek = new PacketSeek();
         packetSeek.packet = p;
         packetSeek.pos = pos;
+        position = next;
         return packetSeek;
       }
-      pos = raf.getFilePointer();
+      pos = next;
       if (checkCountLimit("line", count++, false))
         return null;
     } // while
+    position = pos;
     return null;
-  } // nextPacket
+  } // nextPacketSeek
 
   /**
-   * binary seek a packet
+   * set the time between two entries of the index of a text log that is
+   * built when there is no valid index
    * 
-   * @param raf
-   *          - the random access file
-   * @param high
-   * @param low
-   * @param from
-   *          - from where to seek
-   * @param l
-   *          - to where to seek
-   * @return - the seek result
+   * @param indexMsecs
+   */
+  public void setIndexMsecs(long indexMsecs) {
+    this.indexMsecs = indexMsecs;
+  }
+
+  /**
+   * get the time index of a text log - the index is loaded from the sidecar
+   * file or built and saved if there is no valid one
+   * 
+   * @return the index
    * @throws Exception
    */
-  public PacketSeek binarySeek(RandomAccessFile raf, PacketSeek low,
-      PacketSeek high, long from, long to) throws Exception {
-    if (to - from < 200)
-      return low;
-    if (high != null) {
-      return high;
+  public LogIndex getIndex() throws Exception {
+    if (index == null) {
+      index = LogIndex.load(elmLogFile);
+      if (index == null) {
+        boolean wasOpen = isOpen();
+        if (!wasOpen)
+          open();
+        index = LogIndex.build(mapped, indexMsecs);
+        if (!wasOpen)
+          close();
+        try {
+          index.save(elmLogFile);
+        } catch (IOException e) {
+          // e.g. a read only directory - the index is built again next time
+          LOGGER.log(Level.WARNING, "saving the log index failed", e);
+        }
+      }
     }
-    from = (from + to) / 2;
-    PacketSeek newlow = this.getPacket(raf, from);
-    if (newlow == null)
-      return low;
-    return binarySeek(raf, newlow, high, from, to);
+    return index;
   }
 
   /**
@@ -257,10 +332,12 @@ public class RandomAccessLogReader {
    */
   public Date getStartDate() throws Exception {
     if (startDate == null) {
-      RandomAccessFile raf = new RandomAccessFile(elmLogFile, "r");
-      Packet p = this.getPacket(0);
-      raf.close();
-      startDate = p.getTime();
+      if (binary) {
+        Packet p = this.getPacket(0);
+        startDate = p.getTime();
+      } else {
+        startDate = new Date(getIndex().getStartTime());
+      }
     }
     return startDate;
   }
@@ -272,13 +349,19 @@ public class RandomAccessLogReader {
    * @throws Exception
    */
   public Date getEndDate() throws Exception {
+    if (endDate == null && binary) {
+      // the last block knows the time of its last record
+      boolean wasOpen = isOpen();
+      if (!wasOpen)
+        open();
+      List<Block> blocks = binaryLog.getBlocks();
+      if (!blocks.isEmpty())
+        endDate = new Date(blocks.get(blocks.size() - 1).getLastTime());
+      if (!wasOpen)
+        close();
+    }
     if (endDate == null) {
-      RandomAccessFile raf = new RandomAccessFile(elmLogFile, "r");
-      low = this.getPacket(raf, 0);
-      high = this.getPacket(raf, raf.length());
-      high = this.binarySeek(raf, low, high, 0, raf.length());
-      endDate = high.packet.getTime();
-      raf.close();
+      endDate = new Date(getIndex().getEndTime());
     }
     return endDate;
   }
@@ -313,44 +396,18 @@ public class RandomAccessLogReader {
     if (timeStamp.after(endDate)) {
       timeStamp = endDate;
     }
-    dateSeek(timeStamp, low, high, 0);
-  }
-
-  public static final int MAX_SEEK_STEPS = 30;
-
-  /**
-   * seek the given timestamp in the range
-   * 
-   * @param timeStamp
-   * @param low
-   * @param from
-   * @param high
-   * @param to
-   * @throws Exception
-   */
-  private void dateSeek(Date timeStamp, PacketSeek low, PacketSeek high,
-      int steps) throws Exception {
-    double diffMSecs = (high.packet.getTime().getTime()
-        - low.packet.getTime().getTime()) / 1000;
-    if (diffMSecs < 1.0)
-      return;
-    if (steps > MAX_SEEK_STEPS) {
-      if (debug) {
-        String msg = String.format("%3d: %5.1f secs %s", steps, diffMSecs,
-            this.getIsoRange(low.packet.getTime(), high.packet.getTime()));
-        LOGGER.log(Level.INFO, msg);
-      }
+    if (binary) {
+      binaryLog.seek(timeStamp.getTime());
       return;
     }
-    if (high.packet.getTime().after(timeStamp)
-        && low.packet.getTime().before(timeStamp)) {
-      long middle = (low.pos + high.pos) / 2;
-      PacketSeek middleP = getPacket(raf, middle);
-      if (middleP.packet.getTime().after(timeStamp)) {
-        dateSeek(timeStamp, low, middleP, ++steps);
-      } else {
-        dateSeek(timeStamp, middleP, high, ++steps);
-      }
+    // look up the entry before the time and scan forward to the packet
+    long pos = getIndex().floorOffset(timeStamp.getTime());
+    PacketSeek ps;
+    while ((ps = nextPacketSeek(pos)) != null
+        && ps.packet.getTime().before(timeStamp)) {
+      pos = position;
     }
+    // the next packet is the first one that is not before the time
+    position = ps == null ? mapped.length() : ps.pos;
   }
-}
\ No newline at end of file
+}
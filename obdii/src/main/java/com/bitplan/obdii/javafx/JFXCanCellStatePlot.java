@@ -36,6 +36,7 @@ import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.chart.XYChart.Data;
 import javafx.scene.chart.XYChart.Series;
+import javafx.scene.layout.Region;
 
 /**
  * plot CellState Values
@@ -146,6 +147,11 @@ public class JFXCanCellStatePlot extends JFXCanValuePlot
 
   }
 
+  @Override
+  public Region getRegion() {
+    return getBarChart();
+  }
+
   @Override
   public void update() {
     if (series!=null)
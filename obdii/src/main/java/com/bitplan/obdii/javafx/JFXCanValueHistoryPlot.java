@@ -20,14 +20,15 @@
  */
 package com.bitplan.obdii.javafx;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
-import org.apache.commons.collections4.queue.CircularFifoQueue;
-
-import com.bitplan.can4eve.CANValue.ValueItem;
+import com.bitplan.can4eve.CANValueHistory;
+import com.bitplan.can4eve.HistoryDownsampler;
 import com.bitplan.can4eve.gui.javafx.CANProperty;
 
 import javafx.application.Platform;
@@ -37,6 +38,7 @@ import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.XYChart;
 import javafx.scene.chart.XYChart.Data;
 import javafx.scene.chart.XYChart.Series;
+import javafx.scene.layout.Region;
 
 /**
  * plot a history of CanValues
@@ -44,10 +46,55 @@ import javafx.scene.chart.XYChart.Series;
  *
  */
 public class JFXCanValueHistoryPlot extends JFXCanValuePlot implements CanValuePlot  {
+
+  /**
+   * position of a series within the history of its CANValue
+   */
+  static class SeriesCursor {
+    long start=-1; // epoch millis of minute 0
+    long nextSequence; // sequence number of the next value to add
+    int added; // number of values added by the last update
+    HistoryDownsampler downsampler;
+
+    /**
+     * feed the values added to the history since the last update to the
+     * downsampler
+     * @param history - the history to take the values from
+     * @param pointBudget - the number of points to show
+     * @return the downsampler
+     */
+    HistoryDownsampler update(CANValueHistory<?> history, int pointBudget) {
+      // the plot has been resized or the history has been cleared - start all over
+      if (downsampler==null || downsampler.getPointBudget()!=pointBudget || history.getTotal()<nextSequence) {
+        downsampler=new HistoryDownsampler(pointBudget, INITIAL_BUCKET_MSECS);
+        start=-1;
+        nextSequence=0;
+      }
+      CANValueHistory<?>.Cursor cursor = history.cursor(nextSequence);
+      added=0;
+      while (cursor.next()) {
+        long time=cursor.getTime();
+        if (start<0)
+          start=time;
+        downsampler.add(time, cursor.getDouble());
+        added++;
+      }
+      nextSequence=cursor.getSequence();
+      if (!history.isEmpty())
+        downsampler.trim(history.getTime(0));
+      return downsampler;
+    }
+  }
+
+  public static final int DEFAULT_POINT_BUDGET = 1600;
+  public static final int MIN_POINT_BUDGET = 100;
+  public static final int POINTS_PER_PIXEL = 2;
+  public static final long INITIAL_BUCKET_MSECS = 1000;
  
   @SuppressWarnings("rawtypes")
   private Map<String, CANProperty> canProperties;
   private Map<String,XYChart.Series<Number, Number>> seriesMap=new HashMap<String,XYChart.Series<Number, Number>>();
+  private Map<String,SeriesCursor> cursorMap=new HashMap<String,SeriesCursor>();
   LineChart<Number,Number> lineChart=null;
   
   public LineChart<Number, Number> getLineChart() {
@@ -94,38 +141,67 @@ public class JFXCanValueHistoryPlot extends JFXCanValuePlot implements CanValueP
   }
   
   /**
-   * update the given chart Series
+   * get the number of points to show per series - two per horizontal pixel of
+   * the chart
+   * 
+   * @return the point budget
+   */
+  public int getPointBudget() {
+    if (lineChart==null || lineChart.getWidth()<=0)
+      return DEFAULT_POINT_BUDGET;
+    return Math.max((int) lineChart.getWidth()*POINTS_PER_PIXEL, MIN_POINT_BUDGET);
+  }
+
+  /**
+   * update the given chart Series - the values added to the history since the
+   * last update are fed to the downsampler of the series and only the points
+   * of the buckets that changed are replaced
    * @param series - the series to update
    * @param canProperty - the canvalue to take the data from
    */
   @SuppressWarnings("rawtypes")
   public void updateSeries(XYChart.Series<Number, Number> series, CANProperty canProperty) {
-    CircularFifoQueue<?> history = canProperty.getCanValue().getHistory();
+    CANValueHistory<?> history = canProperty.getCanValue().getHistory();
+    SeriesCursor seriesCursor = cursorMap.get(canProperty.getName());
+    if (seriesCursor==null) {
+      seriesCursor=new SeriesCursor();
+      cursorMap.put(canProperty.getName(), seriesCursor);
+    }
+    HistoryDownsampler downsampler=seriesCursor.update(history, getPointBudget());
     if (debug)
       LOGGER.log(Level.INFO,
-        "plotting for " + history.size() + " history values of " + canProperty.getCanValue().canInfo.getTitle());
-    Date first=null;
+        "adding " + seriesCursor.added + " of " + history.size() + " history values of " + canProperty.getCanValue().canInfo.getTitle()+" as "+downsampler.getPointCount()+" points");
     ObservableList<Data<Number, Number>> dataList = series.getData();
-    // FIXME - full redraw?
-    dataList.clear();
-    for (Object historyValueObject : history) {
-      ValueItem<?>historyValue = (ValueItem<?>) historyValueObject;
-      
-      Date timeStamp=historyValue.getTimeStamp();
-      if (first==null)
-        first=timeStamp;
-      Double value;
-      if (historyValue.getValue() instanceof Integer) {
-        // http://stackoverflow.com/questions/31860761/maven-compile-error-with-using-java-generics
-        int intValue=(Integer) historyValue.getValue();
-        value = new Double(intValue*1.0);
-      } else {
-        value = (Double) historyValue.getValue();
-      }
-      long minute = getMinute(timeStamp,first);
-      Data<Number, Number> chartData = new XYChart.Data<Number,Number>(minute,value);
-      dataList.add(chartData);
+    if (downsampler.isRebuilt()) {
+      dataList.setAll(getPoints(downsampler,seriesCursor.start,0));
+    } else {
+      int dropped=Math.min(downsampler.getDroppedPoints(),dataList.size());
+      if (dropped>0)
+        dataList.remove(0, dropped);
+      int from=downsampler.getFirstChangedPoint();
+      if (from<dataList.size())
+        dataList.remove(from, dataList.size());
+      List<Data<Number, Number>> newData=getPoints(downsampler,seriesCursor.start,dataList.size());
+      if (!newData.isEmpty())
+        dataList.addAll(newData);
+    }
+    downsampler.sync();
+  }
+
+  /**
+   * get the chart points of the given downsampler
+   * @param downsampler
+   * @param start - epoch millis of minute 0
+   * @param from - the index of the first point
+   * @return the list of points
+   */
+  public List<Data<Number, Number>> getPoints(HistoryDownsampler downsampler,long start, int from) {
+    List<Data<Number, Number>> points=new ArrayList<Data<Number, Number>>();
+    for (int point=from;point<downsampler.getPointCount();point++) {
+      double minute=(downsampler.getTime(point)-start)/60000.0;
+      points.add(new XYChart.Data<Number,Number>(minute,downsampler.getValue(point)));
     }
+    return points;
   }
   
   /**
@@ -152,6 +228,11 @@ public class JFXCanValueHistoryPlot extends JFXCanValuePlot implements CanValueP
     return lineChart;
   }
 
+  @Override
+  public Region getRegion() {
+    return createLineChart();
+  }
+
   /**
    * update me
    */
@@ -26,6 +26,7 @@ import java.util.logging.Logger;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.scene.layout.Region;
 
 /**
  * base class for value plotting
@@ -70,4 +71,10 @@ public abstract class JFXCanValuePlot {
   }
 
   public abstract void update();
+
+  /**
+   * get the region that shows this plot (needs to be run on JavaFX thread!)
+   * @return the region
+   */
+  public abstract Region getRegion();
 }
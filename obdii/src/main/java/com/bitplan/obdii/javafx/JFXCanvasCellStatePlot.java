@@ -0,0 +1,178 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.javafx;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.bitplan.can4eve.CANValue.DoubleValue;
+import com.bitplan.can4eve.CANValueItem;
+import com.bitplan.can4eve.gui.javafx.CANProperty;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * plot CellState Values on a canvas - only the cells whose value changed since
+ * the last frame are drawn again
+ *
+ * @author wf
+ *
+ */
+public class JFXCanvasCellStatePlot extends JFXCanvasPlot {
+  public static final Color BAR_COLOR = Color.STEELBLUE;
+  public static final Color BAND_COLOR = Color.web("#fff3cd");
+
+  private CANProperty<DoubleValue, Double> cellValues;
+  private Double rangeExtra = 0.0;
+  private Double tickUnit;
+  // the values as currently drawn - NaN if not drawn yet
+  private double[] drawn = new double[0];
+  private double lower;
+  private double upper;
+  private int lastChangedCells;
+
+  /**
+   * create a canvas Plot for cell states
+   *
+   * @param title
+   * @param xTitle
+   * @param yTitle
+   * @param cellValues
+   * @param rangeExtra
+   * @param tickUnit
+   */
+  public JFXCanvasCellStatePlot(String title, String xTitle, String yTitle,
+      CANProperty<DoubleValue, Double> cellValues, Double rangeExtra,
+      Double tickUnit) {
+    super(title, xTitle, yTitle);
+    this.cellValues = cellValues;
+    this.rangeExtra = rangeExtra;
+    this.tickUnit = tickUnit;
+  }
+
+  /**
+   * get the number of cells drawn in the last frame
+   *
+   * @return the number of changed cells
+   */
+  public int getLastChangedCells() {
+    return lastChangedCells;
+  }
+
+  @Override
+  protected void render(GraphicsContext gc, boolean full) {
+    lastChangedCells = 0;
+    DoubleValue cellDoubleValues = cellValues.getCanValue();
+    Double min = cellDoubleValues.getMin();
+    Double max = cellDoubleValues.getMax();
+    if (min == null || max == null) {
+      if (full) {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawTitle(gc);
+      }
+      return;
+    }
+    List<CANValueItem<Double>> valueItems = cellDoubleValues.getValueItems();
+    int cells = valueItems.size();
+    double newLower = min - rangeExtra;
+    double newUpper = max + rangeExtra;
+    // a new range moves all bars
+    if (full || newLower != lower || newUpper != upper
+        || drawn.length != cells) {
+      full = true;
+      lower = newLower;
+      upper = newUpper;
+      if (drawn.length != cells)
+        drawn = new double[cells];
+      Arrays.fill(drawn, Double.NaN);
+      gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+      drawTitle(gc);
+      drawXTitle(gc);
+      drawYLabels(gc, lower, upper, tickUnit);
+      drawXLabels(gc, cells);
+    }
+    for (int cell = 0; cell < cells; cell++) {
+      CANValueItem<Double> valueItem = valueItems.get(cell);
+      double value = valueItem.isAvailable() ? valueItem.getValue()
+          : Double.NaN;
+      if (full || Double.compare(value, drawn[cell]) != 0) {
+        drawCell(gc, cell, cells, value, min, max);
+        drawn[cell] = value;
+        lastChangedCells++;
+      }
+    }
+  }
+
+  /**
+   * draw the column of the given cell
+   *
+   * @param gc
+   * @param cell
+   * @param cells
+   * @param value
+   * @param min
+   *          - the minimum of all cells so far
+   * @param max
+   *          - the maximum of all cells so far
+   */
+  private void drawCell(GraphicsContext gc, int cell, int cells, double value,
+      double min, double max) {
+    double width = getPlotWidth() / cells;
+    double x = LEFT + cell * width;
+    double bottom = TOP + getPlotHeight();
+    gc.clearRect(x, TOP, width, getPlotHeight());
+    // min/max band
+    double bandTop = toY(max, lower, upper);
+    gc.setFill(BAND_COLOR);
+    gc.fillRect(x, bandTop, width, toY(min, lower, upper) - bandTop);
+    drawGrid(gc, x, width, lower, upper, tickUnit);
+    if (!Double.isNaN(value)) {
+      double y = toY(value, lower, upper);
+      gc.setFill(BAR_COLOR);
+      gc.fillRect(x + 0.5, y, Math.max(width - 1, 1), bottom - y);
+    }
+  }
+
+  /**
+   * draw the cell numbers
+   *
+   * @param gc
+   * @param cells
+   */
+  private void drawXLabels(GraphicsContext gc, int cells) {
+    double width = getPlotWidth() / cells;
+    // leave room for the labels
+    int step = (int) Math.ceil(20 / width);
+    double y = TOP + getPlotHeight();
+    gc.setStroke(Color.GRAY);
+    gc.setLineWidth(1);
+    gc.strokeLine(LEFT, y, LEFT + getPlotWidth(), y);
+    gc.setFill(Color.DARKGRAY);
+    gc.setTextAlign(TextAlignment.CENTER);
+    gc.setTextBaseline(VPos.TOP);
+    for (int cell = 0; cell < cells; cell += step) {
+      gc.fillText("" + (cell + 1), LEFT + (cell + 0.5) * width, y + 3);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.javafx;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.bitplan.can4eve.HistoryDownsampler;
+import com.bitplan.can4eve.gui.javafx.CANProperty;
+import com.bitplan.obdii.javafx.JFXCanValueHistoryPlot.SeriesCursor;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * plot a history of CanValues on a canvas - the points are drawn straight from
+ * the downsampled primitive history buffers with the min/max of each bucket
+ * shown as a band
+ *
+ * @author wf
+ *
+ */
+public class JFXCanvasHistoryPlot extends JFXCanvasPlot {
+  public static final Color[] COLORS = { Color.STEELBLUE, Color.DARKORANGE,
+      Color.SEAGREEN, Color.CRIMSON };
+  public static final double BAND_ALPHA = 0.25;
+
+  @SuppressWarnings("rawtypes")
+  private Map<String, CANProperty> canProperties;
+  private Map<String, SeriesCursor> cursorMap = new HashMap<String, SeriesCursor>();
+  // coordinate buffers reused for every frame
+  private double[] xs = new double[0];
+  private double[] ys = new double[0];
+  private int lastSeries;
+
+  /**
+   * create a canvas Plot for a History of CANValues
+   *
+   * @param title
+   * @param xTitle
+   * @param yTitle
+   * @param properties
+   */
+  @SuppressWarnings("rawtypes")
+  public JFXCanvasHistoryPlot(String title, String xTitle, String yTitle,
+      Map<String, CANProperty> properties) {
+    super(title, xTitle, yTitle);
+    this.canProperties = properties;
+  }
+
+  /**
+   * get the number of series drawn in the last frame
+   *
+   * @return the number of series
+   */
+  public int getLastSeries() {
+    return lastSeries;
+  }
+
+  /**
+   * get the number of points to show per series - two per horizontal pixel
+   *
+   * @return the point budget
+   */
+  public int getPointBudget() {
+    return Math.max(
+        (int) getPlotWidth() * JFXCanValueHistoryPlot.POINTS_PER_PIXEL,
+        JFXCanValueHistoryPlot.MIN_POINT_BUDGET);
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  protected void render(GraphicsContext gc, boolean full) {
+    lastSeries = 0;
+    // feed the new history values to the downsamplers and find the range
+    int pointBudget = getPointBudget();
+    long start = Long.MAX_VALUE;
+    long end = Long.MIN_VALUE;
+    double lower = Double.MAX_VALUE;
+    double upper = -Double.MAX_VALUE;
+    for (CANProperty canProperty : canProperties.values()) {
+      SeriesCursor seriesCursor = cursorMap.get(canProperty.getName());
+      if (seriesCursor == null) {
+        seriesCursor = new SeriesCursor();
+        cursorMap.put(canProperty.getName(), seriesCursor);
+      }
+      HistoryDownsampler downsampler = seriesCursor
+          .update(canProperty.getCanValue().getHistory(), pointBudget);
+      int points = downsampler.getPointCount();
+      if (points > 0) {
+        start = Math.min(start, seriesCursor.start);
+        end = Math.max(end, downsampler.getTime(points - 1));
+        for (int point = 0; point < points; point++) {
+          double value = downsampler.getValue(point);
+          lower = Math.min(lower, value);
+          upper = Math.max(upper, value);
+        }
+      }
+    }
+    gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    drawTitle(gc);
+    drawXTitle(gc);
+    if (start == Long.MAX_VALUE)
+      return;
+    if (upper <= lower) {
+      upper += 1;
+      lower -= 1;
+    }
+    double tickUnit = getTickUnit(upper - lower, MAX_TICKS);
+    lower = Math.floor(lower / tickUnit) * tickUnit;
+    upper = Math.ceil(upper / tickUnit) * tickUnit;
+    drawGrid(gc, LEFT, getPlotWidth(), lower, upper, tickUnit);
+    drawYLabels(gc, lower, upper, tickUnit);
+    double minutes = Math.max((end - start) / 60000.0, 1.0);
+    drawXLabels(gc, minutes);
+    int seriesIndex = 0;
+    for (CANProperty canProperty : canProperties.values()) {
+      SeriesCursor seriesCursor = cursorMap.get(canProperty.getName());
+      Color color = COLORS[seriesIndex % COLORS.length];
+      drawSeries(gc, seriesCursor.downsampler, start, minutes, lower, upper,
+          color);
+      drawLegend(gc, seriesIndex, canProperty.getName(), color);
+      seriesCursor.downsampler.sync();
+      seriesIndex++;
+    }
+    lastSeries = seriesIndex;
+  }
+
+  /**
+   * make sure the coordinate buffers can take the given number of points
+   *
+   * @param size
+   */
+  private void ensureCapacity(int size) {
+    if (xs.length < size) {
+      xs = new double[size];
+      ys = new double[size];
+    }
+  }
+
+  /**
+   * get the canvas x coordinate for the given time
+   *
+   * @param time
+   * @param start
+   * @param minutes
+   * @return the x coordinate
+   */
+  private double toX(long time, long start, double minutes) {
+    return LEFT + getPlotWidth() * (time - start) / 60000.0 / minutes;
+  }
+
+  /**
+   * draw the min/max band and the line of a series
+   *
+   * @param gc
+   * @param downsampler
+   * @param start
+   * @param minutes
+   * @param lower
+   * @param upper
+   * @param color
+   */
+  private void drawSeries(GraphicsContext gc, HistoryDownsampler downsampler,
+      long start, double minutes, double lower, double upper, Color color) {
+    int points = downsampler.getPointCount();
+    if (points == 0)
+      return;
+    int buckets = downsampler.getBucketCount();
+    ensureCapacity(Math.max(points, buckets * 2));
+    // band - upper edge left to right then lower edge right to left
+    for (int b = 0; b < buckets; b++) {
+      int p = b * HistoryDownsampler.POINTS_PER_BUCKET;
+      double first = downsampler.getValue(p);
+      double second = downsampler.getValue(p + 1);
+      double x = toX(downsampler.getTime(p), start, minutes);
+      xs[b] = x;
+      ys[b] = toY(Math.max(first, second), lower, upper);
+      xs[2 * buckets - 1 - b] = x;
+      ys[2 * buckets - 1 - b] = toY(Math.min(first, second), lower, upper);
+    }
+    gc.setFill(color);
+    gc.setGlobalAlpha(BAND_ALPHA);
+    gc.fillPolygon(xs, ys, 2 * buckets);
+    gc.setGlobalAlpha(1.0);
+    // line through all points
+    for (int point = 0; point < points; point++) {
+      xs[point] = toX(downsampler.getTime(point), start, minutes);
+      ys[point] = toY(downsampler.getValue(point), lower, upper);
+    }
+    gc.setStroke(color);
+    gc.setLineWidth(1.5);
+    gc.strokePolyline(xs, ys, points);
+  }
+
+  /**
+   * draw the minute labels of the x axis
+   *
+   * @param gc
+   * @param minutes
+   */
+  private void drawXLabels(GraphicsContext gc, double minutes) {
+    double tickUnit = getTickUnit(minutes, MAX_TICKS);
+    double y = TOP + getPlotHeight();
+    gc.setStroke(Color.GRAY);
+    gc.setLineWidth(1);
+    gc.strokeLine(LEFT, y, LEFT + getPlotWidth(), y);
+    gc.setFill(Color.DARKGRAY);
+    gc.setTextAlign(TextAlignment.CENTER);
+    gc.setTextBaseline(VPos.TOP);
+    for (double tick = 0; tick <= minutes; tick += tickUnit) {
+      double x = LEFT + getPlotWidth() * tick / minutes;
+      gc.strokeLine(x, y, x, y + 4);
+      gc.fillText(formatTick(tick, tickUnit), x, y + 5);
+    }
+  }
+
+  /**
+   * draw the legend entry of a series
+   *
+   * @param gc
+   * @param index
+   * @param name
+   * @param color
+   */
+  private void drawLegend(GraphicsContext gc, int index, String name,
+      Color color) {
+    double x = LEFT + getPlotWidth() - 100 * (canProperties.size() - index);
+    gc.setFill(color);
+    gc.fillRect(x, TOP / 2 - 4, 8, 8);
+    gc.setTextAlign(TextAlignment.LEFT);
+    gc.setTextBaseline(VPos.CENTER);
+    gc.fillText(name, x + 12, TOP / 2);
+  }
+}
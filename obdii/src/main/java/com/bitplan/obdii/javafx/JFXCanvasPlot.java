@@ -0,0 +1,327 @@
+/**
+ *
+ * This file is part of the https://github.com/BITPlan/can4eve open source project
+ *
+ * Copyright 2017 BITPlan GmbH https://github.com/BITPlan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ *  You may obtain a copy of the License at
+ *
+ *  http:www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bitplan.obdii.javafx;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * base class for plots that are drawn on a single canvas instead of creating a
+ * node per data point
+ *
+ * @author wf
+ *
+ */
+public abstract class JFXCanvasPlot extends JFXCanValuePlot
+    implements CanValuePlot {
+  public static final double LEFT = 50;
+  public static final double RIGHT = 15;
+  public static final double TOP = 30;
+  public static final double BOTTOM = 35;
+  public static final int MAX_TICKS = 10;
+  public static final double PREF_WIDTH = 800;
+  public static final double PREF_HEIGHT = 480;
+
+  protected final Canvas canvas = new Canvas();
+  protected final Pane pane = new Pane(canvas);
+  // set if everything needs to be drawn e.g. after a resize
+  protected boolean fullRedraw = true;
+  private final AtomicBoolean drawPending = new AtomicBoolean(false);
+
+  // frame time statistics - only written by the JavaFX thread
+  volatile long frames;
+  volatile long totalFrameNanos;
+  volatile long lastFrameNanos;
+  volatile long maxFrameNanos;
+
+  /**
+   * construct me with the given title, xTitle and yTitle
+   *
+   * @param title
+   * @param xTitle
+   * @param yTitle
+   */
+  public JFXCanvasPlot(String title, String xTitle, String yTitle) {
+    super(title, xTitle, yTitle);
+    pane.setMinSize(0, 0);
+    pane.setPrefSize(PREF_WIDTH, PREF_HEIGHT);
+    canvas.widthProperty().bind(pane.widthProperty());
+    canvas.heightProperty().bind(pane.heightProperty());
+    canvas.widthProperty().addListener((obs, oldValue, newValue) -> resized());
+    canvas.heightProperty().addListener((obs, oldValue, newValue) -> resized());
+  }
+
+  /**
+   * the size of the canvas changed
+   */
+  private void resized() {
+    redraw();
+  }
+
+  /**
+   * draw everything again (needs to be run on JavaFX thread!)
+   */
+  public void redraw() {
+    fullRedraw = true;
+    draw();
+  }
+
+  @Override
+  public Region getRegion() {
+    return pane;
+  }
+
+  public Canvas getCanvas() {
+    return canvas;
+  }
+
+  /**
+   * update me - several updates before the next frame lead to a single draw
+   */
+  @Override
+  public void update() {
+    if (drawPending.compareAndSet(false, true)) {
+      Platform.runLater(() -> {
+        drawPending.set(false);
+        draw();
+      });
+    }
+  }
+
+  /**
+   * draw the plot (needs to be run on JavaFX thread!)
+   */
+  public void draw() {
+    if (getPlotWidth() <= 0 || getPlotHeight() <= 0)
+      return;
+    long start = System.nanoTime();
+    boolean full = fullRedraw;
+    fullRedraw = false;
+    render(canvas.getGraphicsContext2D(), full);
+    long nanos = System.nanoTime() - start;
+    frames++;
+    totalFrameNanos += nanos;
+    lastFrameNanos = nanos;
+    if (nanos > maxFrameNanos)
+      maxFrameNanos = nanos;
+  }
+
+  /**
+   * render the plot
+   *
+   * @param gc
+   *          - the graphics context to draw on
+   * @param full
+   *          - true if everything needs to be drawn
+   */
+  protected abstract void render(GraphicsContext gc, boolean full);
+
+  public double getPlotWidth() {
+    return canvas.getWidth() - LEFT - RIGHT;
+  }
+
+  public double getPlotHeight() {
+    return canvas.getHeight() - TOP - BOTTOM;
+  }
+
+  /**
+   * get the canvas y coordinate for the given value
+   *
+   * @param value
+   * @param lower
+   *          - the value at the bottom of the plot area
+   * @param upper
+   *          - the value at the top of the plot area
+   * @return the y coordinate
+   */
+  public double toY(double value, double lower, double upper) {
+    if (upper <= lower)
+      return TOP + getPlotHeight() / 2;
+    double y = TOP + getPlotHeight() * (upper - value) / (upper - lower);
+    return Math.max(TOP, Math.min(TOP + getPlotHeight(), y));
+  }
+
+  /**
+   * get a tick unit of 1, 2 or 5 times a power of ten that gives at most
+   * maxTicks ticks for the given range
+   *
+   * @param range
+   * @param maxTicks
+   * @return the tick unit
+   */
+  public static double getTickUnit(double range, int maxTicks) {
+    if (range <= 0 || Double.isNaN(range) || Double.isInfinite(range))
+      return 1.0;
+    double rough = range / maxTicks;
+    double magnitude = Math.pow(10, Math.floor(Math.log10(rough)));
+    double residual = rough / magnitude;
+    double unit;
+    if (residual <= 1)
+      unit = 1;
+    else if (residual <= 2)
+      unit = 2;
+    else if (residual <= 5)
+      unit = 5;
+    else
+      unit = 10;
+    return unit * magnitude;
+  }
+
+  /**
+   * format a tick label
+   *
+   * @param value
+   * @param tickUnit
+   * @return the label
+   */
+  public static String formatTick(double value, double tickUnit) {
+    if (tickUnit >= 1)
+      return String.format("%.0f", value);
+    int digits = (int) Math.ceil(-Math.log10(tickUnit));
+    return String.format("%." + digits + "f", value);
+  }
+
+  /**
+   * draw the title
+   *
+   * @param gc
+   */
+  protected void drawTitle(GraphicsContext gc) {
+    gc.setFill(Color.BLACK);
+    gc.setTextAlign(TextAlignment.CENTER);
+    gc.setTextBaseline(VPos.CENTER);
+    gc.fillText(title, canvas.getWidth() / 2, TOP / 2);
+  }
+
+  /**
+   * draw the labels of the y axis
+   *
+   * @param gc
+   * @param lower
+   * @param upper
+   * @param tickUnit
+   */
+  protected void drawYLabels(GraphicsContext gc, double lower, double upper,
+      double tickUnit) {
+    gc.clearRect(0, 0, LEFT - 1, canvas.getHeight());
+    gc.setFill(Color.DARKGRAY);
+    gc.setTextAlign(TextAlignment.RIGHT);
+    gc.setTextBaseline(VPos.CENTER);
+    for (double tick = Math.ceil(lower / tickUnit)
+        * tickUnit; tick <= upper; tick += tickUnit) {
+      gc.fillText(formatTick(tick, tickUnit), LEFT - 5,
+          toY(tick, lower, upper));
+    }
+    gc.save();
+    gc.setTextAlign(TextAlignment.LEFT);
+    gc.setTextBaseline(VPos.TOP);
+    gc.fillText(yTitle, 2, 2);
+    gc.restore();
+    gc.setStroke(Color.GRAY);
+    gc.strokeLine(LEFT, TOP, LEFT, TOP + getPlotHeight());
+  }
+
+  /**
+   * draw the horizontal grid lines for the ticks within the given x range
+   *
+   * @param gc
+   * @param x
+   * @param width
+   * @param lower
+   * @param upper
+   * @param tickUnit
+   */
+  protected void drawGrid(GraphicsContext gc, double x, double width,
+      double lower, double upper, double tickUnit) {
+    gc.setStroke(Color.LIGHTGRAY);
+    gc.setLineWidth(1);
+    for (double tick = Math.ceil(lower / tickUnit)
+        * tickUnit; tick <= upper; tick += tickUnit) {
+      double y = toY(tick, lower, upper);
+      gc.strokeLine(x, y, x + width, y);
+    }
+  }
+
+  /**
+   * draw the title of the x axis
+   *
+   * @param gc
+   */
+  protected void drawXTitle(GraphicsContext gc) {
+    gc.setFill(Color.DARKGRAY);
+    gc.setTextAlign(TextAlignment.CENTER);
+    gc.setTextBaseline(VPos.BOTTOM);
+    gc.fillText(xTitle, LEFT + getPlotWidth() / 2, canvas.getHeight() - 2);
+  }
+
+  public long getFrames() {
+    return frames;
+  }
+
+  public long getLastFrameNanos() {
+    return lastFrameNanos;
+  }
+
+  public long getMaxFrameNanos() {
+    return maxFrameNanos;
+  }
+
+  /**
+   * get the average time to draw a frame
+   *
+   * @return the average frame time in nano seconds
+   */
+  public long getAvgFrameNanos() {
+    if (frames == 0)
+      return 0;
+    return totalFrameNanos / frames;
+  }
+
+  /**
+   * reset the frame time statistics
+   */
+  public void reset() {
+    frames = 0;
+    totalFrameNanos = 0;
+    lastFrameNanos = 0;
+    maxFrameNanos = 0;
+  }
+
+  /**
+   * return me as a string
+   *
+   * @return me as a string
+   */
+  public String asString() {
+    String result = String.format(
+        "%s: %d frames, frame time avg %d usecs max %d usecs", title, frames,
+        getAvgFrameNanos() / 1000, maxFrameNanos / 1000);
+    return result;
+  }
+}
@@ -22,7 +22,9 @@ package com.bitplan.obdii.javafx;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
@@ -50,6 +52,7 @@ import com.bitplan.javafx.TaskLaunch;
 import com.bitplan.javafx.WaitableApp;
 import com.bitplan.obdii.CANValueDisplay;
 import com.bitplan.obdii.Can4EveI18n;
+import com.bitplan.obdii.FieldBatch;
 import com.bitplan.obdii.OBDApp;
 import com.bitplan.obdii.Raspberry;
 import com.bitplan.obdii.elm327.LogPlayer;
@@ -157,6 +160,37 @@ public class JavaFXDisplay extends GenericApp implements MonitorControl,
     }
   }
 
+  @Override
+  public void updateFields(FieldBatch batch) {
+    if (controls == null || batch.isEmpty())
+      return;
+    // look up the controls here and touch them in a single runnable
+    List<GenericControl> batchControls = new ArrayList<GenericControl>(
+        batch.size());
+    List<Integer> indices = new ArrayList<Integer>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      String title = batch.getTitle(i);
+      GenericControl control = controls.get(title);
+      if (control == null) {
+        if (!title.startsWith("Raw"))
+          LOGGER.log(Level.WARNING, "could not find field " + title);
+      } else {
+        batchControls.add(control);
+        indices.add(i);
+      }
+    }
+    if (batchControls.isEmpty())
+      return;
+    Platform.runLater(() -> {
+      for (int j = 0; j < batchControls.size(); j++) {
+        GenericControl control = batchControls.get(j);
+        int i = indices.get(j);
+        control.setValue(batch.getValue(i));
+        control.setToolTip(String.format("%6d", batch.getUpdateCount(i)));
+      }
+    });
+  }
+
   @Override
   public void updateCanValueField(CANValue<?> canValue) {
     String title = canValue.canInfo.getTitle();
@@ -41,9 +41,14 @@ public class ClimateValue extends CANValue<Climate> {
   public String asString() {
     String result = "?";
     if (getValueItem().isAvailable())
-      result = String.format("climate level %s\nvent level %1d",
-          getValueItem().getValue().climateLevel, getValueItem().getValue().ventLevel);
+      result = asString(getValueItem().getValue());
     return result;
   }
 
+  @Override
+  public String asString(Climate climate) {
+    return String.format("climate level %s\nvent level %1d",
+        climate.climateLevel, climate.ventLevel);
+  }
+
 }
\ No newline at end of file
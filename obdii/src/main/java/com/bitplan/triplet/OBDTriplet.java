@@ -32,7 +32,10 @@ import java.util.Map.Entry;
 import java.util.logging.Level;
 
 import com.bitplan.can4eve.CANData;
+import com.bitplan.can4eve.CANHandles;
 import com.bitplan.can4eve.CANInfo;
+import com.bitplan.can4eve.CANRawFrames;
+import com.bitplan.can4eve.CANSignal;
 import com.bitplan.can4eve.CANValue;
 import com.bitplan.can4eve.CANValue.CANRawValue;
 import com.bitplan.can4eve.CANValue.DoubleValue;
@@ -41,12 +44,18 @@ import com.bitplan.can4eve.Pid;
 import com.bitplan.can4eve.Vehicle;
 import com.bitplan.can4eve.VehicleGroup;
 import com.bitplan.can4eve.gui.javafx.CANProperty;
+import com.bitplan.can4eve.gui.javafx.UpdatePulse;
 import com.bitplan.csv.CSVUtil;
+import com.bitplan.elm327.Clock;
 import com.bitplan.error.ErrorHandler;
 import com.bitplan.obdii.CANValueDisplay;
+import com.bitplan.obdii.FieldBatch;
+import com.bitplan.obdii.FramePipeline;
 import com.bitplan.obdii.OBDHandler;
+import com.bitplan.obdii.PIDDecoder;
 import com.bitplan.obdii.PIDResponse;
 import com.bitplan.obdii.elm327.ELM327;
+import com.bitplan.obdii.elm327.LogWriter;
 import com.bitplan.triplet.ShifterPosition.ShiftPosition;
 
 import javafx.beans.property.SimpleLongProperty;
@@ -63,6 +72,43 @@ public class OBDTriplet extends OBDHandler {
 
   private static final double AC_POWER_FACTOR = 0.9;
 
+  // handles of the values set by the decoders
+  private static final int DC_POWER = CANHandles.getHandle("DCPower");
+  private static final int AC_POWER = CANHandles.getHandle("ACPower");
+  private static final int BATTERY_CAPACITY =
+      CANHandles.getHandle("BatteryCapacity");
+  private static final int BREAK_PRESSED = CANHandles.getHandle("BreakPressed");
+  private static final int VENT_DIRECTION =
+      CANHandles.getHandle("VentDirection");
+  private static final int CLIMATE = CANHandles.getHandle("Climate");
+  private static final int KEY = CANHandles.getHandle("Key");
+  private static final int TRIP_ODO = CANHandles.getHandle("TripOdo");
+  private static final int RPM = CANHandles.getHandle("RPM");
+  private static final int RPM_SPEED = CANHandles.getHandle("RPMSpeed");
+  private static final int ODOMETER = CANHandles.getHandle("Odometer");
+  private static final int SPEED = CANHandles.getHandle("Speed");
+  private static final int SHIFTER_POSITION =
+      CANHandles.getHandle("ShifterPosition");
+  private static final int SOC = CANHandles.getHandle("SOC");
+  private static final int VIN_VALUE = CANHandles.getHandle("VIN");
+  private static final int CELL_COUNT = CANHandles.getHandle("CellCount");
+
+  // ventilation direction texts for the 16 possible values e.g. "face(2)"
+  // TODO create type e.g. for internationalization
+  private static final String[] VENT_DIRECTIONS = new String[16];
+  static {
+    for (int ventDirVal = 0; ventDirVal < VENT_DIRECTIONS.length; ventDirVal++)
+      VENT_DIRECTIONS[ventDirVal] = getVentDir(ventDirVal) + "(" + ventDirVal
+          + ")";
+  }
+
+  // decoders indexed by CAN id
+  private PIDDecoder[] decoders;
+  // the latest raw payload of each CAN id
+  private CANRawFrames rawFrames;
+  // skip decoding frames that repeat the previous payload of their CAN id
+  private boolean suppressDuplicates = false;
+
   // non standard car parameters
   /*
    * ClimateValue climateValue; StringValue ventDirection; ShifterPositionValue
@@ -166,6 +212,7 @@ public class OBDTriplet extends OBDHandler {
         "TripOdo", "VentDirection", "VIN");
     // VIN2 is not used...
     // add all available PIDs to the available raw values
+    rawFrames = new CANRawFrames(VehicleGroup.MAX_CAN_ID);
     for (Pid pid : getVehicleGroup().getPids()) {
       // FIXME - do we keep the convention for raw values?
       CANInfo pidInfo = pid.getFirstInfo();
@@ -173,14 +220,112 @@ public class OBDTriplet extends OBDHandler {
         // LOGGER.log(Level.INFO,"rawValue "+pidInfo.getPid().getPid()+"
         // added");
       }
-      getCanRawValues().put(pid.getPid(), new CANRawValue(pidInfo));
+      getCanRawValues().put(pid.getPid(),
+          new CANRawValue(pidInfo, rawFrames, pid.getCanId()));
     }
     cpm.get("VIN").getCanValue().activate();
     // VIN.activate();
     // properties
     msecsRunningProperty = new SimpleLongProperty();
     vehicleStateProperty = new SimpleObjectProperty<Vehicle.State>();
+    initDecoders();
+  }
+
+  /**
+   * build the decoder table from the vehicle group - the decoders are indexed
+   * by CAN id so that dispatching a response is a single array access
+   */
+  protected void initDecoders() {
+    decoders = new PIDDecoder[VehicleGroup.MAX_CAN_ID];
+    for (Pid pid : getVehicleGroup().getPids()) {
+      int canId = pid.getCanId();
+      if (canId < 0 || canId >= VehicleGroup.MAX_CAN_ID) {
+        LOGGER.log(Level.WARNING, "no decoder for PID " + pid.getPid());
+        continue;
+      }
+      decoders[canId] = createDecoder(pid);
+    }
+  }
+
+  public boolean isSuppressDuplicates() {
+    return suppressDuplicates;
+  }
+
+  /**
+   * set whether frames with the same payload as the previous frame of their
+   * CAN id should be decoded - the values would not change but their
+   * timestamps and the history are only updated by changed frames
+   * 
+   * @param suppressDuplicates
+   */
+  public void setSuppressDuplicates(boolean suppressDuplicates) {
+    this.suppressDuplicates = suppressDuplicates;
+  }
 
+  /**
+   * get the raw payloads of all CAN ids
+   * 
+   * @return the raw frames
+   */
+  public CANRawFrames getRawFrames() {
+    return rawFrames;
+  }
+
+  /**
+   * get the decoder for the given CAN id
+   * 
+   * @param canId
+   * @return the decoder or null if the PID is only handled as a raw value
+   */
+  public PIDDecoder getDecoder(int canId) {
+    if (canId < 0 || canId >= decoders.length)
+      return null;
+    return decoders[canId];
+  }
+
+  /**
+   * create the decoder for the given PID - this is only needed for the values
+   * that can not be decoded by the signals defined in the vehicle group
+   * 
+   * @param pid
+   * @return the decoder or null if there is none for this PID
+   */
+  protected PIDDecoder createDecoder(Pid pid) {
+    switch (pid.getName()) {
+    case "AmpsVolts":
+      return new PowerDecoder(pid, "DCAmps", "DCVolts", DC_POWER, 1.0);
+    case "ACAmpsVolts":
+      return new PowerDecoder(pid, "ACAmps", "ACVolts", AC_POWER,
+          AC_POWER_FACTOR);
+    case "BatteryCapacity":
+      return this::decodeBatteryCapacity;
+    case "BreakPressed":
+      return this::decodeBreakPressed;
+    case "CellInfo1":
+    case "CellInfo2":
+    case "CellInfo3":
+    case "CellInfo4":
+      return new CellInfoDecoder(pid);
+    case "Climate":
+      return this::decodeClimate;
+    case "Key":
+      return this::decodeKey;
+    case "MotorTemp_RPM":
+      return this::decodeMotorTempRPM;
+    case "Odometer_Speed":
+      return this::decodeOdometerSpeed;
+    case "ShifterPosition":
+      return this::decodeShifterPosition;
+    case "SOC":
+      return this::decodeSOC;
+    case "VIN":
+      return this::decodeVIN;
+    case "VIN2":
+      return this::decodeVIN2;
+    default:
+      // handled by the raw values only
+      return null;
+    }
   }
 
   /**
@@ -194,7 +339,6 @@ public class OBDTriplet extends OBDHandler {
       LOGGER.log(Level.INFO, "Triplet handling PID Response " + pr.pidId + " ("
           + pr.pid.getName() + ")");
     Pid pid = pr.pid;
-    CANValueHandler cvh = super.getCanValueHandler();
     if (pid.getLength() != null && pr.d.length != pid.getLength()) {
       logError(String.format("invalid response length %2d!=%2d for %s (%s)",
               pr.d.length, pid.getLength(), pid.getName(), pid.getPid()));
@@ -203,53 +347,107 @@ public class OBDTriplet extends OBDHandler {
       // the d[] array
       return;
     }
-    Date timeStamp = pr.getResponse().getTime();
-    String pidName = pid.getName();
-    switch (pidName) {
-    case "Accelerator":
-      cvh.setValue(pidName, pr.d[2] / 250.0 * 100, timeStamp);
-      break;
-    case "AmpsVolts":
-      double amps = ((pr.d[2] * 256 + pr.d[3]) - 128 * 256) / 100.0;
-      cvh.setValue("DCAmps", amps, timeStamp);
-      double volts = (pr.d[4] * 256 + pr.d[5]) / 10.0;
-      cvh.setValue("DCVolts", volts, timeStamp);
-      cvh.setValue("DCPower", amps * volts / 1000.0, timeStamp);
-      break;
-    case "ACAmpsVolts":
-      double acvolts = pr.d[1] * 1.0;
-      cvh.setValue("ACVolts", acvolts, timeStamp);
-      double acamps = pr.d[6] / 10.0;
-      cvh.setValue("ACAmps", acamps, timeStamp);
-      cvh.setValue("ACPower", acamps * acvolts * AC_POWER_FACTOR / 1000.0,
-          timeStamp);
-      break;
-    case "BatteryCapacity":
-      int bindex = pr.d[0];
-      if (bindex == 0x24) {
-        double ah = (pr.d[3] * 256 + pr.d[4]) / 10.0;
-        LOGGER.log(Level.INFO,String.format("Battery capacity is: %4.1f Ah",ah));
-        cvh.setValue("BatteryCapacity", ah, timeStamp);
-      }
-      break;
-    case "BreakPedal":
-      // TODO 6F FF FF FF FF FF
-      cvh.setValue(pidName, ((pr.d[2] * 256 + pr.d[3]) - 24576.0) / 640 * 100.0,
-          timeStamp);
-      break;
-    case "BreakPressed":
-      cvh.setValue(pidName, pr.d[4] == 2, timeStamp);
-      break;
-    case "ChargerTemp":
-      cvh.setValue(pidName, pr.d[3] - 40, timeStamp);
-      break;
-    case "CellInfo1":
-    case "CellInfo2":
-    case "CellInfo3":
-    case "CellInfo4":
+    long timeStamp = pr.getResponse().getTimeStamp();
+    boolean changed = rawFrames.set(pr.pidHex, pr.d,
+        Clock.toMillis(timeStamp));
+    // multi frame PIDs are always decoded
+    if (!changed && suppressDuplicates && pid.getIsoTp() == null)
+      return;
+    // the declarative signals of the vehicle group first
+    pid.decodeSignals(pr.d, timeStamp, getCanValueHandler());
+    // then what can't be expressed as a signal
+    PIDDecoder decoder = getDecoder(pr.pidHex);
+    if (decoder != null)
+      decoder.decode(pr, timeStamp);
+  }
+
+  /**
+   * decoder for the power in kW of the DC and AC amps/volts PIDs - amps and
+   * volts are set by the signals of the PID, the signals are resolved when
+   * the decoder is created
+   */
+  class PowerDecoder implements PIDDecoder {
+    final CANSignal amps;
+    final CANSignal volts;
+    final int powerHandle;
+    final double factor;
+
+    /**
+     * create a decoder for the given PID
+     * 
+     * @param pid
+     * @param ampsName
+     *          - the name of the amps signal
+     * @param voltsName
+     *          - the name of the volts signal
+     * @param powerHandle
+     *          - the handle of the power value
+     * @param factor
+     *          - the power factor
+     */
+    PowerDecoder(Pid pid, String ampsName, String voltsName, int powerHandle,
+        double factor) {
+      amps = pid.getSignal(ampsName);
+      volts = pid.getSignal(voltsName);
+      if (amps == null || volts == null)
+        throw new RuntimeException(String.format(
+            "PID %s needs the signals %s and %s", pid.getName(), ampsName,
+            voltsName));
+      this.powerHandle = powerHandle;
+      this.factor = factor;
+    }
+
+    @Override
+    public void decode(PIDResponse pr, long timeStamp) {
+      // a signal is only a few shifts - the values set by the signal pass may
+      // be held back by a decimator
+      double power = amps.getValue(pr.d) * volts.getValue(pr.d) * factor
+          / 1000.0;
+      getCanValueHandler().setDouble(powerHandle, power, timeStamp);
+    }
+  }
+
+  private void decodeBatteryCapacity(PIDResponse pr, long timeStamp) {
+    int bindex = pr.d[0];
+    if (bindex == 0x24) {
+      double ah = (pr.d[3] * 256 + pr.d[4]) / 10.0;
+      LOGGER.log(Level.INFO, String.format("Battery capacity is: %4.1f Ah", ah));
+      getCanValueHandler().setDouble(BATTERY_CAPACITY, ah, timeStamp);
+    }
+  }
+
+  private void decodeBreakPressed(PIDResponse pr, long timeStamp) {
+    getCanValueHandler().setBoolean(BREAK_PRESSED, pr.d[4] == 2, timeStamp);
+  }
+
+  /**
+   * decoder for the four cell info PIDs 6E1-6E4 - the index of the PID and
+   * the cell values are resolved when the decoder is created
+   */
+  class CellInfoDecoder implements PIDDecoder {
+    // pid index 0-3
+    final int pidindex;
+    final CANData<Double> cellVoltage;
+    final int maxVoltageIndex;
+    final CANData<Double> cellTemperature;
+    final int maxTempIndex;
+
+    /**
+     * create a decoder for the given cell info PID
+     * 
+     * @param pid
+     */
+    CellInfoDecoder(Pid pid) {
       Pid cellInfo1 = getVehicleGroup().getPidByName("CellInfo1");
-      // pid index 0-3
-      int pidindex = pr.pidHex - PIDResponse.hex2decimal(cellInfo1.getPid());
+      pidindex = pid.getCanId() - cellInfo1.getCanId();
+      cellVoltage = cpm.getValue("CellVoltage");
+      maxVoltageIndex = cellVoltage.getCANInfo().getMaxIndex();
+      cellTemperature = cpm.getValue("CellTemperature");
+      maxTempIndex = cellTemperature.getCANInfo().getMaxIndex();
+    }
+
+    @Override
+    public void decode(PIDResponse pr, long timeStamp) {
       // cell monitoring unit index 1-12
       int cmu_id = pr.d[0];
       double temp1 = pr.d[1] - 50;
@@ -272,28 +470,24 @@ public class OBDTriplet extends OBDHandler {
        * log(pr.pid.getName(), pidindex, cmu_id, voltage_index, temp_index,
        * voltage1, voltage2, temp1, temp2, temp3);
        */
-      CANData<Double> cellVoltage = cpm.getValue("CellVoltage");
-      int maxVoltageIndex = cellVoltage.getCANInfo().getMaxIndex();
       setValue(cellVoltage, voltage_index, maxVoltageIndex, voltage1,
           timeStamp);
       setValue(cellVoltage, voltage_index + 1, maxVoltageIndex, voltage2,
           timeStamp);
 
-      CANData<Double> cellTemperature = cpm.getValue("CellTemperature");
-      int maxTempIndex = cellTemperature.getCANInfo().getMaxIndex();
-      switch (pr.pid.getName()) {
-      case "CellInfo1":
+      switch (pidindex) {
+      case 0: // CellInfo1
         setValue(cellTemperature, temp_index, maxTempIndex, temp2, timeStamp);
         setValue(cellTemperature, temp_index + 1, maxTempIndex, temp3,
             timeStamp);
         break;
-      case "CellInfo2":
+      case 1: // CellInfo2
         setValue(cellTemperature, temp_index, maxTempIndex, temp1, timeStamp);
         if (cmu_id != 6 && cmu_id != 12)
           setValue(cellTemperature, temp_index + 1, maxTempIndex, temp2,
               timeStamp);
         break;
-      case "CellInfo3":
+      case 2: // CellInfo3
         setValue(cellTemperature, temp_index, maxTempIndex, temp1, timeStamp);
         if (cmu_id != 6 && cmu_id != 12) {
           setValue(cellTemperature, temp_index + 1, maxTempIndex, temp2,
@@ -302,194 +496,176 @@ public class OBDTriplet extends OBDHandler {
       default:
         // ignore
       }
-      break;
+    }
+  }
 
-    case "Climate":
-      Climate climate = new Climate();
-      climate.setClimate(pr.d[0], pr.d[1]);
-      /**
-       * http://myimiev.com/forum/viewtopic.php?p=31226 PID 3A4 byte 0, bits
-       * 0-3: heating level (7 is off, under 7 is cooling, over 7 is heating)
-       * byte 0, bit 7: AC on (ventilation dial pressed) byte 0, bit 5: MAX
-       * heating (heating dial pressed) byte 0, bit 6: air recirculation
-       * (ventilation direction dial pressed)
-       * 
-       * byte 1, bits 0-3: ventilation level (if AUTO is chosen, the
-       * automatically calculated level is returned) byte 1, bits 4-7:
-       * ventilation direction (1-2 face, 3 legs+face, 4 -5legs, 6
-       * legs+windshield 7-9 windshield)
-       */
-      int ventDirVal = (pr.d[1] & 0xf0) >> 4;
-      String ventDir = "?";
-      switch (ventDirVal) {
-      case 1:
-      case 2:
-        ventDir = "face";
-        break;
-      case 3:
-      case 4:
-        ventDir = "legs+face";
-        break;
-      case 5:
-      case 6:
-        ventDir = "legs";
-        break;
-      case 7:
-      case 8:
-        ventDir = "legs+windshield";
-        break;
-      case 9:
-        ventDir = "windshield";
-        break;
-      }
-      // TODO create type e.g. for internationalization
-      String ventDirection = String.format("%s(%d)", ventDir, ventDirVal);
-      cvh.setValue("VentDirection", ventDirection, timeStamp);
-      cvh.setValue("Climate", climate, timeStamp);
-      break;
-    case "Key":
-      int keyVal = pr.d[0];
-      cvh.setValue(pidName, keyVal == 4, timeStamp);
-      break;
-    case "Lights":
-      int light0=  pr.d[0];    // e.g. 03 / 40 / 41 / 43
-      int light1 = pr.d[1]; 
-      int light2 = pr.d[2];    // e.g. 08 / 0C / 0F
-      cvh.setValue("BlinkerRight", (light1 & 0x01) != 0, timeStamp);
-      cvh.setValue("BlinkerLeft", (light1 & 0x02) != 0, timeStamp);
-      cvh.setValue("HighBeam", (light1 & 0x04) != 0, timeStamp);
-      // 0x08?
-      cvh.setValue("HeadLight", (light1 & 0x20) != 0, timeStamp);
-      cvh.setValue("ParkingLight", (light1 & 0x40) != 0, timeStamp);
-      // ilightNum 0x40?
-      cvh.setValue("DoorOpen", (light2 & 0x01) != 0, timeStamp);
-      // FIXME - this is not the ACPlug switch - what is it?
-      cvh.setValue("ACPlug", (light2 & 0x80) !=0,timeStamp);
-      break;
-    case "MotorTemp_RPM":
-      cvh.setValue("MotorTemp", pr.d[3] - 40, timeStamp);
-      // fetch teh rounds per minute
-      int rpmValue = (pr.d[6] * 256 + pr.d[7]) - 10000;
-      // if we have a previous value we can start integrating
-      CANData<Integer> rpm = cpm.getValue("RPM");
-      if (rpm.isAvailable()) {
-        CANData<Double> tripRoundsData = cpm.getValue("TripRounds");
-        if (tripRoundsData instanceof CANProperty) {
-          CANProperty<DoubleValue, Double> tripRounds;
-          tripRounds = (CANProperty<DoubleValue, Double>) tripRoundsData;
-          // calc numerical integral - how many rounds total on this trip?
-          tripRounds.getCanValue().integrate(rpm.getValue(), rpm.getTimeStamp(),
-              Math.abs(rpmValue), timeStamp, 1 / 60000.0);
-          // calc distance based on rounds
-          cvh.setValue("TripOdo",
-              tripRounds.getValue() * mmPerRound / 1000000.0, timeStamp);
-        }
-      }
-      cvh.setValue("RPM", rpmValue, timeStamp);
-      CANData<Integer> speed = cpm.getValue("Speed");
-      if (speed.isAvailable()) {
-        // m per round
-        // speed.getValueItem().getValue() * 1000.0 / 60
-        // / rpm.getValueItem().getValue()
-        double rpmSpeed = rpm.getValue() * this.mmPerRound * 60 / 1000000.0;
-        cvh.setValue("RPMSpeed", rpmSpeed, timeStamp);
-      }
+  /**
+   * get the ventilation direction for the given value of byte 1, bits 4-7
+   * 
+   * @param ventDirVal
+   * @return the ventilation direction
+   */
+  private static String getVentDir(int ventDirVal) {
+    String ventDir = "?";
+    switch (ventDirVal) {
+    case 1:
+    case 2:
+      ventDir = "face";
       break;
-    case "Odometer_Speed":
-      int km = pr.d[2] * 65536 + pr.d[3] * 256 + pr.d[4];
-      // TODO - systematic check needed e.g. by change rate of values and 3/4 -
-      // 4/4 voting
-      // more importantly the line is probably not reliable e.g. baud rate is
-      // too high and user
-      // should get feedback (together with BUFFER OVERRUNS CAN ERRORS and the
-      // like
-      if (km > 500000 || km < 0) {
-        logError("invalid odometer value " + km);
-      } else {
-        cvh.setValue("Odometer", km, timeStamp);
-        Integer speedNum = pr.d[1];
-        if (speedNum == 255)
-          speedNum = null;
-        cvh.setValue("Speed", speedNum, timeStamp);
-      }
+    case 3:
+    case 4:
+      ventDir = "legs+face";
       break;
-    case "Range": // 0x346
-      Integer rangeNum = pr.d[7];
-      if (rangeNum == 255)
-        rangeNum = null;
-      cvh.setValue("Range", rangeNum, timeStamp);
+    case 5:
+    case 6:
+      ventDir = "legs";
       break;
-    case "Steering_Wheel":
-      cvh.setValue("SteeringWheelPosition",
-          (pr.d[0] * 256 + pr.d[1] - 4096) / 2.0, timeStamp);
-      cvh.setValue("SteeringWheelMovement",
-          (pr.d[2] * 256 + pr.d[3] - 4096) / 2.0, timeStamp);
+    case 7:
+    case 8:
+      ventDir = "legs+windshield";
       break;
-    case "ShifterPosition":
-      ShifterPosition newShifterPosition = new ShifterPosition(pr.d[0]);
-      cvh.setValue("ShifterPosition", newShifterPosition, timeStamp);
-      if (newShifterPosition.shiftPosition == ShiftPosition.P) {
-        this.vehicleStateProperty.set(Vehicle.State.Parking);
-        // are we charging?
-        CANData<Double> lacvolts = cpm.getValue("ACVolts");
-        if (lacvolts.isAvailable() && lacvolts.getValue() > 50) {
-          // AC charging
-          this.vehicleStateProperty.set(Vehicle.State.Charging);
-        }
-        // DC charging
-        // FIXME is 1 amp the minimum?
-        CANData<Double> dcamps = cpm.getValue("DCAmps");
-        if (dcamps.isAvailable() && dcamps.getValue() > 1.0) {
-          this.vehicleStateProperty.set(Vehicle.State.Charging);
-        }
-      } else {
-        this.vehicleStateProperty.set(Vehicle.State.Moving);
-      }
+    case 9:
+      ventDir = "windshield";
       break;
+    }
+    return ventDir;
+  }
 
-    case "SOC":
-      // state of charging in %
-      int socvalue=(pr.d[1]);
-      // socvalue=0 is Not available
-      double soc = (socvalue - 10) / 2.0;
-      if (socvalue>=2) {
-        cvh.setValue("SOC", soc, timeStamp);
-      }
-      break;
+  private void decodeClimate(PIDResponse pr, long timeStamp) {
+    Climate climate = new Climate();
+    climate.setClimate(pr.d[0], pr.d[1]);
+    /**
+     * http://myimiev.com/forum/viewtopic.php?p=31226 PID 3A4 byte 0, bits 0-3:
+     * heating level (7 is off, under 7 is cooling, over 7 is heating) byte 0,
+     * bit 7: AC on (ventilation dial pressed) byte 0, bit 5: MAX heating
+     * (heating dial pressed) byte 0, bit 6: air recirculation (ventilation
+     * direction dial pressed)
+     * 
+     * byte 1, bits 0-3: ventilation level (if AUTO is chosen, the
+     * automatically calculated level is returned) byte 1, bits 4-7:
+     * ventilation direction (1-2 face, 3 legs+face, 4 -5legs, 6
+     * legs+windshield 7-9 windshield)
+     */
+    int ventDirVal = (pr.d[1] & 0xf0) >> 4;
+    CANValueHandler cvh = getCanValueHandler();
+    cvh.setValue(VENT_DIRECTION, VENT_DIRECTIONS[ventDirVal], timeStamp);
+    cvh.setValue(CLIMATE, climate, timeStamp);
+  }
 
-    case "VIN":
-      int indexVal = pr.d[0];
-      String partVal = pr.getString(1);
-      CANProperty<CANValue<VINValue>, VINValue> vinProperty = cpm.get("VIN");
-      Object vinValue = vinProperty.getCanValue();
-      VINValue VIN = (VINValue) vinValue;
-      VIN.set(indexVal, partVal, timeStamp);
-      if (VIN.getValueItem().isAvailable()) {
-        cvh.setValue("VIN", VIN, timeStamp);
-        cvh.setValue("CellCount", VIN.getCellCount(), timeStamp);
+  private void decodeKey(PIDResponse pr, long timeStamp) {
+    int keyVal = pr.d[0];
+    getCanValueHandler().setBoolean(KEY, keyVal == 4, timeStamp);
+  }
+
+  private void decodeMotorTempRPM(PIDResponse pr, long timeStamp) {
+    // MotorTemp is decoded by the signals of the PID
+    CANValueHandler cvh = getCanValueHandler();
+    // fetch teh rounds per minute
+    int rpmValue = (pr.d[6] * 256 + pr.d[7]) - 10000;
+    // if we have a previous value we can start integrating
+    CANData<Integer> rpm = cpm.getValue("RPM");
+    if (rpm.isAvailable()) {
+      CANData<Double> tripRoundsData = cpm.getValue("TripRounds");
+      if (tripRoundsData instanceof CANProperty) {
+        CANProperty<DoubleValue, Double> tripRounds;
+        tripRounds = (CANProperty<DoubleValue, Double>) tripRoundsData;
+        // calc numerical integral - how many rounds total on this trip?
+        tripRounds.getCanValue().integrate(rpm.getValue(), rpm.getTimeNanos(),
+            Math.abs(rpmValue), timeStamp, 1 / 60000.0);
+        // calc distance based on rounds
+        cvh.setDouble(TRIP_ODO, tripRounds.getValue() * mmPerRound / 1000000.0,
+            timeStamp);
       }
-      break;
+    }
+    cvh.setInt(RPM, rpmValue, timeStamp);
+    CANData<Integer> speed = cpm.getValue("Speed");
+    if (speed.isAvailable()) {
+      // m per round
+      // speed.getValueItem().getValue() * 1000.0 / 60
+      // / rpm.getValueItem().getValue()
+      double rpmSpeed = rpm.getValue() * this.mmPerRound * 60 / 1000000.0;
+      cvh.setDouble(RPM_SPEED, rpmSpeed, timeStamp);
+    }
+  }
 
-    case "VIN2":
-      int v2indexVal = pr.d[0];
-      String v2partVal = pr.getString();
-      CANProperty<CANValue<VINValue>, VINValue> vinProperty2 = cpm.get("VIN2");
-      if (vinProperty2 != null) {
-        Object vinValue2 = vinProperty2.getCanValue().getValue();
-        VINValue VIN2 = (VINValue) vinValue2;
-        // TODO check why this can be null
-        if (VIN2 != null)
-          VIN2.set(v2indexVal, v2partVal, timeStamp);
+  private void decodeOdometerSpeed(PIDResponse pr, long timeStamp) {
+    int km = pr.d[2] * 65536 + pr.d[3] * 256 + pr.d[4];
+    // TODO - systematic check needed e.g. by change rate of values and 3/4 -
+    // 4/4 voting
+    // more importantly the line is probably not reliable e.g. baud rate is
+    // too high and user
+    // should get feedback (together with BUFFER OVERRUNS CAN ERRORS and the
+    // like
+    if (km > 500000 || km < 0) {
+      logError("invalid odometer value " + km);
+    } else {
+      CANValueHandler cvh = getCanValueHandler();
+      cvh.setInt(ODOMETER, km, timeStamp);
+      Integer speedNum = pr.d[1];
+      if (speedNum == 255)
+        speedNum = null;
+      cvh.setValue(SPEED, speedNum, timeStamp);
+    }
+  }
+
+  private void decodeShifterPosition(PIDResponse pr, long timeStamp) {
+    ShifterPosition newShifterPosition = new ShifterPosition(pr.d[0]);
+    getCanValueHandler().setValue(SHIFTER_POSITION, newShifterPosition,
+        timeStamp);
+    if (newShifterPosition.shiftPosition == ShiftPosition.P) {
+      this.vehicleStateProperty.set(Vehicle.State.Parking);
+      // are we charging?
+      CANData<Double> lacvolts = cpm.getValue("ACVolts");
+      if (lacvolts.isAvailable() && lacvolts.getValue() > 50) {
+        // AC charging
+        this.vehicleStateProperty.set(Vehicle.State.Charging);
       }
-      break;
-    default:
-      // ignore - this case is handled by the raw values below
-      break;
+      // DC charging
+      // FIXME is 1 amp the minimum?
+      CANData<Double> dcamps = cpm.getValue("DCAmps");
+      if (dcamps.isAvailable() && dcamps.getValue() > 1.0) {
+        this.vehicleStateProperty.set(Vehicle.State.Charging);
+      }
+    } else {
+      this.vehicleStateProperty.set(Vehicle.State.Moving);
     }
+  }
 
-    // switch
-    CANRawValue canRawValue = this.getCanRawValues().get(pr.pid.getPid());
-    canRawValue.setRawValue(pr.getRawString(), timeStamp);
+  private void decodeSOC(PIDResponse pr, long timeStamp) {
+    // state of charging in %
+    int socvalue = (pr.d[1]);
+    // socvalue=0 is Not available
+    double soc = (socvalue - 10) / 2.0;
+    if (socvalue >= 2) {
+      getCanValueHandler().setDouble(SOC, soc, timeStamp);
+    }
+  }
+
+  private void decodeVIN(PIDResponse pr, long timeStamp) {
+    int indexVal = pr.d[0];
+    String partVal = pr.getString(1);
+    CANProperty<CANValue<VINValue>, VINValue> vinProperty = cpm.get("VIN");
+    Object vinValue = vinProperty.getCanValue();
+    VINValue VIN = (VINValue) vinValue;
+    VIN.set(indexVal, partVal, timeStamp);
+    if (VIN.getValueItem().isAvailable()) {
+      CANValueHandler cvh = getCanValueHandler();
+      cvh.setValue(VIN_VALUE, VIN, timeStamp);
+      cvh.setInt(CELL_COUNT, VIN.getCellCount(), timeStamp);
+    }
+  }
+
+  private void decodeVIN2(PIDResponse pr, long timeStamp) {
+    int v2indexVal = pr.d[0];
+    String v2partVal = pr.getString();
+    CANProperty<CANValue<VINValue>, VINValue> vinProperty2 = cpm.get("VIN2");
+    if (vinProperty2 != null) {
+      Object vinValue2 = vinProperty2.getCanValue().getValue();
+      VINValue VIN2 = (VINValue) vinValue2;
+      // TODO check why this can be null
+      if (VIN2 != null)
+        VIN2.set(v2indexVal, v2partVal, timeStamp);
+    }
   }
 
   /**
@@ -503,7 +679,7 @@ public class OBDTriplet extends OBDHandler {
    * @param timeStamp
    */
   private void setValue(CANData<Double> data, int index, int maxIndex,
-      double value, Date timeStamp) {
+      double value, long timeStamp) {
     if (index < maxIndex) {
       if (data.getCANInfo().getMaxValue() != null) {
         if (value > data.getCANInfo().getMaxValue())
@@ -544,25 +720,32 @@ public class OBDTriplet extends OBDHandler {
   int fpsUpdateCount = 0;
   Date latestUpdate;
   long latestTotalUpdates;
+  // the display the values have been shown on so far
+  CANValueDisplay shownDisplay;
 
   /**
-   * show the values
+   * show the values - only the values that changed since they were last shown
+   * are formatted and all fields are handed to the display as one batch
    * 
    * @param display
    */
   public void showValues(final CANValueDisplay display) {
     Date now = new Date();
+    FieldBatch batch = new FieldBatch();
     String nowStr = isoDateFormatter.format(now);
-    display.updateField("date", nowStr, ++dateUpdateCount);
+    batch.add("date", nowStr, ++dateUpdateCount);
     long totalUpdates = 0;
     if (displayStart != null) {
       long msecsRunning = now.getTime() - displayStart.getTime();
       if (msecsRunningProperty != null)
         this.msecsRunningProperty.setValue(msecsRunning);
     }
+    // a new display needs to see all values
+    boolean force = display != shownDisplay;
+    shownDisplay = display;
     for (CANValue<?> canValue : this.getCANValues()) {
       if (canValue.isDisplay()) {
-        display.updateCanValueField(canValue);
+        batch.add(canValue, force);
         totalUpdates += canValue.getUpdateCount();
       }
     }
@@ -574,24 +757,45 @@ public class OBDTriplet extends OBDHandler {
       if (msecs >= 1000) {
         long updates = totalUpdates - latestTotalUpdates;
         double fps = 1000.0 * updates / msecs;
-        display.updateField("#", totalUpdates, (int) totalUpdates);
-        display.updateField("fps", fps, ++fpsUpdateCount);
+        batch.add("#", totalUpdates, (int) totalUpdates);
+        batch.add("fps", fps, ++fpsUpdateCount);
         long allocatedMemory      = (Runtime.getRuntime().totalMemory()-Runtime.getRuntime().freeMemory());
         long presumableFreeMemory = Runtime.getRuntime().maxMemory() - allocatedMemory;
-        display.updateField("memory", presumableFreeMemory/1024.0/1024.0, fpsUpdateCount);
-        display.updateField("# of bufferOverruns", super.bufferOverruns,
+        batch.add("memory", presumableFreeMemory/1024.0/1024.0, fpsUpdateCount);
+        batch.add("# of bufferOverruns", super.bufferOverruns,
+            fpsUpdateCount);
+        batch.add("response queue",
+            getElm327().getCon().getResponseQueue().getHighWaterMark(),
+            fpsUpdateCount);
+        UpdatePulse pulse = UpdatePulse.getInstance();
+        batch.add("ui queue", pulse.getMaxQueueDepth(),
             fpsUpdateCount);
-        display.updateField("OBDII id", this.getElm327().getId(), 1);
-        display.updateField("OBDII description",
+        batch.add("ui pulse usecs",
+            (int) (pulse.getAvgPulseNanos() / 1000), fpsUpdateCount);
+        batch.add("duplicates", rawFrames.getDuplicateRatio() * 100,
+            fpsUpdateCount);
+        FramePipeline pipeline = getPipeline();
+        if (pipeline != null)
+          batch.add("pipeline", pipeline.getMaxOccupancy() * 100,
+              fpsUpdateCount);
+        LogWriter logWriter = getLogWriter();
+        if (logWriter != null) {
+          batch.add("log drops", (int) logWriter.getDrops(), fpsUpdateCount);
+          batch.add("log write usecs",
+              (int) (logWriter.getMaxWriteNanos() / 1000), fpsUpdateCount);
+        }
+        batch.add("OBDII id", this.getElm327().getId(), 1);
+        batch.add("OBDII description",
             this.getElm327().getDescription(), 1);
-        display.updateField("OBDII firmware", this.getElm327().getFirmwareId(),
+        batch.add("OBDII firmware", this.getElm327().getFirmwareId(),
             1);
-        display.updateField("OBDII hardware", this.getElm327().getHardwareId(),
+        batch.add("OBDII hardware", this.getElm327().getHardwareId(),
             1);
         latestTotalUpdates = totalUpdates;
         latestUpdate = now;
       }
     }
+    display.updateFields(batch);
   }
 
   /**
@@ -628,6 +832,14 @@ public class OBDTriplet extends OBDHandler {
         LOGGER.log(Level.INFO, "canValue:" + canValue.canInfo.getTitle());
       printWriter.write(canValue.asCSV());
     }
+    // the share of frames that repeated the previous payload per PID
+    for (Pid pid : getVehicleGroup().getPids()) {
+      int canId = pid.getCanId();
+      if (canId >= 0 && canId < rawFrames.size()
+          && rawFrames.isAvailable(canId))
+        printWriter.write(CSVUtil.csv("duplicates " + pid.getPid(),
+            String.format("%5.1f %%", rawFrames.getDuplicateRatio(canId) * 100)));
+    }
     printWriter.close();
   }
 
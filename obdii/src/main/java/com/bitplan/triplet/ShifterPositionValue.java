@@ -45,7 +45,12 @@ public class ShifterPositionValue extends CANValue<ShifterPosition> {
   public String asString() {
     String result = "?";
     if (getValueItem().isAvailable())
-      result = String.format("%s", getValueItem().getValue().shiftPosition.toString());
+      result = asString(getValueItem().getValue());
     return result;
   }
+
+  @Override
+  public String asString(ShifterPosition shifterPosition) {
+    return String.format("%s", shifterPosition.shiftPosition.toString());
+  }
 }
\ No newline at end of file
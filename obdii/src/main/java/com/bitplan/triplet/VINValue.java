@@ -20,7 +20,6 @@
  */
 package com.bitplan.triplet;
 
-import java.util.Date;
 import java.util.logging.Level;
 
 import com.bitplan.can4eve.CANInfo;
@@ -58,7 +57,7 @@ public class VINValue extends CANValue<String> implements AsJson {
    * @param partVal
    * @param timeStamp
    */
-  public void set(int index, String partVal, Date timeStamp) {
+  public void set(int index, String partVal, long timeStamp) {
     if (index >= 3) {
       LOGGER.log(Level.WARNING, "invalid VIN index " + index);
       return;
@@ -136,6 +135,14 @@ public class VINValue extends CANValue<String> implements AsJson {
     return result;
   }
 
+  /**
+   * the details are decoded from the value when it is set
+   */
+  @Override
+  public String asString(String value) {
+    return asString();
+  }
+
   public int getCellCount() {
     return cellCount;
   }
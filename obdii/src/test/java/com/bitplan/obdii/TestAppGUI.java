@@ -51,6 +51,7 @@ import com.bitplan.can4eve.Vehicle;
 import com.bitplan.can4eve.VehicleGroup;
 import com.bitplan.can4eve.gui.javafx.CANProperty;
 import com.bitplan.can4eve.gui.javafx.CANPropertyManager;
+import com.bitplan.can4eve.gui.javafx.UpdatePulse;
 import com.bitplan.error.ExceptionHandler;
 import com.bitplan.gui.App;
 import com.bitplan.gui.ExceptionHelp;
@@ -76,6 +77,8 @@ import com.bitplan.obdii.javafx.ClockPane;
 import com.bitplan.obdii.javafx.ClockPane.Watch;
 import com.bitplan.obdii.javafx.JFXCanCellStatePlot;
 import com.bitplan.obdii.javafx.JFXCanValueHistoryPlot;
+import com.bitplan.obdii.javafx.JFXCanvasCellStatePlot;
+import com.bitplan.obdii.javafx.JFXCanvasHistoryPlot;
 import com.bitplan.obdii.javafx.JavaFXDisplay;
 import com.bitplan.obdii.javafx.LCDPane;
 import com.bitplan.obdii.javafx.SimulatorPane;
@@ -635,6 +638,73 @@ public class TestAppGUI extends TestOBDII {
     sampleApp.close();
   }
 
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test
+  public void testCanvasPlots() throws Exception {
+    VehicleGroup vg = VehicleGroup.get("Triplet");
+    CANPropertyManager cpm = new CANPropertyManager(vg);
+    CANProperty<DoubleValue, Double> cellVoltage = cpm.get("CellVoltage");
+    Date timeStamp = new Date();
+    for (int i = 0; i < cellVoltage.getCANInfo().getMaxIndex(); i++)
+      cellVoltage.getCanValue().setValue(i, 3.9 + Math.random() * 0.1,
+          timeStamp);
+    final JFXCanvasCellStatePlot cellPlot = new JFXCanvasCellStatePlot(
+        "cellVoltage", "cell", "Voltage", cellVoltage, 0.01, 0.1);
+    // five hours of history for four series
+    Map<String, CANProperty> properties = cpm.getCANProperties("SOC", "Range",
+        "DCVolts", "Accelerator");
+    long t = timeStamp.getTime();
+    for (int second = 0; second < 5 * 3600; second++) {
+      Date historyTime = new Date(t + second * 1000);
+      for (CANProperty property : properties.values())
+        property.getCanValue().setValue(50 + Math.sin(second / 600.0) * 40,
+            historyTime);
+    }
+    final JFXCanvasHistoryPlot historyPlot = new JFXCanvasHistoryPlot(
+        "SOC/RR", "time", "%/km", properties);
+    VBox vbox = new VBox(cellPlot.getRegion(), historyPlot.getRegion());
+    SampleApp sampleApp = new SampleApp("Canvas", vbox);
+    sampleApp.show();
+    sampleApp.waitOpen();
+    // warm up - the first frame feeds the whole history
+    Platform.runLater(() -> {
+      cellPlot.draw();
+      historyPlot.draw();
+      cellPlot.reset();
+      historyPlot.reset();
+    });
+    int loops = 50;
+    for (int j = 0; j < loops; j++) {
+      // a few cells change per frame
+      for (int k = 0; k < 4; k++)
+        cellVoltage.getCanValue().setValue((int) (Math.random() * 88),
+            3.9 + Math.random() * 0.1, new Date());
+      cellPlot.update();
+      historyPlot.update();
+      Thread.sleep(SHOW_TIME / loops);
+    }
+    // the frame times are too noisy for an assertion in a GUI test
+    if (debug) {
+      System.out.println(cellPlot.asString());
+      System.out.println(historyPlot.asString());
+    }
+    assertTrue(cellPlot.getFrames() > 0);
+    assertTrue(historyPlot.getFrames() > 0);
+    // a full redraw shows every cell and every series
+    final int[] drawn = { -1, -1 };
+    Platform.runLater(() -> {
+      cellPlot.redraw();
+      historyPlot.redraw();
+      drawn[0] = cellPlot.getLastChangedCells();
+      drawn[1] = historyPlot.getLastSeries();
+    });
+    for (int wait = 0; wait < 200 && drawn[1] < 0; wait++)
+      Thread.sleep(10);
+    sampleApp.close();
+    assertEquals(cellVoltage.getCANInfo().getMaxIndex(), drawn[0]);
+    assertEquals(properties.size(), drawn[1]);
+  }
+
   @Test
   public void testTabIcons() throws Exception {
     JavaFXDisplay display = super.getDisplay();
@@ -762,6 +832,32 @@ public class TestAppGUI extends TestOBDII {
     assertEquals(2, keepBinding.get());
   }
 
+  @Test
+  public void testUpdatePulse() throws Exception {
+    CANInfo canInfo = new CANInfo();
+    canInfo.setName("PulseTest");
+    canInfo.setMaxIndex(1);
+    DoubleValue dv = new DoubleValue(canInfo);
+    SimpleDoubleProperty dp = new SimpleDoubleProperty();
+    CANProperty<DoubleValue, Double> cp = new CANProperty<DoubleValue, Double>(
+        dv, dp);
+    UpdatePulse pulse = UpdatePulse.getInstance();
+    pulse.reset();
+    int count = 1000;
+    for (int i = 1; i <= count; i++)
+      cp.setValue(i * 1.0, new Date());
+    // wait for the next pulse to show the latest value
+    for (int wait = 0; wait < 200 && dp.get() != count; wait++)
+      Thread.sleep(10);
+    assertEquals(count, dp.get(), 0.0001);
+    assertEquals(count, cp.getUpdateCountProperty().get());
+    assertEquals(count, pulse.getMarks());
+    // most intermediate values have been dropped
+    assertTrue(pulse.getCoalesced() > count / 2);
+    if (debug)
+      System.out.println(pulse.asString());
+  }
+
   @Test
   public void testWelcomeWizard() throws Exception {
     WelcomeWizard.testMode=true;
@@ -21,6 +21,7 @@
 package com.bitplan.obdii;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -53,6 +54,7 @@ import com.bitplan.elm327.Config.ConfigMode;
 import com.bitplan.json.JsonManagerImpl;
 import com.bitplan.elm327.Connection;
 import com.bitplan.elm327.Packet;
+import com.bitplan.elm327.PacketImpl;
 import com.bitplan.obdii.elm327.ELM327;
 import com.bitplan.obdii.elm327.ElmSimulator;
 import com.bitplan.obdii.elm327.LogPlayerImpl;
@@ -615,6 +617,99 @@ public class TestELM327 extends TestOBDII {
 
   }
 
+  @Test
+  public void testCANLineParser() {
+    CANLineParser parser = new CANLineParser();
+    assertTrue(parser.parse("373 8 C7 C6 7F 5E 0C C0 00 06", true));
+    assertEquals(0x373, parser.id);
+    assertEquals(8, parser.length);
+    assertTrue(parser.isComplete());
+    assertEquals(0xC7, parser.data[0]);
+    assertEquals(0x06, parser.data[7]);
+    assertEquals(0xC7C67F5E0CC00006L, parser.payload);
+    assertTrue(parser.parse("101 1 04 ", true));
+    assertEquals(0x101, parser.id);
+    assertEquals(1, parser.count);
+    assertEquals(4, parser.data[0]);
+    // ISO-TP frames have a two digit first data byte instead of the length
+    assertTrue(parser.parse("762 21 00 01 8F 4A 0C D0 4E", true));
+    assertTrue(parser.isoTp);
+    assertEquals(8, parser.length);
+    assertTrue(parser.isComplete());
+    assertEquals(0x21, parser.data[0]);
+    assertEquals(0x4E, parser.data[7]);
+    // length mismatch
+    assertTrue(parser.parse("308 8 00 03 E8 00", true));
+    assertFalse(parser.isComplete());
+    // broken lines
+    String[] broken = { "", "37", "373", "373 8", "373 8 C", "373 8 C7C6",
+        "3G3 8 C7", "373 8 C7 C6 7F 5E 0C C0 00 06 07", "SEARCHING..." };
+    for (String line : broken) {
+      assertFalse(line, parser.parse(line, true));
+    }
+  }
+
+  /**
+   * get a multi line packet with the given number of lines
+   * 
+   * @param lines
+   * @return the packet
+   */
+  public Packet getMultiLinePacket(int lines) {
+    String[] sample = { "762 10 2E 61 01 D2 D2 01 90",
+        "762 21 00 01 8F 4A 0C D0 4E", "75A 03 E8 03 E8 64 64 46 45",
+        "762 22 02 4B 0C 01 5E 01 5D", "762 23 01 2C 00 FA 00 FA 10",
+        "762 24 0F 0F 01 BF 01 BF 28", "762 25 FE 00 00 01 8F 78 7C",
+        "762 26 64 00 01 00 00 00 00", "75A 03 E8 03 E8 64 64 46 45" };
+    StringBuffer data = new StringBuffer();
+    for (int i = 0; i < lines; i++) {
+      data.append(sample[i % sample.length]);
+      data.append("\r");
+    }
+    Packet packet = new PacketImpl();
+    packet.setData(data.toString());
+    return packet;
+  }
+
+  @Test
+  public void testMultiFrameDecoding() throws Exception {
+    ELM327 elm327 = new ELM327(getVehicleGroup());
+    elm327.setHeader(true);
+    elm327.setLength(true);
+    List<PIDResponse> pidResponses = PIDResponse.fromResponse(elm327,
+        getMultiLinePacket(9));
+    // one PIDResponse per line
+    assertEquals(9, pidResponses.size());
+    assertEquals("762", pidResponses.get(0).pidId);
+    assertEquals(0x10, pidResponses.get(0).d[0]);
+    assertEquals(0x21, pidResponses.get(1).d[0]);
+    assertEquals("75A 03 E8 03 E8 64 64 46 45",
+        pidResponses.get(2).getRawString());
+    assertEquals(0x26, pidResponses.get(7).d[0]);
+    // every line of a long response is handled once
+    final int[] count = { 0 };
+    PIDResponseHandler counter = pidResponse -> count[0]++;
+    long nanos[] = new long[2];
+    int lines[] = { 1000, 10000 };
+    for (int run = 0; run < 3; run++) {
+      for (int i = 0; i < lines.length; i++) {
+        Packet packet = getMultiLinePacket(lines[i]);
+        count[0] = 0;
+        long start = System.nanoTime();
+        PIDResponse.fromResponse(elm327, packet, counter);
+        nanos[i] = System.nanoTime() - start;
+        assertEquals(lines[i], count[0]);
+      }
+    }
+    // 10 times the lines - a quadratic algorithm would take 100 times as long
+    // single runs are too noisy for an assertion in every build
+    if (debug)
+      System.out.println(String.format(
+          "%5d lines: %6d usecs %5d lines: %6d usecs ratio %4.1f", lines[0],
+          nanos[0] / 1000, lines[1], nanos[1] / 1000,
+          (double) nanos[1] / nanos[0]));
+  }
+
   @Test
   public void testIntegrate() throws Exception {
     CANInfo tripRoundsInfo = getVehicleGroup().getCANInfoByName("TripRounds");
@@ -33,7 +33,7 @@ import java.util.Map;
 import org.junit.Test;
 
 import com.bitplan.appconfig.Preferences;
-import com.bitplan.can4eve.CANValueHandler;
+import com.bitplan.can4eve.AbstractCANValueHandler;
 import com.bitplan.can4eve.LogPeriod;
 import com.bitplan.can4eve.VehicleGroup;
 import com.bitplan.can4eve.VehicleLog;
@@ -51,7 +51,7 @@ import com.bitplan.triplet.VINValue;
  */
 public class TestLogs {
 
-  public class CANValueAnalyzer implements CANValueHandler {
+  public class CANValueAnalyzer extends AbstractCANValueHandler {
     private File csvFile;
     private PrintWriter printWriter;
     private List<String> names;
@@ -125,7 +125,7 @@ public class TestLogs {
 
   }
 
-  public class KWAnalyzer implements CANValueHandler {
+  public class KWAnalyzer extends AbstractCANValueHandler {
     SimpleDateFormat isoDateFormatter = new SimpleDateFormat(
         "yyyy-MM-dd HH:mm:ss");
     private Double dcamps;
@@ -162,7 +162,8 @@ public class TestLogs {
 
   }
 
-  public class CANValueSampler implements CANValueHandler, LogListener {
+  public class CANValueSampler extends AbstractCANValueHandler
+      implements LogListener {
     private Map<String, Object> valueMap = new HashMap<String, Object>();
     private List<String> names;
     boolean done = false;
@@ -21,15 +21,24 @@
 package com.bitplan.obdii;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.Test;
 
 import com.bitplan.elm327.Packet;
+import com.bitplan.elm327.PacketImpl;
+import com.bitplan.obdii.elm327.LogConverter;
+import com.bitplan.obdii.elm327.LogIndex;
 import com.bitplan.obdii.elm327.LogReader;
+import com.bitplan.obdii.elm327.LogWriter;
+import com.bitplan.obdii.elm327.MappedLogFile;
 import com.bitplan.obdii.elm327.RandomAccessLogReader;
 
 /**
@@ -98,4 +107,179 @@ public class TestSimulatorLogReader {
       // System.out.println(endDate);
     }
   }
+
+  /**
+   * read all lines and packets of the given log
+   * 
+   * @param logFile
+   * @param lines
+   * @param packets
+   * @return the LogReader
+   * @throws Exception
+   */
+  LogReader readLog(File logFile, List<String> lines, List<Packet> packets)
+      throws Exception {
+    LogReader logReader = new LogReader(logFile);
+    logReader.addLogListener((line, len, index, count) -> lines.add(line));
+    logReader.addReponseHandler(packet -> packets.add(packet));
+    logReader.read();
+    return logReader;
+  }
+
+  @Test
+  public void testBinaryLog() throws Exception {
+    File textLog = new File("src/test/data/Triplet_2017-04-14_191849.log.zip");
+    File binaryLog = File.createTempFile("Triplet", ".bin");
+    File restoredLog = File.createTempFile("Triplet", ".log");
+    binaryLog.deleteOnExit();
+    restoredLog.deleteOnExit();
+    int lineCount = LogConverter.toBinary(textLog, binaryLog);
+    assertEquals(lineCount, LogConverter.toText(binaryLog, restoredLog));
+
+    List<String> textLines = new ArrayList<String>();
+    List<Packet> textPackets = new ArrayList<Packet>();
+    long start = System.nanoTime();
+    assertFalse(readLog(textLog, textLines, textPackets).isBinary());
+    long textNanos = System.nanoTime() - start;
+    List<String> binaryLines = new ArrayList<String>();
+    List<Packet> binaryPackets = new ArrayList<Packet>();
+    start = System.nanoTime();
+    assertTrue(readLog(binaryLog, binaryLines, binaryPackets).isBinary());
+    long binaryNanos = System.nanoTime() - start;
+    List<String> restoredLines = new ArrayList<String>();
+    readLog(restoredLog, restoredLines, new ArrayList<Packet>());
+    // debug=true;
+    if (debug)
+      System.out.println(String.format(
+          "%d lines: text %d bytes %d msecs binary %d bytes %d msecs",
+          lineCount, restoredLog.length(), textNanos / 1000000,
+          binaryLog.length(), binaryNanos / 1000000));
+    assertEquals(textLines.size(), lineCount);
+    // the conversion keeps every line
+    assertEquals(textLines, restoredLines);
+    assertEquals(textLines, binaryLines);
+    assertEquals(textPackets.size(), binaryPackets.size());
+    for (int i = 0; i < textPackets.size(); i++) {
+      assertEquals(textPackets.get(i).getData(),
+          binaryPackets.get(i).getData());
+      assertEquals(textPackets.get(i).getTimeStamp(),
+          binaryPackets.get(i).getTimeStamp());
+    }
+    assertTrue(binaryLog.length() * 5 < restoredLog.length());
+
+    // random access
+    RandomAccessLogReader textReader = new RandomAccessLogReader(textLog);
+    RandomAccessLogReader binaryReader = new RandomAccessLogReader(binaryLog);
+    assertTrue(binaryReader.isBinary());
+    assertEquals(textReader.getStartDate(), binaryReader.getStartDate());
+    Date endDate = binaryReader.getEndDate();
+    assertEquals(textPackets.get(textPackets.size() - 1).getTime(), endDate);
+    Date middle = new Date(
+        (binaryReader.getStartDate().getTime() + endDate.getTime()) / 2);
+    binaryReader.open();
+    binaryReader.moveTo(middle);
+    Packet p = binaryReader.nextPacket();
+    assertTrue(!p.getTime().before(middle));
+    assertTrue(p.getTime().getTime() - middle.getTime() < 1000);
+    binaryReader.moveTo(endDate);
+    assertEquals(endDate, binaryReader.nextPacket().getTime());
+    assertNull(binaryReader.nextPacket());
+    binaryReader.close();
+  }
+  @Test
+  public void testMappedLog() throws Exception {
+    String fileName = "Triplet_2017-04-14_191849.log";
+    List<String> lines = new ArrayList<String>();
+    List<Packet> packets = new ArrayList<Packet>();
+    readLog(new File("src/test/data/" + fileName + ".zip"), lines, packets);
+    RandomAccessLogReader logReader = this.getLogReader(fileName);
+    assertFalse(logReader.isBinary());
+    // small chunks so that lines cross the chunk boundaries
+    logReader.setChunkBits(12);
+    assertEquals(packets.get(0).getTime(), logReader.getStartDate());
+    Date endDate = logReader.getEndDate();
+    assertEquals(packets.get(packets.size() - 1).getTime(), endDate);
+    logReader.open();
+    for (Packet packet : packets) {
+      Packet p = logReader.nextPacket();
+      assertEquals(packet.getData(), p.getData());
+      assertEquals(packet.getTimeStamp(), p.getTimeStamp());
+    }
+    assertNull(logReader.nextPacket());
+    Date middle = new Date(
+        (logReader.getStartDate().getTime() + endDate.getTime()) / 2);
+    logReader.moveTo(middle);
+    Packet p = logReader.nextPacket();
+    assertTrue(Math.abs(p.getTime().getTime() - middle.getTime()) < 2000);
+    logReader.close();
+  }
+  @Test
+  public void testLogIndex() throws Exception {
+    String fileName = "Triplet_2017-04-14_191849.log";
+    List<String> lines = new ArrayList<String>();
+    List<Packet> packets = new ArrayList<Packet>();
+    readLog(new File("src/test/data/" + fileName + ".zip"), lines, packets);
+    RandomAccessLogReader logReader = this.getLogReader(fileName);
+    File indexFile = LogIndex.getIndexFile(logReader.getLogFile());
+    indexFile.delete();
+    // the index is built on first use
+    LogIndex index = logReader.getIndex();
+    assertTrue(indexFile.exists());
+    assertTrue(index.size() > 1);
+    assertEquals(packets.get(0).getTime(), logReader.getStartDate());
+    Date endDate = logReader.getEndDate();
+    assertEquals(packets.get(packets.size() - 1).getTime(), endDate);
+    // and loaded from the sidecar the next time
+    logReader = this.getLogReader(fileName);
+    LogIndex loaded = LogIndex.load(logReader.getLogFile());
+    assertEquals(index.size(), loaded.size());
+    assertEquals(index.getEndOffset(), loaded.getEndOffset());
+    // the seek finds the first packet that is not before the time
+    logReader.getStartDate();
+    logReader.getEndDate();
+    logReader.open();
+    for (int i = 1; i < 10; i++) {
+      Date time = packets.get(i * packets.size() / 10).getTime();
+      logReader.moveTo(time);
+      Packet expected = null;
+      for (Packet packet : packets) {
+        if (!packet.getTime().before(time)) {
+          expected = packet;
+          break;
+        }
+      }
+      Packet p = logReader.nextPacket();
+      assertEquals(expected.getData(), p.getData());
+      assertEquals(expected.getTime(), p.getTime());
+    }
+    logReader.close();
+
+    File logFile = File.createTempFile("Triplet", ".log");
+    logFile.deleteOnExit();
+    LogIndex.getIndexFile(logFile).deleteOnExit();
+    LogWriter logWriter = new LogWriter(logFile);
+    logWriter.start();
+    for (int i = 0; i < packets.size(); i++) {
+      Packet packet = packets.get(i);
+      logWriter.write(packet);
+      // a non ASCII response must not shift the offsets
+      if (i % 100 == 0)
+        logWriter.write(new PacketImpl("SEARCHING\u00b0", packet.getTimeStamp()));
+    }
+    logWriter.close();
+    // the writer saves the index it kept while logging
+    index = LogIndex.load(logFile);
+    assertEquals(packets.get(packets.size() - 1).getTime().getTime(),
+        index.getEndTime());
+    LogIndex built = LogIndex.build(new MappedLogFile(logFile),
+        LogIndex.DEFAULT_INTERVAL_MSECS);
+    assertEquals(built.size(), index.size());
+    for (int i = 0; i < index.size(); i++) {
+      assertEquals(built.getTime(i), index.getTime(i));
+      assertEquals(built.getOffset(i), index.getOffset(i));
+    }
+    // an index of a changed log is not valid
+    assertTrue(logFile.setLastModified(logFile.lastModified() - 10000));
+    assertNull(LogIndex.load(logFile));
+  }
 }
@@ -21,20 +21,54 @@
 package com.bitplan.obdii;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
 
+import org.apache.commons.collections4.queue.CircularFifoQueue;
 import org.junit.Test;
 
+import com.bitplan.can4eve.AbstractCANValueHandler;
+import com.bitplan.can4eve.CANHandles;
 import com.bitplan.can4eve.CANInfo;
+import com.bitplan.can4eve.CANRawFrames;
+import com.bitplan.can4eve.CANSignal;
 import com.bitplan.can4eve.CANValue;
+import com.bitplan.can4eve.CANValue.CANRawValue;
+import com.bitplan.can4eve.CANValue.DoubleValue;
+import com.bitplan.can4eve.CANValue.ValueItem;
+import com.bitplan.can4eve.CANValueHistory;
+import com.bitplan.can4eve.CANValueHistory.DoubleHistory;
+import com.bitplan.can4eve.CANValueSnapshot;
+import com.bitplan.can4eve.Decimator;
+import com.bitplan.can4eve.Decimator.Policy;
+import com.bitplan.can4eve.HistoryDownsampler;
 // import com.google.gson.graph.GraphAdapterBuilder;
 import com.bitplan.can4eve.Pid;
+import com.bitplan.can4eve.ValueFormatter;
 import com.bitplan.can4eve.VehicleGroup;
 import com.bitplan.can4eve.VehicleModel;
+import com.bitplan.elm327.Clock;
+import com.bitplan.elm327.Packet;
+import com.bitplan.elm327.PacketImpl;
+import com.bitplan.elm327.PipelineStage;
+import com.bitplan.elm327.ResponseHandler;
+import com.bitplan.elm327.RingBuffer;
+import com.bitplan.javafx.WaitableApp;
 import com.bitplan.json.JsonManagerImpl;
+import com.bitplan.obdii.elm327.LogWriter;
+import com.bitplan.triplet.OBDTriplet;
 import com.bitplan.triplet.VINValue;
 import com.google.gson.Gson;
 
@@ -172,6 +206,600 @@ public class TestVehicle extends TestOBDII {
     assertEquals(238200, historySize);
   }
 
+  /**
+   * get the used heap after a garbage collection
+   * 
+   * @return the used heap in bytes
+   */
+  long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++)
+      System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Test
+  public void testHistoryHeap() throws Exception {
+    int capacity = 238200;
+    long now = System.currentTimeMillis();
+    // the way the history was kept before: a ValueItem, Date and Double per
+    // value
+    long before = usedHeap();
+    CircularFifoQueue<ValueItem<Double>> boxed = new CircularFifoQueue<ValueItem<Double>>(
+        capacity);
+    for (int i = 0; i < capacity; i++) {
+      ValueItem<Double> item = new ValueItem<Double>();
+      item.setAvailable(true);
+      item.setTimeStamp(new Date(now + i));
+      item.setValue(i * 0.5);
+      boxed.add(item);
+    }
+    long boxedBytes = usedHeap() - before;
+    before = usedHeap();
+    DoubleHistory primitive = new DoubleHistory(capacity);
+    for (int i = 0; i < capacity; i++) {
+      primitive.add(now + i, i * 0.5);
+    }
+    long primitiveBytes = usedHeap() - before;
+    if (debug)
+      System.out.println(String.format(
+          "history of %d values: boxed %d bytes, primitive %d bytes (%3.0f%% less)",
+          capacity, boxedBytes, primitiveBytes,
+          100.0 - primitiveBytes * 100.0 / boxedBytes));
+    // keep both alive until measured
+    assertEquals(capacity, boxed.size());
+    assertEquals(capacity, primitive.size());
+    assertTrue(primitiveBytes < boxedBytes / 2);
+  }
+
+  @Test
+  public void testHistoryCursor() throws Exception {
+    DoubleHistory history = new DoubleHistory(3);
+    for (int i = 0; i < 5; i++)
+      history.add(1000 + i, i * 1.5);
+    assertEquals(3, history.size());
+    assertEquals(5, history.getTotal());
+    assertEquals(1002, history.getTime(0));
+    CANValueHistory<Double>.Cursor cursor = history.cursor();
+    int count = 0;
+    while (cursor.next()) {
+      assertEquals((count + 2) * 1.5, cursor.getDouble(), 0.0001);
+      count++;
+    }
+    assertEquals(3, count);
+    // a cursor that has been overtaken continues at the oldest value
+    cursor = history.cursor(1);
+    assertTrue(cursor.next());
+    assertEquals(1002, cursor.getTime());
+    // time and value stay a pair while the writer laps the reader
+    final DoubleHistory ring = new DoubleHistory(16);
+    final int values = 2000000;
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        for (int i = 0; i < values; i++)
+          ring.add(i, i * 1.5);
+      }
+    });
+    writer.start();
+    int torn = 0;
+    long reads = 0;
+    while (writer.isAlive()) {
+      CANValueHistory<Double>.Cursor ringCursor = ring.cursor();
+      while (ringCursor.next()) {
+        reads++;
+        if (ringCursor.getDouble() != ringCursor.getTime() * 1.5)
+          torn++;
+      }
+    }
+    writer.join();
+    if (debug)
+      System.out.println(String.format("%d reads %d torn", reads, torn));
+    assertEquals(0, torn);
+  }
+
+  @Test
+  public void testHistoryDownsampler() throws Exception {
+    // five hours of one value per second
+    int count = 5 * 3600;
+    HistoryDownsampler downsampler = new HistoryDownsampler(1000, 1000);
+    long time = 0;
+    for (int i = 0; i < count; i++) {
+      time += 1000;
+      double value = i == 4711 ? 500.0 : Math.sin(i / 100.0) * 100.0;
+      downsampler.add(time, value);
+    }
+    assertTrue(downsampler.getPointCount() <= downsampler.getPointBudget());
+    assertTrue(downsampler.getPointCount() > downsampler.getPointBudget() / 2);
+    // the peak must survive
+    double max = -Double.MAX_VALUE;
+    long lastTime = -1;
+    for (int point = 0; point < downsampler.getPointCount(); point++) {
+      max = Math.max(max, downsampler.getValue(point));
+      assertTrue(downsampler.getTime(point) >= lastTime);
+      lastTime = downsampler.getTime(point);
+    }
+    assertEquals(500.0, max, 0.0001);
+    // a new sample only changes the last bucket
+    downsampler.sync();
+    downsampler.add(time + 1, 0.0);
+    assertEquals(downsampler.getPointCount()
+        - HistoryDownsampler.POINTS_PER_BUCKET,
+        downsampler.getFirstChangedPoint());
+    // trimming the front drops whole buckets only
+    downsampler.sync();
+    downsampler.trim(time / 2);
+    assertTrue(downsampler.getDroppedPoints() > 0);
+    assertTrue(downsampler.getTime(0) >= time / 2 - downsampler.getWidth());
+  }
+
+  @Test
+  public void testFieldBatch() throws Exception {
+    VehicleGroup vg = getVehicleGroup();
+    CANValue.DoubleValue soc = new CANValue.DoubleValue(
+        vg.getCANInfoByName("SOC"));
+    CANValue.DoubleValue cellVoltage = new CANValue.DoubleValue(
+        vg.getCANInfoByName("CellVoltage"));
+    soc.setValue(81.5, new Date());
+    cellVoltage.setValue(0, 3.9, new Date());
+    FieldBatch batch = new FieldBatch();
+    assertTrue(batch.add(soc, false));
+    // indexed values are not shown as fields
+    assertFalse(batch.add(cellVoltage, false));
+    assertEquals(1, batch.size());
+    assertEquals(soc.canInfo.getTitle(), batch.getTitle(0));
+    assertEquals(soc.asString(), batch.getValue(0));
+    // unchanged values are skipped unless forced
+    batch = new FieldBatch();
+    assertFalse(batch.add(soc, false));
+    assertTrue(batch.add(soc, true));
+    soc.setValue(81.0, new Date());
+    assertTrue(batch.add(soc, false));
+    assertEquals(2, batch.size());
+  }
+
+  @Test
+  public void testValueFormatter() throws Exception {
+    // all formats shipped with the vehicle groups
+    TreeSet<String> formats = new TreeSet<String>();
+    for (String vehicleGroupName : new String[] { "Triplet", "OutlanderPHEV" }) {
+      for (CANInfo canInfo : VehicleGroup.get(vehicleGroupName).getCANInfos()) {
+        if (canInfo.getFormat() != null)
+          formats.add(canInfo.getFormat());
+      }
+    }
+    assertTrue(formats.size() > 15);
+    Object[] values = { 0.0, -0.0, -0.04, 0.05, 0.125, 1.005, 2.675, 8.345,
+        3.95, 99.95, -12.25, 1234.5678, 123456.789, 1E-20, Double.NaN, 0, -5,
+        42, 123456, Long.MAX_VALUE, "face(2)", "", null };
+    // debug=true;
+    for (Locale locale : new Locale[] { Locale.ENGLISH, Locale.GERMAN }) {
+      for (String format : formats) {
+        ValueFormatter formatter = ValueFormatter.getInstance(format, locale);
+        List<Object> matching = new ArrayList<Object>();
+        for (Object value : values) {
+          String expected;
+          try {
+            expected = String.format(locale, format, value);
+          } catch (Throwable th) {
+            // e.g. a Double for %d - the formatter has to fail the same way
+            continue;
+          }
+          assertEquals(format + " " + value, expected, formatter.format(value));
+          matching.add(value);
+        }
+        // compare the speed with String.format
+        int loops = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < loops; i++)
+          String.format(locale, format, matching.get(i % matching.size()));
+        long stringFormatNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < loops; i++)
+          formatter.format(matching.get(i % matching.size()));
+        long formatterNanos = System.nanoTime() - start;
+        if (debug)
+          System.out.println(
+              String.format("%s: String.format %d ns/op formatter %d ns/op",
+                  formatter.asString(), stringFormatNanos / loops,
+                  formatterNanos / loops));
+      }
+    }
+    // random values with few decimal digits hit the half up cases
+    Random random = new Random(4711);
+    for (int i = 0; i < 200000; i++) {
+      int precision = random.nextInt(10);
+      double value = (random.nextLong() % 10000000000000L)
+          / Math.pow(10, random.nextInt(13));
+      if (i % 2 == 0)
+        value = random.nextDouble() * Math.pow(10, random.nextInt(16) - 4);
+      String format = "%." + precision + "f";
+      assertEquals(format + " " + value,
+          String.format(Locale.ROOT, format, value),
+          ValueFormatter.getInstance(format, Locale.ROOT).format(value));
+    }
+    assertEquals("16386.623513",
+        ValueFormatter.getInstance("%.6f", Locale.ROOT).format(16386.6235125));
+    assertEquals("134229454.52", ValueFormatter
+        .getInstance("%.2f", Locale.ROOT).format(134229454.515));
+    assertTrue(ValueFormatter.getInstance("%7.1f A ").isCompiled());
+    assertEquals("  -12,3 A ",
+        ValueFormatter.getInstance("%7.1f A ", Locale.GERMAN).format(-12.25));
+  }
+
+  @Test
+  public void testRawFrames() throws Exception {
+    VehicleGroup vg = getVehicleGroup();
+    Pid pid = vg.getPidByName("SOC");
+    CANRawFrames rawFrames = new CANRawFrames(VehicleGroup.MAX_CAN_ID);
+    CANRawValue rawValue = new CANRawValue(pid.getFirstInfo(), rawFrames,
+        pid.getCanId());
+    assertFalse(rawValue.isAvailable());
+    assertEquals("-", rawValue.asString());
+    int[] d = { 0x0A, 0xFF, 0x12, 0x00, 0x80, 0x01, 0x02, 0xC3 };
+    rawFrames.set(pid.getCanId(), d, 1000);
+    assertTrue(rawValue.isAvailable());
+    assertEquals(1, rawValue.getUpdateCount());
+    assertEquals(8, rawFrames.getDLC(pid.getCanId()));
+    for (int i = 0; i < d.length; i++)
+      assertEquals(d[i], rawFrames.getByte(pid.getCanId(), i));
+    assertEquals("0A FF 12 00 80 01 02 C3", rawValue.getValue());
+    assertEquals(1000, rawValue.getTimeStamp().getTime());
+    // the hex text is only created again for a new payload
+    String hex = rawValue.getValue();
+    assertTrue(hex == rawValue.getValue());
+    int version = rawFrames.getVersion(pid.getCanId());
+    rawFrames.set(pid.getCanId(), d.clone(), 1500);
+    assertEquals(version, rawFrames.getVersion(pid.getCanId()));
+    assertTrue(hex == rawValue.getValue());
+    rawFrames.set(pid.getCanId(), new int[] { 0x01, 0x02 }, 2000);
+    assertTrue(version != rawFrames.getVersion(pid.getCanId()));
+    assertEquals("01 02", rawValue.asString());
+    assertEquals(3, rawValue.getUpdateCount());
+    assertEquals("", CANRawFrames.toHex(0, 0));
+  }
+
+  @Test
+  public void testDuplicateFrames() throws Exception {
+    CANRawFrames rawFrames = new CANRawFrames(VehicleGroup.MAX_CAN_ID);
+    int[] d = { 0x04, 0x00, 0x00, 0x00 };
+    assertTrue(rawFrames.set(0x101, d, 1000));
+    for (int i = 1; i <= 3; i++)
+      assertFalse(rawFrames.set(0x101, d.clone(), 1000 + i * 100));
+    // a different length is a change even if the bytes are all zero
+    assertTrue(rawFrames.set(0x101, new int[] { 0x04, 0x00, 0x00 }, 1400));
+    assertEquals(5, rawFrames.getCount(0x101));
+    assertEquals(3, rawFrames.getDuplicates(0x101));
+    assertEquals(1400, rawFrames.getTime(0x101));
+    assertEquals(0.6, rawFrames.getDuplicateRatio(0x101), 0.0001);
+    assertTrue(rawFrames.set(0x373, d, 1000));
+    assertEquals(0.5, rawFrames.getDuplicateRatio(), 0.0001);
+    // debug=true;
+    if (debug)
+      System.out.println(rawFrames.asString());
+    assertTrue(rawFrames.asString().contains("101:"));
+  }
+
+  @Test
+  public void testDecimator() throws Exception {
+    VehicleGroup vg = getVehicleGroup();
+    CANInfo steering = vg.getCANInfoByName("SteeringWheelPosition");
+    assertEquals(Policy.latest, Decimator.getPolicy(steering.getDecimation()));
+    // integrators need every sample
+    assertEquals(Policy.none, Decimator.getPolicy(
+        vg.getCANInfoByName("RPM").getDecimation()));
+    assertEquals(333, Decimator.getIntervalMsecs(steering, 333));
+    assertEquals(2000, Decimator.getIntervalMsecs(
+        vg.getCANInfoByName("DCAmps"), 5000));
+    // 100 Hz for one second
+    double[] values = new double[100];
+    for (int i = 0; i < values.length; i++)
+      values[i] = i == 42 ? -50 : i == 77 ? 80 : i % 10;
+    Decimator none = new Decimator(Policy.none, 250);
+    Decimator latest = new Decimator(Policy.latest, 250);
+    Decimator minmax = new Decimator(Policy.minmax, 250);
+    Decimator average = new Decimator(Policy.average, 250);
+    double min = Double.MAX_VALUE;
+    double max = -Double.MAX_VALUE;
+    double sum = 0;
+    int averages = 0;
+    for (int i = 0; i < values.length; i++) {
+      long time = i * 10;
+      assertEquals(1, none.add(values[i], time));
+      // the latest sample of the previous interval
+      int emits = latest.add(values[i], time);
+      if (emits > 0)
+        assertEquals(values[i - 1], latest.getValue(0), 0.0);
+      emits = minmax.add(values[i], time);
+      for (int e = 0; e < emits; e++) {
+        min = Math.min(min, minmax.getValue(e));
+        max = Math.max(max, minmax.getValue(e));
+      }
+      emits = average.add(values[i], time);
+      for (int e = 0; e < emits; e++) {
+        sum += average.getValue(e);
+        averages++;
+      }
+    }
+    assertEquals(100, none.getPassed());
+    assertEquals(3, latest.getPassed());
+    // a channel that goes quiet passes on its last value on the second tick
+    assertEquals(0, latest.tick());
+    assertEquals(1, latest.tick());
+    assertEquals(values[99], latest.getValue(0), 0.0);
+    assertEquals(990, latest.getTime(0));
+    assertEquals(0, latest.tick());
+    // samples that arrive after stop are passed on directly
+    assertEquals(0, latest.stop());
+    assertEquals(1, latest.add(42, 1000));
+    assertEquals(5, latest.getPassed());
+    // the last interval is only passed on when flushing
+    int flushed = minmax.flush();
+    for (int e = 0; e < flushed; e++) {
+      min = Math.min(min, minmax.getValue(e));
+      max = Math.max(max, minmax.getValue(e));
+    }
+    // the peaks are kept
+    assertEquals(-50, min, 0.0);
+    assertEquals(80, max, 0.0);
+    assertTrue(minmax.getPassed() <= 4 * Decimator.MAX_EMITS);
+    assertEquals(3, averages);
+    int emits = average.flush();
+    assertEquals(1, emits);
+    sum += average.getValue(0);
+    assertEquals(990, average.getTime(0));
+    assertEquals(4, average.getPassed());
+    double total = 0;
+    for (double value : values)
+      total += value;
+    // each interval has 25 samples
+    assertEquals(total / 25, sum, 0.0001);
+    // debug=true;
+    if (debug)
+      System.out.println(minmax.asString());
+  }
+
+  @Test
+  public void testSnapshotConsistency() throws Exception {
+    VehicleGroup vg = getVehicleGroup();
+    final CANValue.DoubleValue value = new CANValue.DoubleValue(
+        vg.getCANInfoByName("SteeringWheelPosition"));
+    final int updates = 200000;
+    // the writer sets 1,2,3 ... so every consistent state is determined by
+    // the update count
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        for (int i = 1; i <= updates; i++)
+          value.setValue((double) i, new Date(i));
+      }
+    });
+    writer.start();
+    CANValueSnapshot<Double> snapshot = new CANValueSnapshot<Double>();
+    int reads = 0;
+    int torn = 0;
+    long lastVersion = -1;
+    while (writer.isAlive() || reads == 0) {
+      value.getSnapshot(snapshot);
+      reads++;
+      if (!snapshot.isAvailable())
+        continue;
+      long n = snapshot.getUpdateCount();
+      boolean consistent = snapshot.getValue() == n
+          && snapshot.getCount() == n && snapshot.getMax() == n
+          && snapshot.getMin() == 1 && snapshot.getTime() == n
+          && snapshot.getSum() == n * (n + 1) / 2.0
+          && snapshot.getVersion() >= lastVersion;
+      if (!consistent) {
+        torn++;
+        if (debug)
+          System.out.println(snapshot.asString());
+      }
+      lastVersion = snapshot.getVersion();
+    }
+    writer.join();
+    // debug=true;
+    if (debug)
+      System.out.println(String.format("%d snapshots %d torn", reads, torn));
+    assertEquals(0, torn);
+    value.getSnapshot(snapshot);
+    assertEquals(updates, snapshot.getUpdateCount());
+    assertEquals((updates + 1) / 2.0, snapshot.getAvg(), 0.0001);
+    // the writer thread has ended - a reset from another thread is left to
+    // the next update
+    value.resetAvg();
+    assertEquals(updates, value.getSnapshot().getCount());
+    value.requestValue(0.0, new Date(updates + 1));
+    assertEquals(updates, value.getValue(), 0.0);
+    value.setValue(5.0, new Date(updates + 2));
+    snapshot = value.getSnapshot();
+    // the requested value and the reset are applied before the new value
+    assertEquals(2, snapshot.getCount());
+    assertEquals(2.5, snapshot.getAvg(), 0.0001);
+    assertEquals(updates + 2, snapshot.getUpdateCount());
+  }
+
+  @Test
+  public void testPrimitiveSetters() throws Exception {
+    CANInfo canInfo = new CANInfo();
+    canInfo.setName("PrimitiveTest");
+    canInfo.setMaxIndex(1);
+    canInfo.setHistoryValuesPerMinute(60000);
+    CANValue.DoubleValue dv = new CANValue.DoubleValue(canInfo);
+    for (int i = 1; i <= 4; i++)
+      dv.setDouble(i * 1.5, Clock.fromMillis(i));
+    CANValueSnapshot<Double> snapshot = dv.getSnapshot();
+    assertEquals(6.0, snapshot.getValue(), 0.0);
+    assertEquals(6.0, dv.getValue(), 0.0);
+    assertEquals(6.0, dv.getValueItem().getValue(), 0.0);
+    assertEquals(1.5, dv.getMin(), 0.0);
+    assertEquals(6.0, dv.getMax(), 0.0);
+    assertEquals(3.75, snapshot.getAvg(), 0.0001);
+    assertEquals(4, snapshot.getUpdateCount());
+    assertEquals(4, dv.getHistory().size());
+    assertEquals(4.5, dv.getHistory().getDouble(2), 0.0);
+    // the boxed setter and the primitive one can be mixed
+    dv.setValue(0.5, Clock.fromMillis(5));
+    assertEquals(0.5, dv.getSnapshot().getValue(), 0.0);
+    dv.setDouble(7.0, Clock.fromMillis(6));
+    assertEquals(7.0, dv.getValue(), 0.0);
+    assertEquals(0.5, dv.getMin(), 0.0);
+
+    CANValue.IntegerValue iv = new CANValue.IntegerValue(canInfo);
+    assertNull(iv.getMax());
+    iv.setInt(-3, Clock.fromMillis(1));
+    iv.setInt(7, Clock.fromMillis(2));
+    assertEquals(7, iv.getSnapshot().getValue().intValue());
+    assertEquals(-3, iv.getMin().intValue());
+    assertEquals(7, iv.getMax().intValue());
+    assertEquals(2, iv.getAvg().intValue());
+    assertEquals(-3, iv.getHistory().getValue(0).intValue());
+
+    CANValue.BooleanValue bv = new CANValue.BooleanValue(canInfo);
+    assertFalse(bv.getSnapshot().isAvailable());
+    bv.setBoolean(true, Clock.fromMillis(1));
+    assertTrue(bv.getSnapshot().getValue());
+    bv.setBoolean(false, Clock.fromMillis(2));
+    assertFalse(bv.getValue());
+    assertEquals(2, bv.getHistory().size());
+  }
+
+  /**
+   * get a triplet handler that does not need a device
+   * 
+   * @param vg
+   * @return the handler
+   * @throws Exception
+   */
+  public OBDTriplet getTriplet(VehicleGroup vg) throws Exception {
+    OBDTriplet triplet = new OBDTriplet(vg);
+    triplet.getElm327().setHeader(true);
+    triplet.getElm327().setLength(true);
+    return triplet;
+  }
+
+  @Test
+  public void testPipeline() throws Exception {
+    // the OBDTriplet values are shown via the JavaFX UpdatePulse
+    WaitableApp.toolkitInit();
+    RingBuffer<Integer> ring = new RingBuffer<Integer>(5);
+    assertEquals(8, ring.capacity());
+    for (int i = 0; i < 8; i++)
+      assertTrue(ring.offer(i));
+    assertFalse(ring.offer(8));
+    assertEquals(0, ring.poll().intValue());
+    assertTrue(ring.offer(8));
+    assertEquals(8, ring.getHighWaterMark());
+    for (int i = 1; i <= 8; i++)
+      assertEquals(i, ring.poll().intValue());
+    assertNull(ring.poll());
+
+    VehicleGroup vg = getVehicleGroup();
+    OBDTriplet inline = getTriplet(vg);
+    OBDTriplet pipelined = getTriplet(vg);
+    FramePipeline pipeline = pipelined.startPipeline(2, 16);
+    ResponseHandler reader = pipelined.getElm327().getCon()
+        .getResponseHandler();
+    assertTrue(reader == pipeline);
+    int frames = 2000;
+    for (int i = 0; i < frames; i++) {
+      // the DC amps and the steering position change with every frame
+      String[] lines = {
+          String.format("373 8 C7 C6 %02X %02X 0C C0 00 06", 0x40 + i % 64,
+              i % 256),
+          String.format("236 8 %02X %02X 10 00 80 00 00 4C", 0x08 + i % 8,
+              i % 256) };
+      for (String line : lines) {
+        Packet packet = new PacketImpl();
+        packet.setData(line);
+        packet.updateTimeStamp();
+        inline.handleResponse(packet);
+        // the queues are much smaller than the number of frames
+        reader.handleResponse(packet);
+      }
+    }
+    assertTrue(pipeline.awaitIdle(10000));
+    // debug=true;
+    if (debug)
+      System.out.println(pipeline.asString());
+    // PIDs that set the same values share a stage
+    for (int canId = 0x6E2; canId <= 0x6E4; canId++)
+      assertEquals(pipeline.getPartition(0x6E1), pipeline.getPartition(canId));
+    long processed = 0;
+    for (PipelineStage<PIDResponse> decoder : pipeline.getDecoders())
+      processed += decoder.getProcessed();
+    assertEquals(2 * frames, processed);
+    assertEquals(16, pipeline.getParser().getQueue().capacity());
+    assertTrue(pipeline.getMaxOccupancy() <= 1.0);
+    // per PID order is kept so the latest values are the same
+    List<CANValue<?>> inlineValues = inline.getCANValues();
+    List<CANValue<?>> pipelinedValues = pipelined.getCANValues();
+    for (int i = 0; i < inlineValues.size(); i++) {
+      assertEquals(inlineValues.get(i).asString(),
+          pipelinedValues.get(i).asString());
+      assertEquals(inlineValues.get(i).getUpdateCount(),
+          pipelinedValues.get(i).getUpdateCount());
+    }
+    pipelined.stopPipeline();
+    assertNull(pipelined.getPipeline());
+    assertTrue(pipelined == pipelined.getElm327().getCon()
+        .getResponseHandler());
+    assertFalse(pipeline.getParser().isRunning());
+  }
+
+  @Test
+  public void testLogWriter() throws Exception {
+    StringWriter log = new StringWriter();
+    LogWriter logWriter = new LogWriter(log, 16);
+    // only the byte threshold triggers writes
+    logWriter.setFlushMsecs(60000);
+    logWriter.setFlushBytes(1024);
+    logWriter.start();
+    int frames = 1000;
+    long start = Clock.fromMillis(1500000000000L);
+    for (int i = 0; i < frames; i++) {
+      // 3 frames per millisecond
+      Packet packet = new PacketImpl(String.format("373 8 C7 C6 %02X", i % 256),
+          start + i * Clock.NANOS_PER_MILLI / 3);
+      assertTrue(logWriter.write(packet));
+    }
+    logWriter.close();
+    // debug=true;
+    if (debug)
+      System.out.println(logWriter.asString());
+    assertFalse(logWriter.write(new PacketImpl("373 8", start)));
+    assertEquals(frames, logWriter.getFrames());
+    assertEquals(0, logWriter.getDrops());
+    assertTrue(logWriter.getBatches() < frames / 10);
+    String[] lines = log.toString().split(System.lineSeparator());
+    assertEquals(frames, lines.length);
+    for (int i = 0; i < frames; i += 97) {
+      Date time = new Date(Clock.toMillis(start + i * Clock.NANOS_PER_MILLI / 3));
+      assertEquals(
+          AbstractOBDHandler.timeStampIsoDateFormatter.format(time) + " "
+              + String.format("373 8 C7 C6 %02X", i % 256),
+          lines[i]);
+    }
+    // a writer that fails must not block the producer
+    StringWriter failingLog = new StringWriter() {
+      @Override
+      public StringWriter append(CharSequence csq) {
+        throw new IllegalStateException("log writer test failure");
+      }
+    };
+    LogWriter failingWriter = new LogWriter(failingLog, 16);
+    failingWriter.setFlushBytes(1);
+    failingWriter.start();
+    int written = 0;
+    for (int i = 0; i < frames; i++) {
+      if (failingWriter.write(new PacketImpl("373 8", start + i)))
+        written++;
+    }
+    failingWriter.join(1000);
+    assertFalse(failingWriter.isAlive());
+    assertTrue(written < frames);
+    assertEquals(1, failingWriter.getErrors());
+    assertTrue(failingWriter.getDrops() > 0);
+  }
+
   @Test
   public void testLengthOfPids() throws Exception {
     VehicleGroup vg = getVehicleGroup();
@@ -213,6 +841,121 @@ public class TestVehicle extends TestOBDII {
       System.out.println(String.format("%5d baud", bytesPerSec * 8));
   }
 
+  @Test
+  public void testPidByCanId() throws Exception {
+    VehicleGroup vg = getVehicleGroup();
+    for (Pid pid : vg.getPids()) {
+      assertEquals(pid, vg.getPidById(pid.getCanId()));
+      assertEquals(pid, vg.getPidById(pid.getPid()));
+    }
+    assertEquals(0x6E3, vg.getPidById("6E3").getCanId());
+    assertNull(vg.getPidById(0x000));
+    assertNull(vg.getPidById(-1));
+    assertNull(vg.getPidById(VehicleGroup.MAX_CAN_ID));
+  }
+
+  @Test
+  public void testTimeStamps() throws Exception {
+    // packets are stamped in nanoseconds since the epoch
+    long now = Clock.now();
+    Packet p = new PacketImpl("7E0 00", now);
+    assertEquals(now, p.getTimeStamp());
+    assertEquals(Clock.toMillis(now), p.getTime().getTime());
+    assertEquals(Clock.NO_TIME, Clock.fromDate(null));
+    assertNull(Clock.toDate(Clock.NO_TIME));
+    // a sub millisecond interval still adds to the integral
+    DoubleValue tripRounds = new DoubleValue(
+        getVehicleGroup().getCANInfoByName("TripRounds"));
+    long t = Clock.fromMillis(1000);
+    tripRounds.integrate(6000, t, 6000, t + 500000, 1 / 60000.0);
+    assertEquals(0.05, tripRounds.getValue(), 0.0001);
+    assertEquals(t + 500000, tripRounds.getTimeNanos());
+    CANValueSnapshot<Double> snapshot = tripRounds
+        .getSnapshot(new CANValueSnapshot<Double>());
+    assertEquals(t + 500000, snapshot.getTimeNanos());
+    assertEquals(1000, snapshot.getTime());
+  }
+
+  /**
+   * handler that keeps the latest values
+   */
+  class ValueCollector extends AbstractCANValueHandler {
+    Map<String, Object> values = new HashMap<String, Object>();
+
+    @Override
+    public <T> void setValue(String name, T value, Date timeStamp) {
+      values.put(name, value);
+    }
+  }
+
+  @Test
+  public void testSignals() throws Exception {
+    VehicleGroup vg = getVehicleGroup();
+    long now = Clock.now();
+    ValueCollector collector = new ValueCollector();
+    int handle = CANHandles.getHandle("DCAmps");
+    assertEquals(handle, vg.getCANInfoByName("DCAmps").getHandle());
+    assertEquals("DCAmps", CANHandles.getName(handle));
+    int[] d = { 0xC7, 0xC6, 0x7F, 0x5E, 0x0C, 0xC0, 0x00, 0x06 };
+    Pid ampsVolts = vg.getPidByName("AmpsVolts");
+    assertTrue(ampsVolts.hasSignals());
+    ampsVolts.decodeSignals(d, now, collector);
+    assertEquals(((d[2] * 256 + d[3]) - 128 * 256) / 100.0,
+        (Double) collector.values.get("DCAmps"), 0.0001);
+    assertEquals((d[4] * 256 + d[5]) / 10.0,
+        (Double) collector.values.get("DCVolts"), 0.0001);
+    d = new int[] { 0x10, 0x24, 0x0E, 0x2D, 0x30, 0x00, 0x00, 0xA5 };
+    vg.getPidByName("Steering_Wheel").decodeSignals(d, now, collector);
+    assertEquals((d[0] * 256 + d[1] - 4096) / 2.0,
+        (Double) collector.values.get("SteeringWheelPosition"), 0.0001);
+    assertEquals((d[2] * 256 + d[3] - 4096) / 2.0,
+        (Double) collector.values.get("SteeringWheelMovement"), 0.0001);
+    d = new int[] { 0x5E, 0x3A, 0x43, 0x39, 0x3C, 0x00, 0x41, 0xE0 };
+    vg.getPidByName("MotorTemp_RPM").decodeSignals(d, now, collector);
+    assertEquals(d[3] - 40, collector.values.get("MotorTemp"));
+    d = new int[] { 0x87, 0x62, 0x81, 0x00, 0x45, 0xCB, 0x01, 0xFF };
+    vg.getPidByName("Lights").decodeSignals(d, now, collector);
+    assertEquals(Boolean.FALSE, collector.values.get("BlinkerRight"));
+    assertEquals(Boolean.TRUE, collector.values.get("BlinkerLeft"));
+    assertEquals(Boolean.TRUE, collector.values.get("HeadLight"));
+    assertEquals(Boolean.TRUE, collector.values.get("ParkingLight"));
+    assertEquals(Boolean.TRUE, collector.values.get("DoorOpen"));
+    assertEquals(Boolean.TRUE, collector.values.get("ACPlug"));
+    // 255 is the sentinel for no range
+    d = new int[] { 0x37, 0x31, 0x57, 0x20, 0x00, 0x00, 0x00, 0xFF };
+    vg.getPidByName("Range").decodeSignals(d, now, collector);
+    assertTrue(collector.values.containsKey("Range"));
+    assertNull(collector.values.get("Range"));
+    d[7] = 0x3B;
+    vg.getPidByName("Range").decodeSignals(d, now, collector);
+    assertEquals(0x3B, collector.values.get("Range"));
+
+    // compare the throughput with the hand written formula
+    CANSignal amps = ampsVolts.getSignal("DCAmps");
+    int loops = 2000000;
+    double sum = 0;
+    long[] nanos = new long[2];
+    for (int run = 0; run < 2; run++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < loops; i++) {
+        d[3] = i & 0xFF;
+        sum += ((d[2] * 256 + d[3]) - 128 * 256) / 100.0;
+      }
+      nanos[0] = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < loops; i++) {
+        d[3] = i & 0xFF;
+        sum -= amps.getValue(d);
+      }
+      nanos[1] = System.nanoTime() - start;
+    }
+    if (debug)
+      System.out.println(String.format(
+          "hand written: %5d usecs signal: %5d usecs (%f)", nanos[0] / 1000,
+          nanos[1] / 1000, sum));
+    assertEquals(0.0, sum, 0.01);
+  }
+
   @Test
   public void testMultiplePIDsPerCANInfo() throws Exception {
     VehicleGroup vg = getVehicleGroup();